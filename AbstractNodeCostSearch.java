@@ -0,0 +1,920 @@
+/*
+ * This file is part of Baritone.
+ *
+ * Baritone is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Baritone is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Baritone.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package baritone.pathing.calc;
+
+import baritone.api.pathing.calc.IPath;
+import baritone.api.pathing.calc.IPathFinder;
+import baritone.api.pathing.goals.Goal;
+import baritone.api.utils.BetterBlockPos;
+import baritone.api.utils.Helper;
+import baritone.api.utils.PathCalculationResult;
+import baritone.api.utils.SearchMetrics;
+import baritone.pathing.movement.CalculationContext;
+import baritone.utils.pathing.MutableMoveResult;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Any pathfinding algorithm that keeps track of nodes recursively by their cost (e.g. A*, dijkstra)
+ *
+ * @author leijurv
+ */
+public abstract class AbstractNodeCostSearch implements IPathFinder, Helper {
+
+    protected final int startX;
+    protected final int startY;
+    protected final int startZ;
+
+    protected final Goal goal;
+
+    private final CalculationContext context;
+
+    /**
+     * Where the moves come from, {@link MovesSearchSpace} on the context unless a finder was given something else
+     */
+    protected final SearchSpace space;
+
+    /**
+     * The settings the search reads, from {@link #space} when the finder was made
+     */
+    protected final SearchSettings settings;
+
+    /**
+     * @see <a href="https://github.com/cabaletta/baritone/issues/107">Issue #107</a>
+     */
+    private final Long2ObjectOpenHashMap<PathNode> map;
+
+    /**
+     * The nodes as ids in primitive arrays instead of the map, null when the finder runs on PathNode objects
+     */
+    protected final NodeStore store;
+
+    /**
+     * With a store this is only a copy of the start (cost 0), the real one is {@link #startIndex}
+     */
+    protected PathNode startNode;
+
+    protected int startIndex = -1;
+
+    protected PathNode mostRecentConsidered;
+
+    /**
+     * With a store the finder sets this instead of {@link #mostRecentConsidered}, which is then built from it at every snapshot
+     */
+    protected int mostRecentIndex = -1;
+
+    protected final PathNode[] bestSoFar = new PathNode[COEFFICIENTS.length];
+
+    private final int[] bestSoFarIndex = new int[COEFFICIENTS.length];
+
+    private final double[] bestHeuristicSoFar = new double[COEFFICIENTS.length];
+
+    private volatile boolean isFinished;
+
+    protected volatile boolean cancelRequested;
+
+    /**
+     * True until some node more than {@link #MIN_DIST_PATH} blocks from the start has been found. While failing, the
+     * search is allowed to run until the failure timeout instead of stopping at the primary timeout.
+     */
+    protected boolean failing;
+
+    private long primaryTimeoutTime;
+
+    private long failureTimeoutTime;
+
+    private long nextSnapshotTime;
+
+    /**
+     * Written by the search thread every {@link #SNAPSHOT_INTERVAL_NANOS}, read by the tick thread through
+     * {@link #bestPathSoFar()}, so the tick thread never walks a node chain that is still being relaxed
+     * Kept as the Optional that is handed out, asking for it every tick allocates nothing
+     */
+    private volatile Optional<IPath> bestPathSnapshot = Optional.empty();
+
+    /**
+     * The node {@link #bestPathSnapshot} ends in and its cost then, a snapshot is only built again once these changed
+     */
+    private PathNode snapshotEnd;
+
+    private int snapshotEndIndex = -1;
+
+    private double snapshotEndCost;
+
+    /**
+     * Counters the finders fill in while searching, turned into {@link SearchMetrics} at the end
+     */
+    protected int numNodes;
+
+    protected int numMovementsConsidered;
+
+    protected long moveApplyNanos;
+
+    protected long openSetOperations;
+
+    /**
+     * How the search loop ended, set by {@link #shouldStop(int)} or by the finder when it reaches the goal
+     */
+    protected SearchMetrics.Termination termination = SearchMetrics.Termination.EXHAUSTED;
+
+    private int peakMapSize;
+
+    private volatile SearchMetrics metrics;
+
+    /**
+     * Applies a move, timing it if it's one of the sampled ones (see {@link #APPLY_SAMPLE})
+     *
+     * @param considered How many moves this thread considered before this one
+     * @return The time to add to moveApplyNanos, 0 when this one isn't timed
+     */
+    protected static long sampledApply(SearchSpace space, int move, int x, int y, int z, MutableMoveResult res, long considered) {
+        if ((considered & (APPLY_SAMPLE - 1)) != 0) {
+            space.apply(move, x, y, z, res);
+            return 0;
+        }
+        long applyStart = System.nanoTime();
+        space.apply(move, x, y, z, res);
+        return (System.nanoTime() - applyStart) * APPLY_SAMPLE;
+    }
+
+    /**
+     * Where the finders record what they expand and relax, null unless tracing is on (see {@link SearchTrace})
+     */
+    protected SearchTrace trace;
+
+    /**
+     * The most nodes a search may hold, 0 for no limit (-Dbaritone.search.maxNodes)
+     * A block the search retired (see {@link #pruneToBudget(PathNode[], int)}) counts as a fraction of a node
+     */
+    public static volatile int maxNodes = Integer.getInteger("baritone.search.maxNodes", 0);
+
+    /**
+     * The most megabytes the nodes of a search may take, 0 for no limit (-Dbaritone.search.maxMB)
+     * Exact for a store, estimated at MAP_NODE_BYTES per node for the PathNode map (see {@link #footprintBytes()})
+     */
+    public static volatile int maxMegabytes = Integer.getInteger("baritone.search.maxMB", 0);
+
+    /**
+     * Only every APPLY_SAMPLE-th Moves.apply is timed for moveApplyNanos and that time is scaled up, two System.nanoTime
+     * calls around every move are a noticeable part of a cheap one (-Dbaritone.search.applySample, a power of two,
+     * 1 times every move)
+     */
+    public static final int APPLY_SAMPLE = Integer.highestOneBit(Math.max(1, Integer.getInteger("baritone.search.applySample", 64)));
+
+    // maxNodes and maxMegabytes when this search started
+    private int budgetNodes;
+    private long budgetBytes;
+
+    /**
+     * What the map holds for an expanded block that {@link #pruneToBudget(PathNode[], int)} dropped, instead of its node.
+     * The finders don't relax into it again ({@link #isRetired(PathNode)}). null until the first prune
+     */
+    private PathNode retiredNode;
+    private int retiredCount;
+
+    /**
+     * Where makeRoom takes the open nodes out to, made when a search with a budget starts so a prune allocates nothing
+     * (4 bytes per node of the budget, a twentieth of what the nodes themselves take)
+     */
+    private PathNode[] beam = new PathNode[0];
+
+    private int prunes;
+
+    /**
+     * This is really complicated and hard to explain. I wrote a comment in the old version of MineBot but it was so
+     * long it was easier as a Google Doc (because I could insert charts).
+     *
+     * @see <a href="https://docs.google.com/document/d/1WVHHXKXFdCR1Oz__KtK8sFqyvSwJN_H4lftkHFgmzlc/edit"></a>
+     */
+    protected static final double[] COEFFICIENTS = {1.5, 2, 2.5, 3, 4, 5, 10};
+
+    /**
+     * If a path goes less than 5 blocks and doesn't make it to its goal, it's not worth considering.
+     */
+    protected static final double MIN_DIST_PATH = 5;
+
+    /**
+     * there are floating point errors caused by random combinations of traverse and diagonal over a flat area
+     * that means that sometimes there's a cost improvement of like 10 ^ -16
+     * it's not worth the time to update the costs, decrease-key the heap, potentially repropagate, etc
+     * <p>
+     * who cares about a hundredth of a tick? that's half a millisecond for crying out loud!
+     */
+    protected static final double MIN_IMPROVEMENT = 0.01;
+
+    /**
+     * How many expansions happen between reads of the clock. Must be a power of two, since it's checked with a mask.
+     */
+    protected static final int TIME_CHECK_INTERVAL = 1 << 6;
+
+    /**
+     * How often the search thread publishes a new {@link #bestPathSoFar()}, once per game tick
+     */
+    protected static final long SNAPSHOT_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /**
+     * Shallow size of a PathNode with compressed oops (header, 3 ints, 3 doubles, a reference and an int)
+     */
+    private static final int PATH_NODE_BYTES = 56;
+
+    /**
+     * A PathNode and its share of the map table, which is between half and three quarters full
+     */
+    private static final int MAP_NODE_BYTES = PATH_NODE_BYTES + 2 * (Long.BYTES + Integer.BYTES);
+
+    /**
+     * A retired block, only its slot in the map table is left
+     */
+    private static final int RETIRED_BYTES = 2 * (Long.BYTES + Integer.BYTES);
+
+    /**
+     * Written into heapPosition of the nodes a prune keeps while it looks for the ones it can drop. Every open node has
+     * been taken out of the open set by then, so nothing else reads it
+     */
+    private static final int LIVE = -2;
+
+    /**
+     * The part of the open nodes a prune keeps, the cheapest by cost plus estimate to the goal
+     */
+    private static final double BEAM_KEEP = 0.5;
+
+    AbstractNodeCostSearch(int startX, int startY, int startZ, Goal goal, CalculationContext context) {
+        this(startX, startY, startZ, goal, context, new MovesSearchSpace(context));
+    }
+
+    AbstractNodeCostSearch(int startX, int startY, int startZ, Goal goal, CalculationContext context, SearchSpace space) {
+        this(startX, startY, startZ, goal, context, space, NodeStore.defaultKind);
+    }
+
+    AbstractNodeCostSearch(int startX, int startY, int startZ, Goal goal, CalculationContext context, SearchSpace space, NodeStore.Kind nodeStorage) {
+        this.startX = startX;
+        this.startY = startY;
+        this.startZ = startZ;
+        this.goal = goal;
+        this.context = context;
+        this.space = space;
+        this.settings = space.settings();
+        this.store = NodeStore.create(nodeStorage, goal, settings.mapDefaultSize);
+        this.map = store != null ? null : new Long2ObjectOpenHashMap<>(settings.mapDefaultSize, settings.mapLoadFactor);
+    }
+
+    public void cancel() {
+        cancelRequested = true;
+    }
+
+    @Override
+    public void logDebug(String message) {
+        // Helper's own reads chatDebug from Baritone.settings(), which only exists with the client
+        if (settings.chatDebug) {
+            Helper.super.logDebug(message);
+        }
+    }
+
+    @Override
+    public synchronized PathCalculationResult calculate(long primaryTimeout, long failureTimeout) {
+        if (isFinished) {
+            throw new IllegalStateException("Path finder cannot be reused!");
+        }
+        cancelRequested = false;
+        long searchStart = System.nanoTime();
+        long postProcessStart = searchStart;
+        trace = SearchTrace.open(this);
+        try {
+            Optional<IPath> found = calculate0(primaryTimeout, failureTimeout);
+            postProcessStart = System.nanoTime();
+            IPath path = found.map(IPath::postProcess).orElse(null);
+            if (cancelRequested) {
+                termination = SearchMetrics.Termination.CANCELLATION;
+                return new PathCalculationResult(PathCalculationResult.Type.CANCELLATION, null, finishMetrics(searchStart, postProcessStart));
+            }
+            if (path == null) {
+                return new PathCalculationResult(PathCalculationResult.Type.FAILURE, null, finishMetrics(searchStart, postProcessStart));
+            }
+            int previousLength = path.length();
+            path = path.cutoffAtLoadedChunks(context.bsi);
+            if (path.length() < previousLength) {
+                Helper.HELPER.logDebug("Cutting off path at edge of loaded chunks");
+                Helper.HELPER.logDebug("Length decreased by " + (previousLength - path.length()));
+            } else {
+                Helper.HELPER.logDebug("Path ends within loaded chunks");
+            }
+            previousLength = path.length();
+            path = path.staticCutoff(goal);
+            if (path.length() < previousLength) {
+                Helper.HELPER.logDebug("Static cutoff " + previousLength + " to " + path.length());
+            }
+            if (goal.isInGoal(path.getDest())) {
+                return new PathCalculationResult(PathCalculationResult.Type.SUCCESS_TO_GOAL, path, finishMetrics(searchStart, postProcessStart));
+            } else {
+                return new PathCalculationResult(PathCalculationResult.Type.SUCCESS_SEGMENT, path, finishMetrics(searchStart, postProcessStart));
+            }
+        } catch (Exception e) {
+            Helper.HELPER.logDirect("Pathing exception: " + e);
+            e.printStackTrace();
+            termination = SearchMetrics.Termination.EXCEPTION;
+            return new PathCalculationResult(PathCalculationResult.Type.EXCEPTION, null, finishMetrics(searchStart, postProcessStart));
+        } finally {
+            // this is run regardless of what exception may or may not be raised by calculate0
+            isFinished = true;
+            if (trace != null) {
+                trace.close();
+                trace = null;
+            }
+        }
+    }
+
+    private SearchMetrics finishMetrics(long searchStart, long postProcessStart) {
+        long now = System.nanoTime();
+        metrics = new SearchMetrics(postProcessStart - searchStart, now - postProcessStart, numNodes, numMovementsConsidered, moveApplyNanos, openSetOperations, peakMapSize(), moveCacheHits(), moveCacheLookups(), termination);
+        return metrics;
+    }
+
+    /**
+     * @return What the last {@link #calculate(long, long)} did, or empty while it is still running
+     */
+    public Optional<SearchMetrics> getMetrics() {
+        return Optional.ofNullable(metrics);
+    }
+
+    protected abstract Optional<IPath> calculate0(long primaryTimeout, long failureTimeout);
+
+    /**
+     * Makes the start node (in the map or the store) with cost 0 and sets {@link #startNode}, and {@link #startIndex} with a store
+     */
+    protected final void placeStart() {
+        long hashCode = BetterBlockPos.longHash(startX, startY, startZ);
+        if (store == null) {
+            startNode = getNodeAtPosition(startX, startY, startZ, hashCode);
+            startNode.cost = 0;
+        } else {
+            startIndex = store.getOrCreate(startX, startY, startZ, hashCode);
+            store.setCost(startIndex, 0);
+            startNode = store.chain(startIndex);
+            // after clearNodeMap the best ids of the last pass are other blocks now (or not used at all), start over from here
+            for (int i = 0; i < COEFFICIENTS.length; i++) {
+                bestHeuristicSoFar[i] = startNode.estimatedCostToGoal;
+            }
+            Arrays.fill(bestSoFarIndex, startIndex);
+            snapshotEndIndex = -1;
+        }
+    }
+
+    /**
+     * Arms the deadlines and resets the best-so-far tracking. Call once from {@link #calculate0(long, long)}, after
+     * {@link #startNode} has been set.
+     *
+     * @param primaryTimeout How long to search once a usable path segment exists, in milliseconds
+     * @param failureTimeout How long to search while no usable segment exists, in milliseconds
+     */
+    protected final void startDeadlines(long primaryTimeout, long failureTimeout) {
+        for (int i = 0; i < COEFFICIENTS.length; i++) {
+            bestHeuristicSoFar[i] = startNode.estimatedCostToGoal;
+            bestSoFar[i] = startNode;
+        }
+        Arrays.fill(bestSoFarIndex, startIndex);
+        failing = true;
+        bestPathSnapshot = Optional.empty();
+        budgetNodes = maxNodes;
+        budgetBytes = (long) maxMegabytes << 20;
+        retiredNode = null;
+        retiredCount = 0;
+        prunes = 0;
+        if (store == null && (budgetNodes > 0 || budgetBytes > 0)) {
+            long nodes = budgetBytes > 0 ? budgetBytes / MAP_NODE_BYTES : Integer.MAX_VALUE;
+            nodes = budgetNodes > 0 ? Math.min(nodes, budgetNodes) : nodes;
+            if (beam.length < nodes) {
+                beam = new PathNode[(int) Math.min(nodes, Integer.MAX_VALUE - 8)];
+            }
+        }
+        snapshotEnd = null;
+        snapshotEndIndex = -1;
+        if (settings.slowPath) {
+            logDebug("slowPath is on, path timeout will be " + settings.slowPathTimeoutMS + "ms instead of " + primaryTimeout + "ms");
+            primaryTimeout = failureTimeout = settings.slowPathTimeoutMS;
+        }
+        long now = System.nanoTime();
+        primaryTimeoutTime = now + TimeUnit.MILLISECONDS.toNanos(primaryTimeout);
+        failureTimeoutTime = now + TimeUnit.MILLISECONDS.toNanos(failureTimeout);
+        nextSnapshotTime = now + SNAPSHOT_INTERVAL_NANOS;
+    }
+
+    /**
+     * Checked by the finders once per expansion. Cancellation is seen immediately, the clock is only read every
+     * {@link #TIME_CHECK_INTERVAL} expansions, and that same clock read drives the best path snapshots.
+     *
+     * @param numNodes The number of nodes expanded so far
+     * @return Whether the search has to stop now
+     */
+    protected final boolean shouldStop(int numNodes) {
+        if (cancelRequested) {
+            termination = SearchMetrics.Termination.CANCELLATION;
+            return true;
+        }
+        if ((numNodes & (TIME_CHECK_INTERVAL - 1)) != 0) {
+            return false;
+        }
+        long now = System.nanoTime();
+        // compare the difference, nanoTime is allowed to overflow
+        if (now - failureTimeoutTime >= 0 || (!failing && now - primaryTimeoutTime >= 0)) {
+            termination = SearchMetrics.Termination.TIMEOUT;
+            return true;
+        }
+        if (overBudget() && !makeRoom()) {
+            logDebug("Search stopped at its memory budget, " + mapSize() + " nodes");
+            termination = SearchMetrics.Termination.BUDGET;
+            return true;
+        }
+        if (now - nextSnapshotTime >= 0) {
+            if (store != null && mostRecentIndex >= 0) {
+                mostRecentConsidered = store.chain(mostRecentIndex);
+            }
+            publishSnapshot(numNodes);
+            nextSnapshotTime = now + SNAPSHOT_INTERVAL_NANOS;
+        }
+        return false;
+    }
+
+    /**
+     * Builds {@link #bestPathSnapshot} again, unless it would end in the same node at the same cost (then it would be the
+     * same path, which late in a long search it mostly is). Also indexes its positions here, on the search thread,
+     * so the tick thread only looks them up (see {@link PathPositions})
+     */
+    private void publishSnapshot(int numNodes) {
+        int i = bestSoFarCoefficient();
+        if (i < 0) {
+            bestPathSnapshot = Optional.empty();
+            snapshotEnd = null;
+            snapshotEndIndex = -1;
+            return;
+        }
+        if (store == null) {
+            PathNode end = bestSoFar[i];
+            if (end == snapshotEnd && end.cost == snapshotEndCost) {
+                return;
+            }
+            snapshotEnd = end;
+            snapshotEndCost = end.cost;
+        } else {
+            int end = bestSoFarIndex[i];
+            if (end == snapshotEndIndex && store.cost(end) == snapshotEndCost) {
+                return;
+            }
+            snapshotEndIndex = end;
+            snapshotEndCost = store.cost(end);
+        }
+        Optional<IPath> snapshot = bestSoFar(false, numNodes);
+        snapshot.ifPresent(PathPositions::of);
+        bestPathSnapshot = snapshot;
+    }
+
+    /**
+     * Offers an expanded node as a candidate partial path for every cost coefficient
+     *
+     * @param node The node that was just expanded
+     */
+    protected final void updateBestSoFar(PathNode node) {
+        for (int i = 0; i < COEFFICIENTS.length; i++) {
+            double heuristic = node.estimatedCostToGoal + node.cost / COEFFICIENTS[i];
+            if (bestHeuristicSoFar[i] - heuristic > MIN_IMPROVEMENT) {
+                bestHeuristicSoFar[i] = heuristic;
+                bestSoFar[i] = node;
+                if (failing && getDistFromStartSq(node) > MIN_DIST_PATH * MIN_DIST_PATH) {
+                    failing = false;
+                }
+            }
+        }
+    }
+
+    private boolean overBudget() {
+        return overBudget(1);
+    }
+
+    private boolean overBudget(double fraction) {
+        if (budgetNodes > 0 && mapSize() - retiredCount + retiredCount / (MAP_NODE_BYTES / RETIRED_BYTES) >= budgetNodes * fraction) {
+            return true;
+        }
+        if (budgetBytes <= 0) {
+            return false;
+        }
+        return footprintBytes() >= budgetBytes * fraction;
+    }
+
+    /**
+     * @return About how many bytes the nodes of this search take right now, checked against {@link #maxMegabytes}.
+     * Exact for a store, MAP_NODE_BYTES per node otherwise. A finder that keeps something other than PathNodes overrides this
+     */
+    protected long footprintBytes() {
+        if (store != null) {
+            return store.footprintBytes();
+        }
+        return (long) (mapSize() - retiredCount) * MAP_NODE_BYTES + (long) retiredCount * RETIRED_BYTES;
+    }
+
+    /**
+     * Called by {@link #shouldStop(int)} once the search holds as many nodes as {@link #maxNodes} or {@link #maxMegabytes}
+     * allow. A finder that can drop part of its open set does that here (with {@link #pruneToBudget(PathNode[], int)}) and
+     * returns true to keep going, by default the search ends there with {@link SearchMetrics.Termination#BUDGET} and the
+     * best path so far
+     */
+    protected boolean makeRoom() {
+        return false;
+    }
+
+    /**
+     * Where makeRoom takes the open nodes out to before {@link #pruneToBudget(PathNode[], int)}
+     *
+     * @param size How many it needs room for, the array is only made again if the open set outgrew the budget estimate
+     */
+    protected final PathNode[] beamScratch(int size) {
+        if (beam.length < size) {
+            beam = Arrays.copyOf(beam, Math.max(size, beam.length + (beam.length >> 1)));
+        }
+        return beam;
+    }
+
+    /**
+     * Beam search step for the PathNode map: keeps the cheapest {@link #BEAM_KEEP} of the open nodes by cost plus estimate
+     * to the goal and drops the rest from the map. Then every expanded node that no kept node and no best-so-far path
+     * goes through is retired: its map entry is replaced by {@link #retiredNode}, so it isn't expanded again
+     * Nothing is allocated, the cut-off is selected in place and the kept chains are marked in the nodes
+     *
+     * @param open  The open nodes, taken out of the open set into {@link #beamScratch(int)}
+     * @param count How many there are
+     * @return How many to put back, they are at the start of open and the first has the lowest combinedCost (a monotone
+     * open set can start over from it). The rest of open is cleared
+     */
+    protected final int pruneToBudget(PathNode[] open, int count) {
+        peakMapSize = Math.max(peakMapSize, mapSize());
+        int before = mapSize() - retiredCount;
+        int keep = Math.max(1, (int) (count * BEAM_KEEP));
+        if (keep < count) {
+            selectCheapest(open, count, keep);
+        }
+        if (retiredNode == null) {
+            retiredNode = new PathNode(startX, startY, startZ, goal);
+        }
+        markChain(startNode, LIVE);
+        for (PathNode node : bestSoFar) {
+            markChain(node, LIVE);
+        }
+        for (int i = 0; i < keep; i++) {
+            markChain(open[i], LIVE);
+        }
+        for (int i = keep; i < count; i++) {
+            // Bellman-Ford can have an open node behind a kept one, that stays
+            if (open[i].heapPosition != LIVE) {
+                map.remove(BetterBlockPos.longHash(open[i].x, open[i].y, open[i].z));
+            }
+            open[i] = null;
+        }
+        for (PathNode node : map.values()) {
+            if (node.heapPosition != LIVE && node != retiredNode) {
+                // replacing the value of a key that is there doesn't change the table, so this is fine while iterating
+                map.put(BetterBlockPos.longHash(node.x, node.y, node.z), retiredNode);
+                retiredCount++;
+            }
+        }
+        markChain(startNode, -1);
+        for (PathNode node : bestSoFar) {
+            markChain(node, -1);
+        }
+        for (int i = 0; i < keep; i++) {
+            markChain(open[i], -1);
+        }
+        int lowest = 0;
+        for (int i = 1; i < keep; i++) {
+            if (open[i].combinedCost < open[lowest].combinedCost) {
+                lowest = i;
+            }
+        }
+        PathNode first = open[lowest];
+        open[lowest] = open[0];
+        open[0] = first;
+        prunes++;
+        logDebug("Memory budget reached, prune " + prunes + " kept " + keep + " open nodes, " + before + " -> " + (mapSize() - retiredCount) + " nodes");
+        return keep;
+    }
+
+    /**
+     * @return Whether the last prune got the search under three quarters of its budget, if not it should stop
+     */
+    protected final boolean prunedEnough() {
+        return !overBudget(0.75);
+    }
+
+    /**
+     * Sets heapPosition of node and everything before it to mark, up to the first that already has it. Marking with -1
+     * again walks exactly what marking with LIVE did, the nodes are closed (-1) otherwise
+     */
+    private static void markChain(PathNode node, int mark) {
+        while (node != null && node.heapPosition != mark) {
+            node.heapPosition = mark;
+            node = node.previous;
+        }
+    }
+
+    /**
+     * Hoare's selection: moves the k cheapest of nodes[0, count) by cost plus estimate to the front, in no particular order
+     */
+    private static void selectCheapest(PathNode[] nodes, int count, int k) {
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            double pivot = beamKey(nodes[(low + high) >>> 1]);
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (beamKey(nodes[i]) < pivot) {
+                    i++;
+                }
+                while (beamKey(nodes[j]) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    PathNode swap = nodes[i];
+                    nodes[i] = nodes[j];
+                    nodes[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            // [low, j] are no more than the pivot, [i, high] no less
+            if (k <= j) {
+                high = j;
+            } else if (k >= i) {
+                low = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static double beamKey(PathNode node) {
+        return node.cost + node.estimatedCostToGoal;
+    }
+
+    /**
+     * @return Whether this is what a prune left of a block it dropped after it was expanded, moves into it are skipped
+     */
+    protected final boolean isRetired(PathNode node) {
+        return node == retiredNode;
+    }
+
+    /**
+     * Records an expanded node in the {@link #trace}, if there is one
+     */
+    protected final void traceExpand(PathNode node) {
+        if (trace != null) {
+            PathNode previous = node.previous == null ? node : node.previous;
+            trace.record(SearchTrace.EXPAND, node.x, node.y, node.z, node.cost, previous.x, previous.y, previous.z, SearchTrace.NO_MOVE);
+        }
+    }
+
+    /**
+     * {@link #traceExpand(PathNode)} for a node in the {@link #store}
+     */
+    protected final void traceExpand(int id) {
+        if (trace != null) {
+            int previous = store.previous(id) < 0 ? id : store.previous(id);
+            trace.record(SearchTrace.EXPAND, store.x(id), store.y(id), store.z(id), store.cost(id), store.x(previous), store.y(previous), store.z(previous), SearchTrace.NO_MOVE);
+        }
+    }
+
+    /**
+     * Records in the {@link #trace} that a move made a node cheaper, call after its cost and previous were set
+     */
+    protected final void traceRelax(PathNode node, int move) {
+        if (trace != null) {
+            trace.record(SearchTrace.RELAX, node.x, node.y, node.z, node.cost, node.previous.x, node.previous.y, node.previous.z, move);
+        }
+    }
+
+    /**
+     * {@link #traceRelax(PathNode, int)} for a node in the {@link #store}
+     */
+    protected final void traceRelax(int id, int move) {
+        if (trace != null) {
+            int previous = store.previous(id);
+            trace.record(SearchTrace.RELAX, store.x(id), store.y(id), store.z(id), store.cost(id), store.x(previous), store.y(previous), store.z(previous), move);
+        }
+    }
+
+    /**
+     * {@link #updateBestSoFar(PathNode)} for a node in the {@link #store}
+     *
+     * @param id The node that was just expanded
+     */
+    protected final void updateBestSoFar(int id) {
+        double estimatedCostToGoal = store.estimatedCostToGoal(id);
+        double cost = store.cost(id);
+        for (int i = 0; i < COEFFICIENTS.length; i++) {
+            double heuristic = estimatedCostToGoal + cost / COEFFICIENTS[i];
+            if (bestHeuristicSoFar[i] - heuristic > MIN_IMPROVEMENT) {
+                bestHeuristicSoFar[i] = heuristic;
+                bestSoFarIndex[i] = id;
+                if (failing && getDistFromStartSq(store.x(id), store.y(id), store.z(id)) > MIN_DIST_PATH * MIN_DIST_PATH) {
+                    failing = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines the distance squared from the specified node to the start
+     * node. Intended for use in distance comparison, rather than anything that
+     * considers the real distance value, hence the "sq".
+     *
+     * @param n A node
+     * @return The distance, squared
+     */
+    protected double getDistFromStartSq(PathNode n) {
+        return getDistFromStartSq(n.x, n.y, n.z);
+    }
+
+    private double getDistFromStartSq(int x, int y, int z) {
+        int xDiff = x - startX;
+        int yDiff = y - startY;
+        int zDiff = z - startZ;
+        return xDiff * xDiff + yDiff * yDiff + zDiff * zDiff;
+    }
+
+    /**
+     * Attempts to search the block position hashCode long to {@link PathNode} map
+     * for the node mapped to the specified pos. If no node is found,
+     * a new node is created. Only for finders running on PathNode objects, see {@link #store}.
+     *
+     * @param x        The x position of the node
+     * @param y        The y position of the node
+     * @param z        The z position of the node
+     * @param hashCode The hash code of the node, provided by {@link BetterBlockPos#longHash(int, int, int)}
+     * @return The associated node
+     * @see <a href="https://github.com/cabaletta/baritone/issues/107">Issue #107</a>
+     */
+    protected PathNode getNodeAtPosition(int x, int y, int z, long hashCode) {
+        PathNode node = map.get(hashCode);
+        if (node == null) {
+            node = new PathNode(x, y, z, goal);
+            map.put(hashCode, node);
+        }
+        return node;
+    }
+
+    /**
+     * Like {@link #getNodeAtPosition(int, int, int, long)} but never creates one
+     *
+     * @return The node, or null if nothing has reached this position yet
+     */
+    protected PathNode getExistingNode(long hashCode) {
+        return map.get(hashCode);
+    }
+
+    @Override
+    public Optional<IPath> pathToMostRecentNodeConsidered() {
+        return Optional.ofNullable(mostRecentConsidered).map(node -> new Path(startNode, node, 0, goal, context));
+    }
+
+    @Override
+    public Optional<IPath> bestPathSoFar() {
+        return bestPathSnapshot;
+    }
+
+    /**
+     * @return The coefficient whose best node {@link #bestSoFar(boolean, int)} makes the path to, -1 if none of them is
+     * far enough from the start yet
+     */
+    private int bestSoFarCoefficient() {
+        for (int i = 0; i < COEFFICIENTS.length; i++) {
+            if (bestSoFarDistSq(i) > MIN_DIST_PATH * MIN_DIST_PATH) { // square the comparison since distFromStartSq is squared
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private double bestSoFarDistSq(int i) {
+        if (store == null ? bestSoFar[i] == null : bestSoFarIndex[i] < 0) {
+            return 0;
+        }
+        int best = bestSoFarIndex[i];
+        return store == null ? getDistFromStartSq(bestSoFar[i]) : getDistFromStartSq(store.x(best), store.y(best), store.z(best));
+    }
+
+    protected Optional<IPath> bestSoFar(boolean logInfo, int numNodes) {
+        if (startNode == null) {
+            return Optional.empty();
+        }
+        int i = bestSoFarCoefficient();
+        if (i >= 0) {
+            if (logInfo) {
+                if (COEFFICIENTS[i] >= 3) {
+                    System.out.println("Warning: cost coefficient is greater than three! Probably means that");
+                    System.out.println("the path I found is pretty terrible (like sneak-bridging for dozens of blocks)");
+                    System.out.println("But I'm going to do it anyway, because yolo");
+                }
+                System.out.println("Path goes for " + Math.sqrt(bestSoFarDistSq(i)) + " blocks");
+                logDebug("A* cost coefficient " + COEFFICIENTS[i]);
+            }
+            return Optional.of(new Path(startNode, store == null ? bestSoFar[i] : store.chain(bestSoFarIndex[i]), numNodes, goal, context));
+        }
+        // instead of returning bestSoFar[0], be less misleading
+        // if it actually won't find any path, don't make them think it will by rendering a dark blue that will never actually happen
+        if (logInfo) {
+            double bestDist = 0;
+            for (int j = 0; j < COEFFICIENTS.length; j++) {
+                bestDist = Math.max(bestDist, bestSoFarDistSq(j));
+            }
+            logDebug("Even with a cost coefficient of " + COEFFICIENTS[COEFFICIENTS.length - 1] + ", I couldn't get more than " + Math.sqrt(bestDist) + " blocks");
+            logDebug("No path found =(");
+            logNotification("No path found =(", true);
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public final boolean isFinished() {
+        return isFinished;
+    }
+
+    @Override
+    public final Goal getGoal() {
+        return goal;
+    }
+
+    public BetterBlockPos getStart() {
+        return new BetterBlockPos(startX, startY, startZ);
+    }
+
+    protected int mapSize() {
+        return store == null ? map.size() : store.size();
+    }
+
+    /**
+     * @return The most nodes the map has held at once during this search
+     */
+    protected int peakMapSize() {
+        return Math.max(peakMapSize, mapSize());
+    }
+
+    /**
+     * @return How many moves this search got from MoveCostCache
+     */
+    protected int moveCacheHits() {
+        return space.cacheHits();
+    }
+
+    protected int moveCacheLookups() {
+        return space.cacheLookups();
+    }
+
+    /**
+     * Forgets every node, for finders that run more than one pass. Nodes already handed out stay valid.
+     * With a store the ids are reused, so nothing from before this may be kept as an id (build PathNodes with chain first),
+     * the best so far ids start over at the start in {@link #placeStart()}, which every pass calls after this
+     */
+    protected void clearNodeMap() {
+        peakMapSize = Math.max(peakMapSize, mapSize());
+        if (store == null) {
+            map.clear();
+            retiredCount = 0;
+        } else {
+            store.clear();
+        }
+        mostRecentConsidered = null;
+        mostRecentIndex = -1;
+        if (trace != null) {
+            // so the replay doesn't count the next pass expanding the same blocks as expanding them again
+            trace.record(SearchTrace.PASS, startX, startY, startZ, 0, startX, startY, startZ, SearchTrace.NO_MOVE);
+        }
+    }
+
+    /**
+     * @return How many bytes the nodes take at the largest the map got. Exact for a store, for the PathNode map it is the
+     * shallow PathNode size plus a table sized the way Long2ObjectOpenHashMap sizes it (key and reference per slot)
+     */
+    public long nodeStorageBytes() {
+        if (store != null) {
+            return store.footprintBytes();
+        }
+        int nodes = peakMapSize();
+        long slots = Long.highestOneBit(Math.max(2, (long) Math.ceil(nodes / (double) settings.mapLoadFactor)) - 1) << 1;
+        return (long) (nodes - retiredCount) * PATH_NODE_BYTES + slots * (Long.BYTES + Integer.BYTES);
+    }
+}
@@ -0,0 +1,279 @@
+package baritone.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Log file writer that never makes the caller wait for the disk
+ *
+ * logToFile used to build a DateTimeFormatter, open a FileWriter, write one line and close it again on every call,
+ * and it was called from the search thread. Now callers only put the message into a ring buffer,
+ * and one background thread takes everything that is in there and appends it to the file in one write
+ *
+ * The ring is a bounded multi producer / single consumer queue with a sequence number per slot, so offering is just a CAS
+ * If it is full the message is dropped and counted instead of blocking, we would rather lose a log line than stall a search
+ *
+ * When the file gets bigger than maxFileBytes it is rotated: logs.txt -> logs.1.txt -> logs.2.txt ... up to maxBackups
+ *
+ * close() waits for the log() calls that got past the closed check to finish publishing, and after the flusher is gone
+ * drains the ring once more on its own thread, so a line accepted by log() is never left in the ring
+ */
+public final class AsyncLogSink {
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Path file;
+    private final long maxFileBytes;
+    private final int maxBackups;
+
+    private final int mask;
+    private final String[] messages;
+    private final long[] times;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // only used by the flusher thread, and by close() once it is gone
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final StringBuilder batch = new StringBuilder();
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+
+    private volatile Thread flusher;
+    private volatile boolean closed;
+    // log() calls between the closed check and publishing their slot
+    private final AtomicInteger writers = new AtomicInteger();
+
+    /**
+     * @param file         The file to append to
+     * @param capacity     How many messages can be waiting at once, rounded up to a power of two
+     * @param maxFileBytes Size at which the file is rotated
+     * @param maxBackups   How many rotated files to keep
+     */
+    public AsyncLogSink(Path file, int capacity, long maxFileBytes, int maxBackups) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.file = file;
+        this.maxFileBytes = maxFileBytes;
+        this.maxBackups = maxBackups;
+        this.mask = size - 1;
+        this.messages = new String[size];
+        this.times = new long[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Queues a line for the file, safe to call from any thread, never blocks
+     *
+     * @return false if the buffer was full and the line was dropped
+     */
+    public boolean log(String message) {
+        writers.incrementAndGet();
+        try {
+            return offer(message);
+        } finally {
+            writers.decrementAndGet();
+        }
+    }
+
+    private boolean offer(String message) {
+        if (closed) {
+            return false;
+        }
+        startIfNeeded();
+        long pos = tail.get();
+        while (true) {
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    messages[index] = message;
+                    times[index] = System.currentTimeMillis();
+                    sequences.set(index, pos + 1); // publishes the slot to the flusher
+                    if ((pos & (mask >> 1)) == 0) {
+                        // half the ring went by, wake the flusher early instead of waiting for its next poll
+                        LockSupport.unpark(flusher);
+                    }
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                dropped.incrementAndGet();
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * @return How many lines were dropped because the buffer was full
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes out whatever is still queued and stops the flusher
+     */
+    public void close() {
+        closed = true;
+        while (writers.get() != 0) {
+            Thread.yield(); // a log() that saw closed as false is putting its line in
+        }
+        Thread thread = flusher;
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            return; // still writing, it drains again before it stops
+        }
+        // the flusher is gone, so this thread is the only consumer now
+        synchronized (this) {
+            if (drain() == 0) {
+                return;
+            }
+            FileChannel channel = null;
+            try {
+                channel = write(open());
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {}
+                }
+            }
+        }
+    }
+
+    private void startIfNeeded() {
+        if (flusher != null) {
+            return;
+        }
+        synchronized (this) {
+            if (flusher != null) {
+                return;
+            }
+            Thread thread = new Thread(this::run, "Baritone log flusher " + file.getFileName());
+            thread.setDaemon(true);
+            thread.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+            flusher = thread;
+        }
+    }
+
+    private void run() {
+        FileChannel channel = null;
+        try {
+            channel = open();
+            while (true) {
+                boolean wasClosed = closed; // read before draining so nothing queued before close() is lost
+                if (drain() > 0) {
+                    channel = write(channel);
+                } else if (wasClosed) {
+                    return;
+                } else {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    /**
+     * Moves every published message from the ring into the batch
+     */
+    private int drain() {
+        int count = 0;
+        batch.setLength(0);
+        while (true) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                return count;
+            }
+            String message = messages[index];
+            long time = times[index];
+            messages[index] = null;
+            sequences.set(index, head + mask + 1); // hands the slot back to the producers
+            head++;
+            count++;
+            batch.append('[').append(TIMESTAMP.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault()))).append("] ").append(message).append(System.lineSeparator());
+        }
+    }
+
+    private FileChannel write(FileChannel channel) throws IOException {
+        byte[] bytes = batch.toString().getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > buffer.capacity()) {
+            buffer = ByteBuffer.allocateDirect(Integer.highestOneBit(bytes.length) << 1);
+        }
+        buffer.clear();
+        buffer.put(bytes);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (channel.size() < maxFileBytes) {
+            return channel;
+        }
+        channel.close();
+        rotate();
+        return open();
+    }
+
+    private FileChannel open() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void rotate() throws IOException {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot == -1 ? name : name.substring(0, dot);
+        String extension = dot == -1 ? "" : name.substring(dot);
+        for (int i = maxBackups; i >= 1; i--) {
+            Path from = i == 1 ? file : file.resolveSibling(base + "." + (i - 1) + extension);
+            Path to = file.resolveSibling(base + "." + i + extension);
+            if (Files.exists(from)) {
+                Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maxBackups <= 0) {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -4,10 +4,11 @@ import baritone.Baritone;
 import baritone.api.pathing.calc.IPath;
 import baritone.api.pathing.goals.Goal;
 import baritone.api.utils.BetterBlockPos;
+import baritone.api.utils.SearchMetrics;
 import baritone.pathing.calc.openset.BinaryHeapOpenSet;
+import baritone.pathing.calc.openset.NodeStoreDeque;
+import baritone.pathing.calc.openset.PathNodeDeque;
 import baritone.pathing.movement.CalculationContext;
-import baritone.pathing.movement.Moves;
-import baritone.utils.pathing.BetterWorldBorder;
 import baritone.utils.pathing.Favoring;
 import baritone.utils.pathing.MutableMoveResult;
 import baritone.api.pathing.movement.ActionCosts;
@@ -15,11 +16,9 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.block.*;
 import net.minecraft.init.Blocks;
 
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
 import java.util.Optional;
-import java.util.Queue;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -46,6 +45,18 @@ import java.util.Optional;
  * We also need to detect negative edges so that the algorithm doesnt go on forever
  * I dont actually know if baritone gives us negative edges but this is just in case
  * Use a hashmap for that to check how many times
+ * (it is a primitive long -> int map now so we dont box every count)
+ *
+ * The queue used to be a LinkedList and checking if a node was already in it was a linear scan every relaxation
+ * Now it is SPFA (Shortest Path Faster Algorithm) on top of PathNodeDeque, checking membership is just node.isOpen()
+ * The order of the queue can be picked with QueueOrdering:
+ *  FIFO    - plain queue, same order as the old version
+ *  SLF     - Small Label First, if the new node is cheaper than the front of the queue put it at the front instead
+ *  LLL     - Large Label Last, if the front of the queue costs more than the average move it to the back
+ *  SLF_LLL - both of them, this is the default
+ *
+ * With a NodeStore (NodeStore.Kind ARRAYS or OFF_HEAP) the same loop runs on node ids in NodeStoreDeque,
+ * and the queue counts for the negative cycle check are kept in the store, so no PathNode or map entry per block
  * 
  * 
  *  Ok so after we know how the code is structured
@@ -60,15 +71,53 @@ import java.util.Optional;
 
 public final class BellmanFordPathFinder extends AbstractNodeCostSearch {
 
+    public enum QueueOrdering {
+        FIFO(false, false),
+        SLF(true, false),
+        LLL(false, true),
+        SLF_LLL(true, true);
+
+        final boolean smallLabelFirst;
+        final boolean largeLabelLast;
+
+        QueueOrdering(boolean smallLabelFirst, boolean largeLabelLast) {
+            this.smallLabelFirst = smallLabelFirst;
+            this.largeLabelLast = largeLabelLast;
+        }
+    }
+
+    // Ordering used by the constructor without one, change this to compare them
+    public static volatile QueueOrdering defaultQueueOrdering = QueueOrdering.SLF_LLL;
+
     // Added for Baritone to work
     private final CalculationContext calcContext;
+    private final QueueOrdering ordering;
+    // For the log at the end, how many nodes were still queued
+    private int openSetSize;
+
+    // The queue of the running search, for makeRoom
+    private PathNodeDeque beamQueue;
 
     // Constructor for the class
     public BellmanFordPathFinder(int startX, int startY, int startZ, Goal goal, Favoring favoring, CalculationContext context) {
+        this(startX, startY, startZ, goal, favoring, context, defaultQueueOrdering);
+    }
+
+    public BellmanFordPathFinder(int startX, int startY, int startZ, Goal goal, Favoring favoring, CalculationContext context, QueueOrdering ordering) {
+        this(startX, startY, startZ, goal, favoring, context, ordering, new MovesSearchSpace(context));
+    }
+
+    // For running without the game (benchmarks), the moves come from space instead of Baritone's Moves
+    public BellmanFordPathFinder(int startX, int startY, int startZ, Goal goal, Favoring favoring, CalculationContext context, QueueOrdering ordering, SearchSpace space) {
+        this(startX, startY, startZ, goal, favoring, context, ordering, NodeStore.defaultKind, space);
+    }
+
+    public BellmanFordPathFinder(int startX, int startY, int startZ, Goal goal, Favoring favoring, CalculationContext context, QueueOrdering ordering, NodeStore.Kind nodeStorage, SearchSpace space) {
        
-        super(startX, startY, startZ, goal, context);
+        super(startX, startY, startZ, goal, context, space, nodeStorage);
    
         this.calcContext = context;
+        this.ordering = ordering;
     }
 
     // Main method to calculate the path
@@ -78,56 +127,90 @@ public final class BellmanFordPathFinder extends AbstractNodeCostSearch {
 
         
         // Initialize the start node with the starting position and set its cost to 0
-        startNode = getNodeAtPosition(startX, startY, startZ, BetterBlockPos.longHash(startX, startY, startZ));
-        startNode.cost = 0;
+        placeStart();
+        // Start the primary/failure timeouts, these are shared with Dijkstra in AbstractNodeCostSearch
+        startDeadlines(primaryTimeout, failureTimeout);
+
+        // Get the world ready (world border etc)
+        space.begin();
+
+        PathNode end = store == null ? spfa() : spfaInStore();
+        if (end != null) {
+            // Reached the goal, return the path
+            termination = SearchMetrics.Termination.GOAL;
+            return Optional.of(new Path(startNode, end, numNodes, goal, calcContext));
+        }
 
-        // Create a queue of to store nodes to be processed
-        Queue<PathNode> queue = new LinkedList<>();
-        queue.add(startNode);
+        // If the search is canceled, return an empty result
+        if (cancelRequested) {
+            return Optional.empty();
+        }
+
+        // If the search is not canceled, return the best path found so far
+        System.out.println(numMovementsConsidered + " movements considered");
+        System.out.println("Open set size: " + openSetSize);
+        System.out.println("PathNode map size: " + mapSize());
+        System.out.println(numNodes + " expansions with " + ordering + " ordering");
+        System.out.println((int) (numNodes * 1.0 / ((System.currentTimeMillis() - startTime) / 1000F)) + " expansions per second");
+        Optional<IPath> result = bestSoFar(true, numNodes);
+        if (result.isPresent()) {
+            System.out.println("Took " + (System.currentTimeMillis() - startTime) + "ms, " + numMovementsConsidered + " movements considered");
+        }
+        return result;
+        
+    }
+
+    /**
+     * The search on PathNode objects
+     *
+     * @return The node in the goal, or null if it wasn't reached
+     */
+    private PathNode spfa() {
+        // Create a deque to store nodes to be processed
+        PathNodeDeque queue = new PathNodeDeque();
+        queue.addLast(startNode);
+        openSetOperations++;
+        beamQueue = queue;
 
         // Create a map to store how many times a node has been processed
-        Map<Long, Integer> iterationCount = new HashMap<>();
-        iterationCount.put((long) startNode.hashCode(), 1);
+        Long2IntOpenHashMap iterationCount = new Long2IntOpenHashMap();
+        iterationCount.put(BetterBlockPos.longHash(startX, startY, startZ), 1);
 
         // Create a MutableMoveResult object to store move results
         MutableMoveResult res = new MutableMoveResult();
-        // Create a BetterWorldBorder object to handle world border checks
-        BetterWorldBorder worldBorder = new BetterWorldBorder(calcContext.world.getWorldBorder());
-        // Get all possible moves
-        Moves[] allMoves = Moves.values();
+        // How many moves there are from each block
+        int moveCount = space.moveCount();
 
         // Main loop to process nodes in the queue
-        while (!queue.isEmpty() && !cancelRequested) {
+        // Stops when the queue is empty, on cancel, or when the timeout runs out (this used to run until the queue drained)
+        while (!queue.isEmpty() && !shouldStop(numNodes)) {
+            // Large Label Last: send expensive nodes to the back until the front is at most the average
+            if (ordering.largeLabelLast) {
+                double average = queue.averageCost();
+                for (int i = queue.size(); i > 1 && queue.peekFirst().cost > average; i--) {
+                    queue.rotate();
+                    openSetOperations++;
+                }
+            }
             // Get the next node in the queue and remove it
-            PathNode currentNode = queue.poll();
+            PathNode currentNode = queue.pollFirst();
+            openSetOperations++;
             mostRecentConsidered = currentNode;
+            updateBestSoFar(currentNode);
+            numNodes++;
+            traceExpand(currentNode);
 
             // Check if the current node is in the goal
             if (goal.isInGoal(currentNode.x, currentNode.y, currentNode.z)) {
-                // If it is, return the path
-                return Optional.of(new Path(startNode, currentNode, mapSize(), goal, calcContext));
+                openSetSize = queue.size();
+                return currentNode;
             }
 
             // Iterate over all possible moves
-            for (Moves move : allMoves) {
-                // Calculate the new position after applying the move
-                int newX = currentNode.x + move.xOffset;
-                int newY = currentNode.y + move.yOffset;
-                int newZ = currentNode.z + move.zOffset;
-
-                // Check if the new position is within the world border
-                if (!worldBorder.entirelyContains(newX, newZ)) {
-                    continue;
-                }
-
-                // Check if the new position is within the valid Y range
-                if (newY > 256 || newY < 0) {
-                    continue;
-                }
-
-                // Reset the MutableMoveResult object and apply the move
-                res.reset();
-                move.apply(calcContext, currentNode.x, currentNode.y, currentNode.z, res);
+            for (int move = 0; move < moveCount; move++) {
+                // Apply the move, moves outside the world border or Y range come back with an infinite cost
+                moveApplyNanos += sampledApply(space, move, currentNode.x, currentNode.y, currentNode.z, res, numMovementsConsidered);
+                numMovementsConsidered++;
 
                 // Get the cost of the action
                 double actionCost = res.cost;
@@ -140,6 +223,9 @@ public final class BellmanFordPathFinder extends AbstractNodeCostSearch {
                 // Get the neighbor node at the new position
                 long hashCode = BetterBlockPos.longHash(res.x, res.y, res.z);
                 PathNode neighbor = getNodeAtPosition(res.x, res.y, res.z, hashCode);
+                if (isRetired(neighbor)) {
+                    continue;
+                }
                 // Calculate the total cost for the neighbor node
                 double totalCost = currentNode.cost + actionCost;
 
@@ -148,38 +234,134 @@ public final class BellmanFordPathFinder extends AbstractNodeCostSearch {
                 // Check if the improvement in cost is significant
                 if (neighbor.cost - totalCost > MIN_IMPROVEMENT) {
                     // If so, update the neighbor's previous node and cost
+                    double previousCost = neighbor.cost;
                     neighbor.previous = currentNode;
                     neighbor.cost = totalCost;
+                    traceRelax(neighbor, move);
 
-                    // If the neighbor is not already in the queue, add it and update its iteration count
-                    if (!queue.contains(neighbor)) {
-                        queue.add(neighbor);
-                        iterationCount.put(hashCode, iterationCount.getOrDefault(hashCode, 0) + 1);
+                    // If the neighbor is already in the queue it just needs the running cost sum fixed
+                    if (neighbor.isOpen()) {
+                        queue.costDecreased(neighbor, previousCost);
+                        continue;
+                    }
+                    // Otherwise add it and update its iteration count
+                    // Small Label First: cheaper than the front goes to the front
+                    if (ordering.smallLabelFirst && !queue.isEmpty() && totalCost < queue.peekFirst().cost) {
+                        queue.addFirst(neighbor);
+                    } else {
+                        queue.addLast(neighbor);
+                    }
+                    openSetOperations++;
+                    int count = iterationCount.addTo(hashCode, 1) + 1;
 
-                        // Check for negative cycles (when a node is processed too many times)
-                        if (iterationCount.get(hashCode) >= mapSize()) {
-                            throw new IllegalStateException("Negative cycle detected");
-                        }
+                    // Check for negative cycles (when a node is processed too many times)
+                    // (the most nodes there were, a memory budget prune makes the map smaller)
+                    if (count >= peakMapSize()) {
+                        throw new IllegalStateException("Negative cycle detected");
                     }
                 }
             }
         }
+        openSetSize = queue.size();
+        beamQueue = null;
+        return null;
+    }
 
-        // If the search is canceled, return an empty result
-        if (cancelRequested) {
-            return Optional.empty();
+    /**
+     * Over the memory budget: prunes the queue (PathNode map only, see pruneToBudget)
+     */
+    @Override
+    protected boolean makeRoom() {
+        PathNodeDeque queue = beamQueue;
+        if (queue == null) {
+            return false;
+        }
+        int count = queue.size();
+        PathNode[] open = beamScratch(count);
+        for (int i = 0; i < count; i++) {
+            open[i] = queue.pollFirst();
+        }
+        int keep = pruneToBudget(open, count);
+        for (int i = 0; i < keep; i++) {
+            queue.addLast(open[i]);
+            open[i] = null;
         }
+        openSetOperations += (long) count + keep;
+        return prunedEnough();
+    }
 
-        // If the search is not canceled, return the best path found so far
-        System.out.println(mapSize() + " movements considered");
-        System.out.println("Open set size: " + queue.size());
-        System.out.println("PathNode map size: " + mapSize());
-        System.out.println((int) (mapSize() * 1.0 / ((System.currentTimeMillis() - startTime) / 1000F)) + " nodes per second");
-        Optional<IPath> result = bestSoFar(true, mapSize());
-        if (result.isPresent()) {
-            System.out.println("Took " + (System.currentTimeMillis() - startTime) + "ms, " + mapSize() + " movements considered");
+    /**
+     * The same search on node ids in the store, see spfa() for what every step does
+     *
+     * @return The node in the goal built as PathNodes, or null if it wasn't reached
+     */
+    private PathNode spfaInStore() {
+        NodeStoreDeque queue = new NodeStoreDeque(store);
+        queue.addLast(startIndex);
+        openSetOperations++;
+        store.incrementTimesQueued(startIndex);
+
+        MutableMoveResult res = new MutableMoveResult();
+        int moveCount = space.moveCount();
+
+        while (!queue.isEmpty() && !shouldStop(numNodes)) {
+            if (ordering.largeLabelLast) {
+                double average = queue.averageCost();
+                for (int i = queue.size(); i > 1 && store.cost(queue.peekFirst()) > average; i--) {
+                    queue.rotate();
+                    openSetOperations++;
+                }
+            }
+            int current = queue.pollFirst();
+            openSetOperations++;
+            mostRecentIndex = current;
+            updateBestSoFar(current);
+            numNodes++;
+            traceExpand(current);
+
+            int x = store.x(current);
+            int y = store.y(current);
+            int z = store.z(current);
+            if (goal.isInGoal(x, y, z)) {
+                openSetSize = queue.size();
+                return store.chain(current);
+            }
+            double currentCost = store.cost(current);
+
+            for (int move = 0; move < moveCount; move++) {
+                moveApplyNanos += sampledApply(space, move, x, y, z, res, numMovementsConsidered);
+                numMovementsConsidered++;
+
+                double actionCost = res.cost;
+                if (actionCost >= ActionCosts.COST_INF || actionCost <= 0 || Double.isNaN(actionCost)) {
+                    continue;
+                }
+
+                int neighbor = store.getOrCreate(res.x, res.y, res.z, BetterBlockPos.longHash(res.x, res.y, res.z));
+                double totalCost = currentCost + actionCost;
+                double previousCost = store.cost(neighbor);
+                if (previousCost - totalCost > MIN_IMPROVEMENT) {
+                    store.setPrevious(neighbor, current);
+                    store.setCost(neighbor, totalCost);
+                    traceRelax(neighbor, move);
+
+                    if (queue.isOpen(neighbor)) {
+                        queue.costDecreased(neighbor, previousCost);
+                        continue;
+                    }
+                    if (ordering.smallLabelFirst && !queue.isEmpty() && totalCost < store.cost(queue.peekFirst())) {
+                        queue.addFirst(neighbor);
+                    } else {
+                        queue.addLast(neighbor);
+                    }
+                    openSetOperations++;
+                    if (store.incrementTimesQueued(neighbor) >= store.size()) {
+                        throw new IllegalStateException("Negative cycle detected");
+                    }
+                }
+            }
         }
-        return result;
-        
+        openSetSize = queue.size();
+        return null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,104 @@
+package baritone.pathing.calc;
+
+import baritone.api.pathing.goals.Goal;
+import baritone.api.utils.SearchMetrics;
+import net.minecraft.init.Bootstrap;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Scaling of DeltaSteppingPathFinder from 1 thread up, next to plain Dijkstra on the same search
+ *
+ * threads is the curve, dijkstra doesn't use it (JMH still runs it once per value, they should all be the same)
+ * VoxelWorld has no state, so every thread can share it. Its moves are a lot cheaper than Baritone's,
+ * so this is close to the worst case for how much of the time the parallel part gets
+ * Run on a machine with at least as many cores as the biggest threads value, otherwise the curve flattens for the wrong reason
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2G")
+public class DeltaSteppingBenchmark {
+
+    private static final long PRIMARY_TIMEOUT_MS = 10000;
+    private static final long FAILURE_TIMEOUT_MS = 20000;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+
+        public long nodes;
+    }
+
+    @Param({"OPEN_CAVES", "DENSE_STONE_ORE", "WATER"})
+    public PathFinderBenchmark.Scenario scenario;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"10"})
+    public double delta;
+
+    @Param({"64"})
+    public int distance;
+
+    private VoxelWorld world;
+    private Goal goal;
+    private int startY;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Bootstrap.register();
+        world = new VoxelWorld(scenario.terrain, 1);
+        goal = scenario.goal(world, distance);
+        startY = scenario.terrain.spawnY;
+    }
+
+    @Benchmark
+    public Object deltaStepping(Counters counters) {
+        SearchSpace[] spaces = new SearchSpace[threads];
+        Arrays.fill(spaces, world);
+        return run(new DeltaSteppingPathFinder(0, startY, 0, goal, null, delta, spaces), counters);
+    }
+
+    @Benchmark
+    public Object dijkstra(Counters counters) {
+        return run(new DijkstraPathFinder(0, startY, 0, goal, null, null, DijkstraPathFinder.DIJKSTRA, world), counters);
+    }
+
+    private static Object run(AbstractNodeCostSearch finder, Counters counters) {
+        Object path = finder.calculate0(PRIMARY_TIMEOUT_MS, FAILURE_TIMEOUT_MS).orElse(null);
+        if (finder.termination != SearchMetrics.Termination.GOAL) {
+            throw new IllegalStateException(finder.termination + ", the timeouts are too short for this comparison");
+        }
+        counters.nodes += finder.numNodes;
+        return path;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(DeltaSteppingBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,101 @@
+package baritone.pathing.calc;
+
+import baritone.api.pathing.goals.Goal;
+import baritone.api.utils.SearchMetrics;
+import net.minecraft.init.Bootstrap;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * One segment of a long trip with HierarchicalPathFinder, by how far the goal is
+ *
+ * cold starts with no exits known, so it pays for every section the abstract A* looks at. VoxelWorld has no unloaded
+ * chunks, so that is the whole way to the goal here (in the game it stops at the loaded chunks)
+ * warm is the same search again with the exits of the first one kept, which is what planning ahead and every later
+ * segment of the trip pays. That one should hardly change with the distance
+ * Plain Dijkstra isn't next to it, it runs out of time on these before it gets anywhere near the goal
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2G")
+public class HierarchicalBenchmark {
+
+    private static final long PRIMARY_TIMEOUT_MS = 10000;
+    private static final long FAILURE_TIMEOUT_MS = 20000;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+
+        public long nodes;
+    }
+
+    @Param({"LONG_DISTANCE_XZ", "WATER"})
+    public PathFinderBenchmark.Scenario scenario;
+
+    // LONG_DISTANCE_XZ goes about 4.5 times this far, WATER about 1.1 times
+    @Param({"64", "256", "512"})
+    public int distance;
+
+    private VoxelWorld world;
+    private Goal goal;
+    private int startY;
+    private HierarchicalPathFinder.State warm;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Bootstrap.register();
+        world = new VoxelWorld(scenario.terrain, 1);
+        goal = scenario.goal(world, distance);
+        startY = scenario.terrain.spawnY;
+        warm = new HierarchicalPathFinder.State(new ChunkRevisions());
+        run(warm, new Counters());
+    }
+
+    @Benchmark
+    public Object cold(Counters counters) {
+        return run(new HierarchicalPathFinder.State(new ChunkRevisions()), counters);
+    }
+
+    @Benchmark
+    public Object warm(Counters counters) {
+        return run(warm, counters);
+    }
+
+    private Object run(HierarchicalPathFinder.State state, Counters counters) {
+        HierarchicalPathFinder finder = new HierarchicalPathFinder(0, startY, 0, goal, null, HierarchicalPathFinder.goalChunks(goal), state, world);
+        Object path = finder.calculate0(PRIMARY_TIMEOUT_MS, FAILURE_TIMEOUT_MS).orElse(null);
+        if (finder.termination != SearchMetrics.Termination.GOAL && finder.termination != SearchMetrics.Termination.SEGMENT) {
+            throw new IllegalStateException(finder.termination + ", the timeouts are too short for this comparison");
+        }
+        counters.nodes += finder.numNodes;
+        return path;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(HierarchicalBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
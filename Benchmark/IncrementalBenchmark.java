@@ -0,0 +1,119 @@
+package baritone.pathing.calc;
+
+import baritone.api.pathing.goals.Goal;
+import baritone.api.utils.SearchMetrics;
+import net.minecraft.init.Bootstrap;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Replanning after one block changed: IncrementalPathFinder repairing its labels against Dijkstra searching again
+ *
+ * Every invocation flips one block half way between the start and the goal (stone, then back to what it was)
+ * and then searches, so both sides see the same world. The incremental one did its first full search in setup,
+ * after that it only pays for the repair, which is the number this is about
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2G")
+public class IncrementalBenchmark {
+
+    private static final long PRIMARY_TIMEOUT_MS = 10000;
+    private static final long FAILURE_TIMEOUT_MS = 20000;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+
+        public long nodes;
+        public long movements;
+    }
+
+    @Param({"OPEN_CAVES", "DENSE_STONE_ORE", "WATER"})
+    public PathFinderBenchmark.Scenario scenario;
+
+    @Param({"64"})
+    public int distance;
+
+    private VoxelWorld world;
+    private Goal goal;
+    private int[] goalBlocks;
+    private int startY;
+    private IncrementalPathFinder.State labels;
+
+    private int flipX;
+    private int flipY;
+    private int flipZ;
+    private byte original;
+    private boolean flipped;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Bootstrap.register();
+        world = new VoxelWorld(scenario.terrain, 1);
+        goal = scenario.goal(world, distance);
+        goalBlocks = DijkstraPathFinder.goalBlocks(goal);
+        startY = scenario.terrain.spawnY;
+        flipX = goalBlocks[0] / 2;
+        flipZ = goalBlocks[2] / 2;
+        flipY = world.standableY(flipX, startY + 4, flipZ);
+        original = world.block(flipX, flipY, flipZ);
+        labels = new IncrementalPathFinder.State();
+        run(new IncrementalPathFinder(0, startY, 0, goal, null, goalBlocks, labels, world), new Counters());
+    }
+
+    @Benchmark
+    public Object incremental(Counters counters) {
+        flip();
+        labels.blockChanged(flipX, flipY, flipZ);
+        return run(new IncrementalPathFinder(0, startY, 0, goal, null, goalBlocks, labels, world), counters);
+    }
+
+    @Benchmark
+    public Object dijkstra(Counters counters) {
+        flip();
+        return run(new DijkstraPathFinder(0, startY, 0, goal, null, null, DijkstraPathFinder.DIJKSTRA, world), counters);
+    }
+
+    private void flip() {
+        flipped = !flipped;
+        world.setBlock(flipX, flipY, flipZ, flipped ? VoxelWorld.STONE : original);
+    }
+
+    private static Object run(AbstractNodeCostSearch finder, Counters counters) {
+        Object path = finder.calculate0(PRIMARY_TIMEOUT_MS, FAILURE_TIMEOUT_MS).orElse(null);
+        if (finder.termination != SearchMetrics.Termination.GOAL) {
+            throw new IllegalStateException(finder.termination + ", the timeouts are too short for this comparison");
+        }
+        counters.nodes += finder.numNodes;
+        counters.movements += finder.numMovementsConsidered;
+        return path;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(IncrementalBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,107 @@
+package baritone.pathing.calc;
+
+import baritone.api.pathing.goals.Goal;
+import baritone.api.utils.SearchMetrics;
+import net.minecraft.init.Bootstrap;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The PathNode map against the two NodeStore kinds, on the PathFinderBenchmark scenarios where plain Dijkstra and Bellman-Ford
+ * visit the most blocks (a few hundred thousand), so the node storage is what matters
+ *
+ * The counters are per search:
+ *  nodes     - nodes expanded, divide by the time per search for expansions per second
+ *  nodeBytes - bytes the nodes took at the end (NodeStore#footprintBytes, or an estimate for the PathNode map),
+ *              nodeBytes / mapNodes is the bytes per node
+ *  mapNodes  - nodes that were created
+ * main() adds the gc profiler, gc.alloc.rate.norm and the gc counts are where the stores should differ most
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2G")
+public class NodeStoreBenchmark {
+
+    private static final long PRIMARY_TIMEOUT_MS = 10000;
+    private static final long FAILURE_TIMEOUT_MS = 20000;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+
+        public long nodes;
+        public long nodeBytes;
+        public long mapNodes;
+    }
+
+    @Param({"OPEN_CAVES", "WATER"})
+    public PathFinderBenchmark.Scenario scenario;
+
+    @Param({"OBJECTS", "ARRAYS", "OFF_HEAP"})
+    public NodeStore.Kind storage;
+
+    @Param({"64"})
+    public int distance;
+
+    private VoxelWorld world;
+    private Goal goal;
+    private int startY;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Bootstrap.register();
+        world = new VoxelWorld(scenario.terrain, 1);
+        goal = scenario.goal(world, distance);
+        startY = scenario.terrain.spawnY;
+    }
+
+    @Benchmark
+    public Object dijkstra(Counters counters) {
+        return run(new DijkstraPathFinder(0, startY, 0, goal, null, null, DijkstraPathFinder.DIJKSTRA, false, storage, world), counters);
+    }
+
+    @Benchmark
+    public Object bellmanFord(Counters counters) {
+        return run(new BellmanFordPathFinder(0, startY, 0, goal, null, null, BellmanFordPathFinder.QueueOrdering.SLF_LLL, storage, world), counters);
+    }
+
+    private static Object run(AbstractNodeCostSearch finder, Counters counters) {
+        Object path = finder.calculate0(PRIMARY_TIMEOUT_MS, FAILURE_TIMEOUT_MS).orElse(null);
+        if (finder.termination != SearchMetrics.Termination.GOAL) {
+            throw new IllegalStateException(finder.termination + ", the timeouts are too short for this comparison");
+        }
+        counters.nodes += finder.numNodes;
+        counters.nodeBytes += finder.nodeStorageBytes();
+        counters.mapNodes += finder.peakMapSize();
+        return path;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(NodeStoreBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,137 @@
+package baritone.pathing.calc;
+
+import baritone.api.pathing.goals.Goal;
+import baritone.api.pathing.movement.ActionCosts;
+import baritone.pathing.calc.openset.BinaryHeapOpenSet;
+import baritone.pathing.calc.openset.IOpenSet;
+import baritone.pathing.calc.openset.RadixHeapOpenSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The open sets on their own, doing what Dijkstra does to them, without a world or moves around it
+ *
+ * The set is filled with size nodes first. Then every operation is one step of Dijkstra:
+ * take the cheapest node out, put a node back in at its cost plus one move, and a fraction of the time make a node
+ * that is already open cheaper (a shorter way to a block that was already reached)
+ * The move costs are drawn from ActionCosts in about the mix a walk through caves has: mostly walking and sprinting,
+ * then steps up, falls, water and the odd block to mine
+ * The taken out node is put back in as the new one, so nothing is allocated while measuring
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(2)
+public class OpenSetBenchmark {
+
+    // every cost is in here as often as it should be drawn
+    private static final double[] MOVE_COSTS = {
+            ActionCosts.WALK_ONE_BLOCK_COST, ActionCosts.WALK_ONE_BLOCK_COST, ActionCosts.WALK_ONE_BLOCK_COST, ActionCosts.WALK_ONE_BLOCK_COST,
+            ActionCosts.WALK_ONE_BLOCK_COST * Math.sqrt(2), ActionCosts.WALK_ONE_BLOCK_COST * Math.sqrt(2),
+            ActionCosts.SPRINT_ONE_BLOCK_COST, ActionCosts.SPRINT_ONE_BLOCK_COST, ActionCosts.SPRINT_ONE_BLOCK_COST,
+            ActionCosts.JUMP_ONE_BLOCK_COST + ActionCosts.WALK_ONE_BLOCK_COST, ActionCosts.JUMP_ONE_BLOCK_COST + ActionCosts.WALK_ONE_BLOCK_COST,
+            ActionCosts.WALK_OFF_BLOCK_COST + ActionCosts.FALL_N_BLOCKS_COST[1] + ActionCosts.CENTER_AFTER_FALL_COST,
+            ActionCosts.WALK_OFF_BLOCK_COST + ActionCosts.FALL_N_BLOCKS_COST[2] + ActionCosts.CENTER_AFTER_FALL_COST,
+            ActionCosts.WALK_OFF_BLOCK_COST + ActionCosts.FALL_N_BLOCKS_COST[3] + ActionCosts.CENTER_AFTER_FALL_COST,
+            ActionCosts.WALK_ONE_IN_WATER_COST,
+            ActionCosts.LADDER_UP_ONE_COST,
+            ActionCosts.SNEAK_ONE_BLOCK_COST,
+            // walking into stone with an iron pickaxe, see VoxelWorld
+            ActionCosts.WALK_ONE_BLOCK_COST + 9.5
+    };
+
+    // how often a step also makes an open node cheaper, out of 256
+    private static final int UPDATE_CHANCE = 64;
+
+    private static final Goal NOWHERE = new Goal() {
+        @Override
+        public boolean isInGoal(int x, int y, int z) {
+            return false;
+        }
+
+        @Override
+        public double heuristic(int x, int y, int z) {
+            return 0;
+        }
+    };
+
+    public enum Type {
+        BINARY_HEAP,
+        RADIX_HEAP
+    }
+
+    @Param({"BINARY_HEAP", "RADIX_HEAP"})
+    public Type type;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private IOpenSet openSet;
+    private final PathNode[] recent = new PathNode[64];
+    private int nextRecent;
+    private SplittableRandom random;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        random = new SplittableRandom(42);
+        openSet = type == Type.RADIX_HEAP ? new RadixHeapOpenSet() : new BinaryHeapOpenSet();
+        for (int i = 0; i < size; i++) {
+            PathNode node = new PathNode(i, 64, 0, NOWHERE);
+            // about how spread out the costs of an open set this size are
+            node.cost = random.nextDouble() * Math.sqrt(size) * ActionCosts.WALK_ONE_BLOCK_COST;
+            node.combinedCost = node.cost;
+            openSet.insert(node);
+            recent[i & (recent.length - 1)] = node;
+        }
+    }
+
+    @Benchmark
+    public PathNode dijkstraStep() {
+        PathNode lowest = openSet.removeLowest();
+        double base = lowest.cost;
+        if ((random.nextInt() & 0xFF) < UPDATE_CHANCE) {
+            PathNode other = recent[random.nextInt(recent.length)];
+            double cheaper = base + moveCost();
+            if (other.isOpen() && other.cost - cheaper > 0.01) {
+                other.cost = cheaper;
+                other.combinedCost = cheaper;
+                openSet.update(other);
+            }
+        }
+        lowest.cost = base + moveCost();
+        lowest.combinedCost = lowest.cost;
+        openSet.insert(lowest);
+        recent[nextRecent++ & (recent.length - 1)] = lowest;
+        return lowest;
+    }
+
+    private double moveCost() {
+        return MOVE_COSTS[random.nextInt(MOVE_COSTS.length)];
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(OpenSetBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,191 @@
+package baritone.pathing.calc;
+
+import baritone.api.pathing.calc.IPath;
+import baritone.api.pathing.goals.Goal;
+import baritone.api.pathing.goals.GoalBlock;
+import baritone.api.pathing.goals.GoalXZ;
+import baritone.api.pathing.goals.GoalYLevel;
+import baritone.api.utils.SearchMetrics;
+import net.minecraft.init.Bootstrap;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * JMH benchmarks for DijkstraPathFinder and BellmanFordPathFinder, no game client needed
+ * (VoxelWorld gives the finders SearchSettings.DEFAULTS, and the goals here don't read BaritoneAPI's settings either)
+ *
+ * The READ_ME numbers (3.5s vs 3.6s) came from a live client and timed the finder constructor, not the search
+ * These run calculate0 directly on a VoxelWorld, so only the search itself is measured, with the same seeded world every time
+ *
+ * Every benchmark is run in two modes:
+ *  Throughput - searches per second
+ *  SampleTime - latency of single searches, JMH prints the p50/p90/p99/p99.9 percentiles for it
+ * main() adds the gc profiler, which reports the allocation rate (gc.alloc.rate.norm is bytes per search)
+ *
+ * The counters (nodes, reachedGoal) show up next to the scores, a finder that ran into the timeout
+ * instead of reaching the goal is visible there and shouldn't be compared on time alone
+ *
+ * Needs JMH and the Baritone + Minecraft jars on the classpath, e.g. run main() or
+ *  java -jar benchmarks.jar PathFinderBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2G")
+public class PathFinderBenchmark {
+
+    // Big enough that the searches here always finish, unless a finder is really that slow
+    private static final long PRIMARY_TIMEOUT_MS = 4000;
+    private static final long FAILURE_TIMEOUT_MS = 10000;
+
+    // Baritone's default costHeuristic, GoalXZ reads the setting from BaritoneAPI, which only has settings with the client
+    private static final double COST_HEURISTIC = 3.563;
+
+    public enum Scenario {
+        OPEN_CAVES(VoxelWorld.Terrain.OPEN_CAVES),
+        DENSE_STONE_ORE(VoxelWorld.Terrain.DENSE_STONE),
+        WATER(VoxelWorld.Terrain.WATER),
+        LONG_DISTANCE_XZ(VoxelWorld.Terrain.FLAT);
+
+        final VoxelWorld.Terrain terrain;
+
+        Scenario(VoxelWorld.Terrain terrain) {
+            this.terrain = terrain;
+        }
+
+        Goal goal(VoxelWorld world, int distance) {
+            int y = terrain.spawnY;
+            switch (this) {
+                case DENSE_STONE_ORE:
+                    // everything has to be mined here, so it is a lot shorter
+                    return goalBlock(distance / 4, y, distance / 4);
+                case LONG_DISTANCE_XZ:
+                    return goalXZ(distance * 4, distance * 2);
+                default:
+                    return goalBlock(distance, world.standableY(distance, y, distance / 2), distance / 2);
+            }
+        }
+
+        // still GoalBlock and GoalXZ for the finders that look at the goal type, with the same heuristic as theirs
+        private static Goal goalBlock(int goalX, int goalY, int goalZ) {
+            return new GoalBlock(goalX, goalY, goalZ) {
+                @Override
+                public double heuristic(int x, int y, int z) {
+                    return GoalYLevel.calculate(y - goalY, 0) + xz(x - goalX, z - goalZ);
+                }
+            };
+        }
+
+        private static Goal goalXZ(int goalX, int goalZ) {
+            return new GoalXZ(goalX, goalZ) {
+                @Override
+                public double heuristic(int x, int y, int z) {
+                    return xz(x - goalX, z - goalZ);
+                }
+            };
+        }
+
+        private static double xz(int xDiff, int zDiff) {
+            int x = Math.abs(xDiff);
+            int z = Math.abs(zDiff);
+            return (Math.abs(x - z) + Math.min(x, z) * Math.sqrt(2)) * COST_HEURISTIC;
+        }
+    }
+
+    /**
+     * Extra numbers JMH prints next to the score, per search
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+
+        public long nodes;
+        public long reachedGoal;
+    }
+
+    @Param({"OPEN_CAVES", "DENSE_STONE_ORE", "WATER", "LONG_DISTANCE_XZ"})
+    public Scenario scenario;
+
+    @Param({"1", "2", "3"})
+    public long seed;
+
+    @Param({"32", "64"})
+    public int distance;
+
+    private VoxelWorld world;
+    private Goal goal;
+    private int startY;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Bootstrap.register();
+        world = new VoxelWorld(scenario.terrain, seed);
+        goal = scenario.goal(world, distance);
+        startY = scenario.terrain.spawnY;
+    }
+
+    @Benchmark
+    public Object dijkstra(Counters counters) {
+        return run(new DijkstraPathFinder(0, startY, 0, goal, null, null, DijkstraPathFinder.DIJKSTRA, world), counters);
+    }
+
+    @Benchmark
+    public Object dijkstraWeightLadder(Counters counters) {
+        return run(new DijkstraPathFinder(0, startY, 0, goal, null, null, DijkstraPathFinder.WEIGHT_LADDER, world), counters);
+    }
+
+    @Benchmark
+    public Object dijkstraBidirectional(Counters counters) {
+        // the same as dijkstra for GoalXZ, which is too big to search backwards from
+        return run(new DijkstraPathFinder(0, startY, 0, goal, null, null, DijkstraPathFinder.DIJKSTRA, true, world), counters);
+    }
+
+    @Benchmark
+    public Object bellmanFord(Counters counters) {
+        return run(new BellmanFordPathFinder(0, startY, 0, goal, null, null, BellmanFordPathFinder.QueueOrdering.SLF_LLL, world), counters);
+    }
+
+    @Benchmark
+    public Object bellmanFordFifo(Counters counters) {
+        return run(new BellmanFordPathFinder(0, startY, 0, goal, null, null, BellmanFordPathFinder.QueueOrdering.FIFO, world), counters);
+    }
+
+    private static Object run(AbstractNodeCostSearch finder, Counters counters) {
+        Optional<IPath> path = finder.calculate0(PRIMARY_TIMEOUT_MS, FAILURE_TIMEOUT_MS);
+        counters.nodes += finder.numNodes;
+        if (finder.termination == SearchMetrics.Termination.GOAL) {
+            counters.reachedGoal++;
+        }
+        // returned so JMH consumes it and the search can't be optimized away
+        return path.orElse(null);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PathFinderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,91 @@
+package baritone.pathing.calc;
+
+import baritone.api.event.events.PathEvent;
+import baritone.api.pathing.calc.IPath;
+import baritone.api.pathing.goals.Goal;
+import baritone.api.utils.BetterBlockPos;
+import baritone.behavior.PathEventRing;
+import net.minecraft.init.Bootstrap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * What PathingBehavior does every tick while a path is being walked and the next segment calculated, without the game:
+ * dispatch the queued path events (PathEventRing), get the best path so far of the calculation, and check whether the
+ * player is on it (PathPositions)
+ * One event is queued per tick here, in the game it is far fewer
+ *
+ * Run with the gc profiler (main() adds it), gc.alloc.rate.norm is the bytes allocated per tick and should be 0
+ * The rest of the tick is PathExecutor and the movements, which are in the Baritone jar and not measured here
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2G")
+public class TickBenchmark {
+
+    private static final PathEvent[] EVENTS = PathEvent.values();
+
+    private final PathEventRing events = new PathEventRing(32);
+    private AbstractNodeCostSearch inProgress;
+    private BetterBlockPos onPath;
+    private BetterBlockPos offPath;
+    private int tick;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Bootstrap.register();
+        PathFinderBenchmark.Scenario scenario = PathFinderBenchmark.Scenario.LONG_DISTANCE_XZ;
+        VoxelWorld world = new VoxelWorld(scenario.terrain, 1);
+        Goal goal = scenario.goal(world, 256);
+        int startY = scenario.terrain.spawnY;
+        inProgress = new DijkstraPathFinder(0, startY, 0, goal, null, null, DijkstraPathFinder.DIJKSTRA, world);
+        inProgress.calculate0(10000, 20000);
+        IPath best = inProgress.bestPathSoFar().orElseThrow(() -> new IllegalStateException("the search was over before it published a path"));
+        onPath = best.positions().get(best.positions().size() / 2);
+        offPath = new BetterBlockPos(onPath.x, onPath.y + 100, onPath.z);
+    }
+
+    @Benchmark
+    public void tick(Blackhole blackhole) {
+        events.add(EVENTS[tick++ % EVENTS.length]);
+        long seen = events.drain();
+        blackhole.consume((seen & PathEventRing.bit(PathEvent.CALC_FAILED)) != 0);
+        for (int i = 0; i < events.drainedCount(); i++) {
+            blackhole.consume(events.drained(i));
+        }
+        Optional<IPath> best = inProgress.bestPathSoFar();
+        if (best.isPresent()) {
+            blackhole.consume(PathPositions.contains(best.get(), onPath));
+            blackhole.consume(PathPositions.contains(best.get(), offPath));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TickBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,310 @@
+package baritone.pathing.calc;
+
+import baritone.api.pathing.movement.ActionCosts;
+import baritone.utils.pathing.MutableMoveResult;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * A made up world for running the finders without Minecraft
+ *
+ * Every block comes from a hash of the seed and the position, so the same seed always gives the same world
+ * and nothing has to be stored, the world is as big as the ints go (long distance goals are fine)
+ *
+ * The moves are a small copy of Baritone's: walk, step up, step down / fall up to 3 blocks and mine down,
+ * with blocks in the way mined. The costs are the ActionCosts ones so a path here costs about what it would in game
+ * It is not meant to match Baritone exactly, just to give both finders the same realistic graph to chew on
+ *
+ * There is always a 3x3 room at (0, spawnY, 0) to start in
+ * setBlock changes single blocks on top of that, for replanning after the world changed (IncrementalBenchmark)
+ */
+public final class VoxelWorld implements SearchSpace, ActionCosts {
+
+    public enum Terrain {
+        // caves made of 8x4x8 air cells inside stone, a bit of ore
+        OPEN_CAVES(40),
+        // solid stone, everything has to be mined, 2x2x2 ore pockets
+        DENSE_STONE(12),
+        // lakes 3 deep on a stone floor with raised banks between them
+        WATER(63),
+        // flat ground with 2 high stone pillars here and there
+        FLAT(64);
+
+        public final int spawnY;
+
+        Terrain(int spawnY) {
+            this.spawnY = spawnY;
+        }
+    }
+
+    static final byte AIR = 0;
+    static final byte STONE = 1;
+    static final byte ORE = 2;
+    static final byte WATER = 3;
+    static final byte BEDROCK = 4;
+
+    // roughly how many ticks an iron pickaxe takes, plus Baritone's default mineBlockAdditionalPenalty of 2
+    private static final double BREAK_STONE_COST = 7.5 + 2;
+    private static final double BREAK_ORE_COST = 15 + 2;
+
+    private static final int MAX_FALL = 3;
+
+    // traverse and ascend go in these directions, then descend, then downward
+    private static final int[] DX = {0, 0, 1, -1};
+    private static final int[] DZ = {-1, 1, 0, 0};
+    private static final String[] NAMES = {
+            "TRAVERSE_NORTH", "TRAVERSE_SOUTH", "TRAVERSE_EAST", "TRAVERSE_WEST",
+            "ASCEND_NORTH", "ASCEND_SOUTH", "ASCEND_EAST", "ASCEND_WEST",
+            "DESCEND_NORTH", "DESCEND_SOUTH", "DESCEND_EAST", "DESCEND_WEST",
+            "DOWNWARD"
+    };
+
+    public final Terrain terrain;
+    private final long seed;
+    // blocks changed with setBlock, only change them while nothing is searching
+    private final Map<Long, Byte> edits = new HashMap<>();
+
+    public VoxelWorld(Terrain terrain, long seed) {
+        this.terrain = terrain;
+        this.seed = seed;
+    }
+
+    @Override
+    public void begin() {}
+
+    @Override
+    public int moveCount() {
+        return NAMES.length;
+    }
+
+    @Override
+    public int sources(int move, int x, int y, int z, int[] out) {
+        if (move < 4) {
+            return put(out, 0, x - DX[move], y, z - DZ[move]);
+        }
+        if (move < 8) {
+            return put(out, 0, x - DX[move - 4], y - 1, z - DZ[move - 4]);
+        }
+        if (move < 12) {
+            int count = 0;
+            for (int fall = 1; fall <= MAX_FALL; fall++) {
+                count = put(out, count, x - DX[move - 8], y + fall, z - DZ[move - 8]);
+            }
+            return count;
+        }
+        return put(out, 0, x, y + 1, z);
+    }
+
+    private static int put(int[] out, int count, int x, int y, int z) {
+        out[count * 3] = x;
+        out[count * 3 + 1] = y;
+        out[count * 3 + 2] = z;
+        return count + 1;
+    }
+
+    @Override
+    public int maxSources() {
+        return MAX_FALL;
+    }
+
+    @Override
+    public String moveName(int move) {
+        return NAMES[move];
+    }
+
+    @Override
+    public boolean isTarget(int x, int y, int z) {
+        return block(x, y, z) == ORE;
+    }
+
+    @Override
+    public SearchSettings settings() {
+        return SearchSettings.DEFAULTS;
+    }
+
+    @Override
+    public void apply(int move, int x, int y, int z, MutableMoveResult res) {
+        res.reset();
+        if (move < 4) {
+            traverse(x, y, z, x + DX[move], z + DZ[move], res);
+        } else if (move < 8) {
+            ascend(x, y, z, x + DX[move - 4], z + DZ[move - 4], res);
+        } else if (move < 12) {
+            descend(x, y, z, x + DX[move - 8], z + DZ[move - 8], res);
+        } else {
+            downward(x, y, z, res);
+        }
+    }
+
+    private void traverse(int x, int y, int z, int destX, int destZ, MutableMoveResult res) {
+        byte feet = block(destX, y, destZ);
+        if (feet != WATER && !canWalkOn(block(destX, y - 1, destZ))) {
+            return; // nothing to stand on, that is a descend
+        }
+        double cost = feet == WATER || block(x, y, z) == WATER ? WALK_ONE_IN_WATER_COST : WALK_ONE_BLOCK_COST;
+        set(res, destX, y, destZ, cost + breakCost(feet) + breakCost(block(destX, y + 1, destZ)));
+    }
+
+    private void ascend(int x, int y, int z, int destX, int destZ, MutableMoveResult res) {
+        if (!canWalkOn(block(destX, y, destZ)) || block(x, y, z) == WATER) {
+            return;
+        }
+        double cost = JUMP_ONE_BLOCK_COST + WALK_ONE_BLOCK_COST + breakCost(block(x, y + 2, z));
+        set(res, destX, y + 1, destZ, cost + breakCost(block(destX, y + 1, destZ)) + breakCost(block(destX, y + 2, destZ)));
+    }
+
+    private void descend(int x, int y, int z, int destX, int destZ, MutableMoveResult res) {
+        if (!canWalkThrough(block(destX, y - 1, destZ))) {
+            return; // there is floor, that is a traverse
+        }
+        double cost = WALK_OFF_BLOCK_COST + breakCost(block(destX, y, destZ)) + breakCost(block(destX, y + 1, destZ));
+        for (int fall = 1; fall <= MAX_FALL; fall++) {
+            byte below = block(destX, y - fall - 1, destZ);
+            if (block(destX, y - fall, destZ) == WATER) {
+                set(res, destX, y - fall, destZ, cost + WALK_ONE_IN_WATER_COST); // water breaks the fall
+                return;
+            }
+            if (canWalkOn(below)) {
+                set(res, destX, y - fall, destZ, cost + FALL_N_BLOCKS_COST[fall] + CENTER_AFTER_FALL_COST);
+                return;
+            }
+            if (!canWalkThrough(below)) {
+                return;
+            }
+        }
+    }
+
+    private void downward(int x, int y, int z, MutableMoveResult res) {
+        byte below = block(x, y - 1, z);
+        if (below == WATER) {
+            set(res, x, y - 1, z, WALK_ONE_IN_WATER_COST);
+            return;
+        }
+        if (below == AIR || !canWalkOn(block(x, y - 2, z))) {
+            return;
+        }
+        set(res, x, y - 1, z, FALL_N_BLOCKS_COST[1] + breakCost(below));
+    }
+
+    private static void set(MutableMoveResult res, int x, int y, int z, double cost) {
+        res.x = x;
+        res.y = y;
+        res.z = z;
+        res.cost = cost >= COST_INF ? COST_INF : cost;
+    }
+
+    private static boolean canWalkOn(byte block) {
+        return block == STONE || block == ORE || block == BEDROCK;
+    }
+
+    private static boolean canWalkThrough(byte block) {
+        return block == AIR || block == WATER;
+    }
+
+    private static double breakCost(byte block) {
+        switch (block) {
+            case STONE:
+                return BREAK_STONE_COST;
+            case ORE:
+                return BREAK_ORE_COST;
+            case BEDROCK:
+                return COST_INF;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Replaces one block, the searches see it from their next apply
+     */
+    public void setBlock(int x, int y, int z, byte block) {
+        edits.put(TargetBlockIndex.pack(x, y, z), block);
+    }
+
+    /**
+     * @return One of the block constants, the same every time for the same seed unless it was changed with setBlock
+     */
+    byte block(int x, int y, int z) {
+        if (!edits.isEmpty()) {
+            Byte edited = edits.get(TargetBlockIndex.pack(x, y, z));
+            if (edited != null) {
+                return edited;
+            }
+        }
+        if (y <= 0) {
+            return BEDROCK;
+        }
+        if (y > 255) {
+            return AIR;
+        }
+        if (x >= -1 && x <= 1 && z >= -1 && z <= 1) {
+            // the start room
+            if (y == terrain.spawnY || y == terrain.spawnY + 1) {
+                return AIR;
+            }
+            if (y == terrain.spawnY - 1) {
+                return STONE;
+            }
+        }
+        switch (terrain) {
+            case OPEN_CAVES:
+                if (y >= 80) {
+                    return AIR;
+                }
+                if (y < 70 && chance(hash(x >> 3, y >> 2, z >> 3), 45)) {
+                    return AIR;
+                }
+                return chance(hash(x, y, z), 1) ? ORE : STONE;
+            case DENSE_STONE:
+                if (y >= 80) {
+                    return AIR;
+                }
+                if ((x & 3) < 2 && (y & 3) < 2 && (z & 3) < 2 && chance(hash(x >> 2, y >> 2, z >> 2), 3)) {
+                    return ORE;
+                }
+                return STONE;
+            case WATER:
+                if (y <= 62) {
+                    return STONE;
+                }
+                if (y > 65) {
+                    return AIR;
+                }
+                if (chance(hash(x >> 4, 0, z >> 4), 70)) {
+                    return WATER;
+                }
+                return y == 63 ? STONE : AIR;
+            case FLAT:
+                if (y <= 63) {
+                    return STONE;
+                }
+                return y <= 65 && chance(hash(x, 0, z), 6) ? STONE : AIR;
+            default:
+                throw new IllegalStateException(terrain.toString());
+        }
+    }
+
+    /**
+     * @return The first position at or below y where a player can stand, or y itself if the column has none
+     */
+    public int standableY(int x, int y, int z) {
+        for (int feet = y; feet > 1; feet--) {
+            if (canWalkThrough(block(x, feet, z)) && canWalkThrough(block(x, feet + 1, z)) && canWalkOn(block(x, feet - 1, z))) {
+                return feet;
+            }
+        }
+        return y;
+    }
+
+    private static boolean chance(long hash, int percent) {
+        return (hash >>> 1) % 100 < percent;
+    }
+
+    private long hash(int x, int y, int z) {
+        long h = seed ^ x * 0x9E3779B97F4A7C15L ^ y * 0xC2B2AE3D27D4EB4FL ^ z * 0x165667B19E3779F9L;
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+}
@@ -0,0 +1,112 @@
+package baritone.pathing.calc;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.world.World;
+
+/*
+ * A revision number per chunk that goes up whenever blocks in or next to the chunk changed
+ *
+ * Anything worked out from blocks can remember the revisions of the chunks it looked at and later tell it is
+ * still valid by comparing them, without looking at a single block (MoveCostCache per move, PathCache per path)
+ *
+ * PathingBehavior forwards chunk and block events to markChunkDirty (like TargetBlockIndex), sync() gives the chunk and
+ * the 8 around it a new revision. The 8 around it because a move reads blocks up to 4 away from where it starts (parkour),
+ * which can be over the chunk border. A new world (or clear()) gives every chunk a new revision
+ *
+ * The revisions are an immutable snapshot that sync() replaces, so reading them never locks anything
+ */
+public final class ChunkRevisions {
+
+    /**
+     * The chunks of the world the game is in
+     */
+    public static final ChunkRevisions GAME = new ChunkRevisions();
+
+    private static final class Snapshot {
+
+        // chunks that changed since the last clear, every other chunk has base (the default return value)
+        final Long2IntOpenHashMap changed;
+        final int base;
+
+        Snapshot(Long2IntOpenHashMap changed, int base) {
+            changed.defaultReturnValue(base);
+            this.changed = changed;
+            this.base = base;
+        }
+    }
+
+    private final LongOpenHashSet dirtyChunks = new LongOpenHashSet();
+    private volatile boolean clearRequested;
+    private World world;
+    private volatile Snapshot snapshot = new Snapshot(new Long2IntOpenHashMap(), 0);
+    private int nextRevision;
+
+    /**
+     * Called from the game thread when blocks in a chunk changed, or the chunk was loaded or unloaded
+     */
+    public void markChunkDirty(int chunkX, int chunkZ) {
+        synchronized (dirtyChunks) {
+            dirtyChunks.add(chunkKey(chunkX, chunkZ));
+        }
+    }
+
+    /**
+     * Called from the game thread when the world changes, nothing from before counts after the next sync
+     */
+    public void clear() {
+        clearRequested = true;
+    }
+
+    /**
+     * Applies everything queued since the last sync, call before comparing revisions (every calculation does it in begin)
+     */
+    public synchronized void sync(World world) {
+        if (clearRequested || world != this.world) {
+            clearRequested = false;
+            this.world = world;
+            synchronized (dirtyChunks) {
+                dirtyChunks.clear();
+            }
+            snapshot = new Snapshot(new Long2IntOpenHashMap(), ++nextRevision);
+            return;
+        }
+        Long2IntOpenHashMap changed;
+        synchronized (dirtyChunks) {
+            if (dirtyChunks.isEmpty()) {
+                return;
+            }
+            changed = new Long2IntOpenHashMap(snapshot.changed);
+            LongIterator it = dirtyChunks.iterator();
+            while (it.hasNext()) {
+                long key = it.nextLong();
+                int chunkX = (int) key;
+                int chunkZ = (int) (key >>> 32);
+                for (int dx = -1; dx <= 1; dx++) {
+                    for (int dz = -1; dz <= 1; dz++) {
+                        changed.put(chunkKey(chunkX + dx, chunkZ + dz), ++nextRevision);
+                    }
+                }
+            }
+            dirtyChunks.clear();
+        }
+        snapshot = new Snapshot(changed, snapshot.base);
+    }
+
+    /**
+     * @return The revision of the chunk this block is in
+     */
+    public int revision(int x, int z) {
+        return chunkRevision(x >> 4, z >> 4);
+    }
+
+    public int chunkRevision(int chunkX, int chunkZ) {
+        Snapshot current = snapshot;
+        return current.changed.isEmpty() ? current.base : current.changed.get(chunkKey(chunkX, chunkZ));
+    }
+
+    static long chunkKey(int chunkX, int chunkZ) {
+        return (long) chunkX & 0xFFFFFFFFL | ((long) chunkZ & 0xFFFFFFFFL) << 32;
+    }
+}
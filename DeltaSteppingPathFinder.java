@@ -0,0 +1,428 @@
+package baritone.pathing.calc;
+
+import baritone.api.pathing.calc.IPath;
+import baritone.api.pathing.goals.Goal;
+import baritone.api.pathing.movement.ActionCosts;
+import baritone.api.utils.BetterBlockPos;
+import baritone.api.utils.SearchMetrics;
+import baritone.pathing.movement.CalculationContext;
+import baritone.utils.pathing.Favoring;
+import baritone.utils.pathing.MutableMoveResult;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+
+/*
+ * Delta-stepping (Meyer and Sanders): Dijkstra that settles a whole band of costs at once, so the band can be worked on in parallel
+ *
+ * Open nodes go in buckets by cost, bucket i holds the costs from i * delta up to (i + 1) * delta
+ * The smallest bucket that isn't empty is done like this:
+ *  - take every node out of it and expand them all at the same time, one share per thread
+ *  - moves that cost at most delta (light) are relaxed right away, they can land in the same bucket again, so repeat until it stays empty
+ *  - now every node that was taken out has its final cost, relax their other moves (heavy) all at once too
+ * The costs come out the same as DijkstraPathFinder's, a path is only cheaper or more expensive by the same MIN_IMPROVEMENT slack
+ *
+ * Each round has two parallel steps on a ForkJoinPool:
+ *  expand - thread w expands every P-th node with its own SearchSpace (the CalculationContext in there isn't thread safe,
+ *           so every thread gets its own) and writes what it found into requests, sorted by which shard the block belongs to
+ *  relax  - the nodes are split into P shards by position hash, each with its own map, thread s only touches shard s
+ * Nothing is locked, and between the steps only this thread runs, so the bucket bookkeeping, the best so far tracking
+ * and the snapshots for the renderer happen there without racing the workers
+ *
+ * In the game every thread but the first needs a CalculationContext made on the game thread, forGame does that
+ * The goal is reached when a bucket is done and one of its nodes is in the goal, the cheapest of those is the path
+ */
+public final class DeltaSteppingPathFinder extends AbstractNodeCostSearch {
+
+    // A bit more than walking two blocks, most walking and falling moves are light, mining is heavy
+    public static final double DEFAULT_DELTA = 10;
+
+    // Threads used by forGame, -Dbaritone.deltastepping.threads to change it at startup
+    public static volatile int defaultParallelism = Integer.getInteger("baritone.deltastepping.threads", Runtime.getRuntime().availableProcessors());
+
+    // One pool per parallelism so the searches don't start threads every time
+    private static final Map<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    // Open nodes are in a bucket when heapPosition is the bucket's number, and this while they are being expanded
+    private static final int EXPANDING = -2;
+
+    private final CalculationContext calcContext;
+    private final SearchSpace[] spaces;
+    private final double delta;
+    private final int parallelism;
+    private final ForkJoinPool pool;
+
+    private final Long2ObjectOpenHashMap<PathNode>[] shards;
+    private final Expander[] expanders;
+    private final List<Callable<Void>> expandTasks = new ArrayList<>();
+    private final List<Callable<List<PathNode>>> relaxTasks = new ArrayList<>();
+
+    // bucket i, nodes whose heapPosition isn't i anymore were moved to a cheaper bucket and are skipped
+    private final List<List<PathNode>> buckets = new ArrayList<>();
+    private List<PathNode> expanding = new ArrayList<>();
+
+    /**
+     * @param spaces One per thread, none of them may be used by anything else while this runs
+     */
+    @SuppressWarnings("unchecked")
+    public DeltaSteppingPathFinder(int startX, int startY, int startZ, Goal goal, CalculationContext context, double delta, SearchSpace[] spaces) {
+        super(startX, startY, startZ, goal, context, spaces[0], NodeStore.Kind.OBJECTS);
+        if (!(delta > 0)) {
+            throw new IllegalArgumentException("delta must be positive, not " + delta);
+        }
+        this.calcContext = context;
+        this.spaces = spaces;
+        this.delta = delta;
+        this.parallelism = spaces.length;
+        this.pool = POOLS.computeIfAbsent(parallelism, DeltaSteppingPathFinder::newPool);
+        this.shards = new Long2ObjectOpenHashMap[parallelism];
+        this.expanders = new Expander[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            shards[i] = new Long2ObjectOpenHashMap<>();
+            expanders[i] = new Expander(i);
+            int shard = i;
+            expandTasks.add(expanders[i]);
+            relaxTasks.add(() -> relax(shard));
+        }
+    }
+
+    /**
+     * For PathFinderRegistry, call on the game thread since it makes a CalculationContext for every thread but the first
+     */
+    public static DeltaSteppingPathFinder forGame(int startX, int startY, int startZ, Goal goal, Favoring favoring, CalculationContext context) {
+        SearchSpace[] spaces = new SearchSpace[Math.max(1, defaultParallelism)];
+        spaces[0] = new MovesSearchSpace(context);
+        for (int i = 1; i < spaces.length; i++) {
+            spaces[i] = new MovesSearchSpace(new CalculationContext(context.getBaritone(), true));
+        }
+        return new DeltaSteppingPathFinder(startX, startY, startZ, goal, context, DEFAULT_DELTA, spaces);
+    }
+
+    private static ForkJoinPool newPool(int parallelism) {
+        return new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("Baritone delta-stepping " + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    @Override
+    protected Optional<IPath> calculate0(long primaryTimeout, long failureTimeout) {
+        long hashCode = BetterBlockPos.longHash(startX, startY, startZ);
+        startNode = new PathNode(startX, startY, startZ, goal);
+        startNode.cost = 0;
+        shards[shardOf(hashCode)].put(hashCode, startNode);
+        startDeadlines(primaryTimeout, failureTimeout);
+        for (SearchSpace space : spaces) {
+            space.begin();
+        }
+        addToBucket(startNode);
+        openSetOperations++;
+
+        PathNode end = null;
+        // the phases are big, so read the clock after every one of them (shouldStop only reads it when the count is a multiple of 64)
+        for (int bucket = nextBucket(0); bucket >= 0 && end == null && !shouldStop(0); bucket = nextBucket(bucket)) {
+            List<PathNode> settled = new ArrayList<>();
+            // light moves, until nothing new lands in this bucket
+            while (!buckets.get(bucket).isEmpty() && !shouldStop(0)) {
+                List<PathNode> current = buckets.get(bucket);
+                buckets.set(bucket, expanding);
+                expanding = current;
+                removeStale(expanding, bucket);
+                for (PathNode node : expanding) {
+                    // so it goes back in this bucket if it gets cheaper while this round runs
+                    node.heapPosition = EXPANDING;
+                }
+                settled.addAll(expanding);
+                runPhase(expanding, true);
+                expanding.clear();
+            }
+            if (termination == SearchMetrics.Termination.CANCELLATION || termination == SearchMetrics.Termination.TIMEOUT) {
+                break;
+            }
+            // every cost in this bucket is final now
+            for (PathNode node : settled) {
+                node.heapPosition = -1;
+                if (goal.isInGoal(node.x, node.y, node.z) && (end == null || node.cost < end.cost)) {
+                    end = node;
+                }
+            }
+            if (end == null) {
+                // the expanders remember the heavy moves of the nodes they expanded, so this list is only for the count
+                runPhase(settled, false);
+            }
+        }
+        for (Expander expander : expanders) {
+            expander.heavy.clear();
+        }
+        if (cancelRequested) {
+            return Optional.empty();
+        }
+        if (end != null) {
+            termination = SearchMetrics.Termination.GOAL;
+            return Optional.of(new Path(startNode, end, numNodes, goal, calcContext));
+        }
+        return bestSoFar(true, numNodes);
+    }
+
+    /**
+     * Expands the nodes in parallel, relaxes what came out of it in parallel and puts the cheaper nodes in their buckets
+     *
+     * @param light true for the moves that cost at most delta, false for the rest
+     */
+    private void runPhase(List<PathNode> nodes, boolean light) {
+        for (Expander expander : expanders) {
+            expander.prepare(nodes, light);
+        }
+        invokeAll(expandTasks);
+        for (Expander expander : expanders) {
+            numMovementsConsidered += expander.movementsConsidered;
+            moveApplyNanos += expander.applyNanos;
+        }
+        if (light) {
+            numNodes += nodes.size();
+            openSetOperations += nodes.size();
+            for (PathNode node : nodes) {
+                mostRecentConsidered = node;
+                updateBestSoFar(node);
+            }
+        }
+        for (List<PathNode> improved : invokeAll(relaxTasks)) {
+            for (PathNode node : improved) {
+                addToBucket(node);
+                openSetOperations++;
+            }
+        }
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Relaxes every request for blocks in one shard, runs on a pool thread
+     *
+     * @return The nodes that got cheaper
+     */
+    private List<PathNode> relax(int shard) {
+        Long2ObjectOpenHashMap<PathNode> map = shards[shard];
+        List<PathNode> improved = new ArrayList<>();
+        for (Expander expander : expanders) {
+            Requests requests = expander.requests[shard];
+            for (int i = 0; i < requests.size; i++) {
+                long hashCode = requests.hashes[i];
+                PathNode neighbor = map.get(hashCode);
+                if (neighbor == null) {
+                    neighbor = new PathNode(requests.xyz[i * 3], requests.xyz[i * 3 + 1], requests.xyz[i * 3 + 2], goal);
+                    map.put(hashCode, neighbor);
+                }
+                double totalCost = requests.costs[i];
+                if (neighbor.cost - totalCost > MIN_IMPROVEMENT) {
+                    if (neighbor.combinedCost != -1) {
+                        // only once, it may get cheaper again from another request
+                        neighbor.combinedCost = -1;
+                        improved.add(neighbor);
+                    }
+                    neighbor.previous = requests.from[i];
+                    neighbor.cost = totalCost;
+                }
+            }
+            requests.clear();
+        }
+        for (PathNode node : improved) {
+            node.combinedCost = node.cost;
+        }
+        return improved;
+    }
+
+    private void addToBucket(PathNode node) {
+        int bucket = (int) (node.cost / delta);
+        while (buckets.size() <= bucket) {
+            buckets.add(new ArrayList<>());
+        }
+        if (node.heapPosition != bucket) {
+            node.heapPosition = bucket;
+            buckets.get(bucket).add(node);
+        }
+    }
+
+    private static void removeStale(List<PathNode> nodes, int bucket) {
+        nodes.removeIf(node -> node.heapPosition != bucket);
+    }
+
+    /**
+     * @return The first bucket from here on with a node still in it, or -1
+     */
+    private int nextBucket(int from) {
+        for (int bucket = from; bucket < buckets.size(); bucket++) {
+            List<PathNode> nodes = buckets.get(bucket);
+            removeStale(nodes, bucket);
+            if (!nodes.isEmpty()) {
+                return bucket;
+            }
+        }
+        return -1;
+    }
+
+    private int shardOf(long hashCode) {
+        return (int) ((hashCode ^ (hashCode >>> 32)) & Integer.MAX_VALUE) % parallelism;
+    }
+
+    @Override
+    protected int mapSize() {
+        int size = 0;
+        for (Long2ObjectOpenHashMap<PathNode> shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    @Override
+    protected int moveCacheHits() {
+        int hits = 0;
+        for (SearchSpace space : spaces) {
+            hits += space.cacheHits();
+        }
+        return hits;
+    }
+
+    @Override
+    protected int moveCacheLookups() {
+        int lookups = 0;
+        for (SearchSpace space : spaces) {
+            lookups += space.cacheLookups();
+        }
+        return lookups;
+    }
+
+    /**
+     * One thread's share of an expand step, with its own SearchSpace and its own request buffers per shard
+     */
+    private final class Expander implements Callable<Void> {
+
+        final int index;
+        final SearchSpace space;
+        final MutableMoveResult res = new MutableMoveResult();
+        final Requests[] requests;
+        // the heavy moves of the nodes this thread expanded in the light steps of this bucket, from is the node and costs the
+        // move's own cost, so the heavy step doesn't apply them again. Kept for the whole search, it only grows
+        final Requests heavy = new Requests();
+
+        List<PathNode> nodes;
+        boolean light;
+        long movementsConsidered;
+        long applyNanos;
+
+        Expander(int index) {
+            this.index = index;
+            this.space = spaces[index];
+            this.requests = new Requests[parallelism];
+            for (int i = 0; i < parallelism; i++) {
+                requests[i] = new Requests();
+            }
+        }
+
+        void prepare(List<PathNode> nodes, boolean light) {
+            this.nodes = nodes;
+            this.light = light;
+            this.movementsConsidered = 0;
+            this.applyNanos = 0;
+        }
+
+        @Override
+        public Void call() {
+            if (!light) {
+                // with the final costs now
+                for (int i = 0; i < heavy.size; i++) {
+                    request(heavy.from[i], heavy.xyz[i * 3], heavy.xyz[i * 3 + 1], heavy.xyz[i * 3 + 2], heavy.hashes[i], heavy.costs[i]);
+                }
+                heavy.clear();
+                return null;
+            }
+            int moveCount = space.moveCount();
+            for (int n = index; n < nodes.size(); n += parallelism) {
+                PathNode node = nodes.get(n);
+                for (int move = 0; move < moveCount; move++) {
+                    applyNanos += sampledApply(space, move, node.x, node.y, node.z, res, movementsConsidered);
+                    movementsConsidered++;
+                    double actionCost = res.cost;
+                    if (actionCost >= ActionCosts.COST_INF) {
+                        continue;
+                    }
+                    if (actionCost <= 0 || Double.isNaN(actionCost)) {
+                        throw new IllegalStateException(space.moveName(move) + " calculated implausible cost " + actionCost);
+                    }
+                    long hashCode = BetterBlockPos.longHash(res.x, res.y, res.z);
+                    if (actionCost <= delta) {
+                        request(node, res.x, res.y, res.z, hashCode, actionCost);
+                    } else {
+                        heavy.add(node, res.x, res.y, res.z, hashCode, actionCost);
+                    }
+                }
+                // a node expanded twice in one bucket (it got cheaper) has its heavy moves in here twice, the second relax
+                // just doesn't improve anything
+            }
+            return null;
+        }
+
+        private void request(PathNode from, int x, int y, int z, long hashCode, double actionCost) {
+            requests[shardOf(hashCode)].add(from, x, y, z, hashCode, from.cost + actionCost);
+        }
+    }
+
+    /**
+     * Relax requests in primitive arrays, so a round doesn't make an object per move
+     */
+    private static final class Requests {
+
+        PathNode[] from = new PathNode[64];
+        int[] xyz = new int[64 * 3];
+        long[] hashes = new long[64];
+        double[] costs = new double[64];
+        int size;
+
+        void add(PathNode from, int x, int y, int z, long hashCode, double cost) {
+            if (size == hashes.length) {
+                int capacity = size << 1;
+                this.from = Arrays.copyOf(this.from, capacity);
+                xyz = Arrays.copyOf(xyz, capacity * 3);
+                hashes = Arrays.copyOf(hashes, capacity);
+                costs = Arrays.copyOf(costs, capacity);
+            }
+            this.from[size] = from;
+            xyz[size * 3] = x;
+            xyz[size * 3 + 1] = y;
+            xyz[size * 3 + 2] = z;
+            hashes[size] = hashCode;
+            costs[size] = cost;
+            size++;
+        }
+
+        void clear() {
+            Arrays.fill(from, 0, size, null);
+            size = 0;
+        }
+    }
+}
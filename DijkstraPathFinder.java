@@ -1,26 +1,31 @@
 package baritone.pathing.calc;
 
-import baritone.Baritone;
 import baritone.api.pathing.calc.IPath;
 import baritone.api.pathing.goals.Goal;
+import baritone.api.pathing.goals.GoalBlock;
+import baritone.api.pathing.goals.GoalComposite;
+import baritone.api.pathing.goals.GoalGetToBlock;
+import baritone.api.pathing.goals.GoalTwoBlocks;
 import baritone.api.utils.BetterBlockPos;
+import baritone.api.utils.SearchMetrics;
+import baritone.api.utils.interfaces.IGoalRenderPos;
 import baritone.pathing.calc.openset.BinaryHeapOpenSet;
+import baritone.pathing.calc.openset.IOpenSet;
+import baritone.pathing.calc.openset.NodeStoreHeap;
+import baritone.pathing.calc.openset.RadixHeapOpenSet;
 import baritone.pathing.movement.CalculationContext;
-import baritone.pathing.movement.Moves;
-import baritone.utils.pathing.BetterWorldBorder;
 import baritone.utils.pathing.Favoring;
 import baritone.utils.pathing.MutableMoveResult;
 import baritone.api.pathing.movement.ActionCosts;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
+import baritone.utils.AsyncLogSink;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.block.*;
-import net.minecraft.init.Blocks;
-
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 /*
@@ -42,6 +47,36 @@ import java.util.Optional;
  * for each node/block in minecraft baritone has a specific hash to identfy each one
  * We also need to update and feed back a Path object that baritone uses to move the player in minecraft
  * 
+ * The binary heap sorts by combinedCost, so that has to be set on every node we relax
+ * For plain Dijkstra combinedCost is just the cost, with the goal directed mode on it is cost + weight * heuristic
+ * (that is weighted A*, with weight 1 it is normal A*)
+ * The goal directed mode goes down a ladder of weights, the first pass with a big weight finds some path fast
+ * then every pass after that uses a smaller weight and only keeps going while there is time left before the primary timeout
+ * A path from a pass with weight w costs at most w times the best one, so every pass makes the bound tighter
+ * If the goal has no usable heuristic we just do plain Dijkstra
+ *
+ * Bidirectional mode (plain Dijkstra only) is for goals that are one block or a few, like GoalBlock or the blocks around a mined ore:
+ * a second search goes backwards from the goal blocks at the same time, over the moves reversed (SearchSpace#sources),
+ * always growing whichever side has the smaller open set. Both searches only have to get about half way, so together they
+ * cover much less than one search that has to go the whole way
+ * best is the cheapest start -> meeting block -> goal found so far, and we can stop once the cheapest open node on each side
+ * together cost at least best, nothing left can beat it then
+ * The backward half is then turned around and glued onto the forward half so it is a normal Path for PathExecutor
+ *
+ * The open set of a plain Dijkstra pass (weight 0) can be a RadixHeapOpenSet instead of the BinaryHeapOpenSet, pick it with OpenSetType
+ * Dijkstra only ever takes out nodes in cost order, which is all a radix heap needs, and then every operation is O(1) (amortized)
+ * instead of O(log n). Weighted passes aren't in cost order (the heuristic isn't consistent) so they always use the binary heap
+ *
+ * With a NodeStore (NodeStore.Kind ARRAYS or OFF_HEAP) every pass runs on node ids in NodeStoreHeap instead of PathNode objects,
+ * only the path a pass ends with is turned into PathNodes. Bidirectional mode stays on PathNode objects
+ *
+ * Nearest targets (setTargetCount): mining has lots of ores to go to and used to search again for every next one.
+ * Dijkstra settles goal blocks in cost order anyway, so the pass just doesn't stop at the first one and keeps going until
+ * that many targets are settled. A target is one part of a GoalComposite (one ore, whichever of its blocks is reached first),
+ * any other goal is a single target (a GoalXZ would otherwise give the same column at k heights), so the count is at most
+ * the number of parts and a search never waits for targets that don't exist. The paths to all of them share the one search tree, getNearestPaths has them
+ * nearest first and calculate returns the path to the nearest like always
+ * Only plain Dijkstra settles in cost order, with goal directed weights it stops at the first one. Searched forward only
 
  * 
  */
@@ -49,30 +84,129 @@ import java.util.Optional;
 
 public final class DijkstraPathFinder extends AbstractNodeCostSearch {
 
+    // Plain Dijkstra, the heuristic is multiplied by 0 so the heap is ordered by cost only
+    public static final double[] DIJKSTRA = {0};
+
+    // Weights for the goal directed mode, biggest first, the last one is plain A*
+    public static final double[] WEIGHT_LADDER = {3, 2, 1.5, 1};
+
+    public enum OpenSetType {
+        BINARY_HEAP,
+        RADIX_HEAP
+    }
+
+    // Open set for plain Dijkstra passes when the constructor wasn't given one
+    public static volatile OpenSetType defaultOpenSet = OpenSetType.BINARY_HEAP;
+
+    // Turn this on to use WEIGHT_LADDER by default instead of DIJKSTRA
+    public static volatile boolean goalDirected = false;
+
+    // Turn this on to search from both ends by default when the goal is one block or a few (only without goalDirected)
+    public static volatile boolean bidirectional = false;
+
+    // Goals with more blocks than this are searched forward only
+    private static final int MAX_GOAL_BLOCKS = 256;
+
+    // logs.txt, rotated at 8MB keeping 3 old ones
+    private static final AsyncLogSink LOG_FILE = new AsyncLogSink(Paths.get("logs.txt"), 4096, 8L << 20, 3);
+
     private final CalculationContext calcContext;
-    private static final int timeCheckInterval = 1000000;
-    private boolean failing = false;
+    private final double[] weights;
+    private final boolean searchBothEnds;
+    private final OpenSetType openSetType;
+
+    // numNodes and numMovementsConsidered live in AbstractNodeCostSearch so they end up in the SearchMetrics
+    private long algorithmStartTime;
+    // Milliseconds until the search first reached diamond ore, -1 until it does
+    private long timeToFindDiamond = -1;
+
+    // How many targets a plain Dijkstra pass settles before it stops, see the comment at the top
+    private int targetCount = 1;
+    // Whether setTargetCount asked for more than one, even if the goal has only one part
+    private boolean collectTargets;
+    // The parts of the goal no target was in yet (taken ones are null), null unless collecting targets
+    private Goal[] openTargets;
+    // Settled targets in the order they were settled, which is by cost
+    private final List<PathNode> targets = new ArrayList<>();
+    private volatile List<IPath> nearestPaths = Collections.emptyList();
+
+    // The open set of the pass that is running, for makeRoom
+    private IOpenSet beamOpenSet;
 
     public DijkstraPathFinder(int startX, int startY, int startZ, Goal goal, Favoring favoring, CalculationContext context) {
-        super(startX, startY, startZ, goal, context);
+        this(startX, startY, startZ, goal, favoring, context, goalDirected ? WEIGHT_LADDER : DIJKSTRA, !goalDirected && bidirectional, new MovesSearchSpace(context));
+    }
+
+    public DijkstraPathFinder(int startX, int startY, int startZ, Goal goal, Favoring favoring, CalculationContext context, double[] weights) {
+        this(startX, startY, startZ, goal, favoring, context, weights, new MovesSearchSpace(context));
+    }
+
+    // For running without the game (benchmarks), the moves come from space instead of Baritone's Moves
+    public DijkstraPathFinder(int startX, int startY, int startZ, Goal goal, Favoring favoring, CalculationContext context, double[] weights, SearchSpace space) {
+        this(startX, startY, startZ, goal, favoring, context, weights, false, space);
+    }
+
+    // searchBothEnds only does anything with DIJKSTRA weights, PathNode objects and a goal that goalBlocks can list
+    public DijkstraPathFinder(int startX, int startY, int startZ, Goal goal, Favoring favoring, CalculationContext context, double[] weights, boolean searchBothEnds, SearchSpace space) {
+        this(startX, startY, startZ, goal, favoring, context, weights, searchBothEnds, NodeStore.defaultKind, space);
+    }
+
+    public DijkstraPathFinder(int startX, int startY, int startZ, Goal goal, Favoring favoring, CalculationContext context, double[] weights, boolean searchBothEnds, NodeStore.Kind nodeStorage, SearchSpace space) {
+        this(startX, startY, startZ, goal, favoring, context, weights, searchBothEnds, nodeStorage, defaultOpenSet, space);
+    }
+
+    // openSetType is for the passes on PathNode objects, a NodeStore has its own heap
+    public DijkstraPathFinder(int startX, int startY, int startZ, Goal goal, Favoring favoring, CalculationContext context, double[] weights, boolean searchBothEnds, NodeStore.Kind nodeStorage, OpenSetType openSetType, SearchSpace space) {
+        super(startX, startY, startZ, goal, context, space, nodeStorage);
         this.calcContext = context;
+        this.weights = weights;
+        this.searchBothEnds = searchBothEnds;
+        this.openSetType = openSetType;
     }
-    private void logToFile(String message) {
-        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
-        LocalDateTime now = LocalDateTime.now();
-        String timestamp = dtf.format(now);
-    
-        try (FileWriter fw = new FileWriter("logs.txt", true);
-             PrintWriter pw = new PrintWriter(fw)) {
-            pw.println("[" + timestamp + "] " + message);
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Plain forward Dijkstra that keeps going until count targets were reached, see the comment at the top
+     */
+    public static DijkstraPathFinder nearestTargets(int startX, int startY, int startZ, Goal goal, CalculationContext context, int count) {
+        DijkstraPathFinder finder = new DijkstraPathFinder(startX, startY, startZ, goal, null, context, DIJKSTRA, false, new MovesSearchSpace(context));
+        finder.setTargetCount(count);
+        return finder;
+    }
+
+    /**
+     * Call before calculate
+     *
+     * @param count How many targets to settle before stopping, 1 (the default) stops at the first goal block like always.
+     *              Capped at the number of parts of the goal, one target each
+     */
+    public void setTargetCount(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Target count " + count);
         }
+        targetCount = Math.min(count, targetParts(goal).length);
+        collectTargets = count > 1;
+    }
+
+    private static Goal[] targetParts(Goal goal) {
+        return goal instanceof GoalComposite ? ((GoalComposite) goal).goals() : new Goal[]{goal};
+    }
+
+    /**
+     * @return The path to every target the calculation reached, nearest first. Fewer than the target count if it ran out of
+     * time or blocks first. The first one is the same path calculate returned, but without its cutoff at the loaded chunks
+     * and the static cutoff, these go all the way to their target. Empty until calculate is done
+     */
+    public List<IPath> getNearestPaths() {
+        return nearestPaths;
+    }
+
+    // Only queues the line, the file is written by a background thread in batches so the search never waits on the disk
+    private void logToFile(String message) {
+        LOG_FILE.log(message);
     }
     
     @Override
     protected Optional<IPath> calculate0(long primaryTimeout, long failureTimeout) {
-        long algorithmStartTime = System.currentTimeMillis(); // Add timer start
+        algorithmStartTime = System.currentTimeMillis(); // Add timer start
         String startMessage = "Program started";
         logDebug(startMessage); // Log algorithm start
         logToFile(startMessage); // Log algorithm start to file
@@ -80,86 +214,149 @@ public final class DijkstraPathFinder extends AbstractNodeCostSearch {
         
         
         
-        // Initialize the start node and open set
-        startNode = getNodeAtPosition(startX, startY, startZ, BetterBlockPos.longHash(startX, startY, startZ));
-        startNode.cost = 0;
-        BinaryHeapOpenSet openSet = new BinaryHeapOpenSet();
-        openSet.insert(startNode);
-        
-        // Store movement results for baritone
-        MutableMoveResult res = new MutableMoveResult();
-        BetterWorldBorder worldBorder = new BetterWorldBorder(calcContext.world.getWorldBorder());
+        // Initialize the start node
+        placeStart();
+        startDeadlines(primaryTimeout, failureTimeout);
+        // Get the world ready, this also picks up blocks that changed since the last calculation
+        space.begin();
 
         // Some logging I tried to implement
         long startTime = System.currentTimeMillis();
 
-        // Baritone needs this to run
-        boolean slowPath = Baritone.settings().slowPath.value;
+        // No heuristic means nothing to direct the search with, so fall back to plain Dijkstra
+        double[] ladder = weights;
+        if (ladder[0] > 0 && !Double.isFinite(startNode.estimatedCostToGoal)) {
+            logDebug("No usable heuristic for " + goal + ", falling back to Dijkstra");
+            ladder = DIJKSTRA;
+        }
 
+        // Best complete path so far and the start node of the pass that found it
+        PathNode bestStart = null;
+        PathNode bestEnd = null;
+        double bestWeight = 0;
 
+        int[] goalBlocks = searchBothEnds && !collectTargets && store == null && ladder.length == 1 && ladder[0] == 0 ? goalBlocks(goal) : null;
+        if (collectTargets) {
+            openTargets = targetParts(goal).clone();
+        }
+        if (goalBlocks != null) {
+            logDebug("Searching from both ends, " + goalBlocks.length / 3 + " goal blocks");
+            bestEnd = searchBidirectional(goalBlocks);
+            bestStart = startNode;
+            // one pass only, the loop below is skipped
+            ladder = new double[0];
+        }
 
-        if (slowPath) {
-            logDebug("slowPath is on, path timeout will be " + Baritone.settings().slowPathTimeoutMS.value + "ms instead of " + primaryTimeout + "ms");
+        for (int pass = 0; pass < ladder.length; pass++) {
+            if (pass > 0) {
+                // Every pass needs fresh costs, the old nodes are still reachable from bestStart/bestEnd
+                clearNodeMap();
+                placeStart();
+            }
+            int passStartNodes = numNodes;
+            double costBound = bestEnd == null ? ActionCosts.COST_INF : bestEnd.cost;
+            PathNode end = store == null ? search(ladder[pass], costBound) : searchInStore(ladder[pass], costBound);
+            if (end == null && !targets.isEmpty()) {
+                // out of time or blocks before all the targets, the ones that were reached still count
+                end = targets.get(0);
+            }
+            if (end == null) {
+                // out of time, cancelled, or nothing cheaper than what we already have
+                break;
+            }
+            logDebug("Weight " + ladder[pass] + " found a path of cost " + end.cost + " expanding " + (numNodes - passStartNodes) + " nodes");
+            bestStart = startNode;
+            bestEnd = end;
+            bestWeight = ladder[pass];
         }
-        long primaryTimeoutTime = startTime + (slowPath ? Baritone.settings().slowPathTimeoutMS.value : primaryTimeout);
-        long failureTimeoutTime = startTime + (slowPath ? Baritone.settings().slowPathTimeoutMS.value : failureTimeout);
 
+        if (timeToFindDiamond >= 0) {
+            double timeToFindDiamondSeconds = timeToFindDiamond / 1000.0;
+            String logMessage = "Diamonds found in " + timeToFindDiamondSeconds + " seconds";
+            logDebug(logMessage); // Log to command
+            logToFile(logMessage); // Log to file
+        }
+    
+        if (cancelRequested) {
+            return Optional.empty();
+        }
+        if (!targets.isEmpty()) {
+            List<IPath> paths = new ArrayList<>(targets.size());
+            for (PathNode target : targets) {
+                paths.add(new Path(startNode, target, numNodes, goal, calcContext).postProcess());
+            }
+            nearestPaths = Collections.unmodifiableList(paths);
+            logDebug(targets.size() + " of " + targetCount + " targets reached, the furthest costs " + targets.get(targets.size() - 1).cost);
+        }
+        if (bestEnd != null) {
+            // a later pass may have timed out, but what we return reaches the goal
+            termination = SearchMetrics.Termination.GOAL;
+            logDebug("Took " + (System.currentTimeMillis() - startTime) + "ms, " + numMovementsConsidered + " movements considered, weight " + bestWeight);
+            return Optional.of(new Path(bestStart, bestEnd, numNodes, goal, calcContext));
+        }
+        System.out.println(numMovementsConsidered + " movements considered");
+        System.out.println("PathNode map size: " + mapSize());
+        System.out.println((int) (numNodes * 1.0 / ((System.currentTimeMillis() - startTime) / 1000F)) + " nodes per second");
+        Optional<IPath> result = bestSoFar(true, numNodes);
+        if (result.isPresent()) {
+            logDebug("Took " + (System.currentTimeMillis() - startTime) + "ms, " + numMovementsConsidered + " movements considered");
+        }
+        return result;
+    }
+
+    /**
+     * One pass of the search from startNode
+     *
+     * @param weight    How much the heuristic counts, 0 for Dijkstra
+     * @param costBound Nodes that already cost this much can't lead to a better path, so they are skipped
+     * @return The node in the goal, or null if the pass did not reach it
+     */
+    private PathNode search(double weight, double costBound) {
+        startNode.combinedCost = weight * startNode.estimatedCostToGoal;
+        IOpenSet openSet = weight == 0 && openSetType == OpenSetType.RADIX_HEAP ? new RadixHeapOpenSet() : new BinaryHeapOpenSet();
+        openSet.insert(startNode);
+        openSetOperations++;
+        beamOpenSet = openSet;
+        
+        // Store movement results for baritone
+        MutableMoveResult res = new MutableMoveResult();
 
-        int numNodes = 0;
-        int numMovementsConsidered = 0;
+        // Baritone needs this to run
+        // (the timeouts for it are handled by startDeadlines now)
+        boolean slowPath = settings.slowPath;
 
-        // Array of moves from Baritone; For the their movement program to work
-        // As a plus we can get posible neighborsfrom this array
-        Moves[] allMoves = Moves.values();
+        // Moves from Baritone (through the search space); For the their movement program to work
+        // As a plus we can get posible neighbors from these
+        int moveCount = space.moveCount();
         
-        // Main loop: keep processing nodes in the open set until it's empty or a cancel request is made
-        while (!openSet.isEmpty() && !cancelRequested) {
-            // Check for timeouts every timeCheckInterval nodes
-            if ((numNodes & (timeCheckInterval - 1)) == 0) {
-                long now = System.currentTimeMillis();
-                if (now >= failureTimeoutTime || (!failing && now >= primaryTimeoutTime)) {
-                    break;
-                }
-            }
+        // Main loop: keep processing nodes in the open set until it's empty, a cancel request is made or we run out of time
+        // shouldStop only looks at the clock every TIME_CHECK_INTERVAL nodes so this is cheap
+        while (!openSet.isEmpty() && !shouldStop(numNodes)) {
             if (slowPath) {
                 try {
-                    Thread.sleep(Baritone.settings().slowPathTimeDelayMS.value);
+                    Thread.sleep(settings.slowPathTimeDelayMS);
                 } catch (InterruptedException ignored) {}
             }
             // Get the node with the lowest cost in the open set
             PathNode currentNode = openSet.removeLowest();
+            openSetOperations++;
             mostRecentConsidered = currentNode;
+            updateBestSoFar(currentNode);
             numNodes++;
+            traceExpand(currentNode);
 
             // Check if the current node is within the goal
-            if (goal.isInGoal(currentNode.x, currentNode.y, currentNode.z)) {
-                logDebug("Took " + (System.currentTimeMillis() - startTime) + "ms, " + numMovementsConsidered + " movements considered");
-                return Optional.of(new Path(startNode, currentNode, numNodes, goal, calcContext));
+            if (goal.isInGoal(currentNode.x, currentNode.y, currentNode.z) && settledTarget(weight, currentNode)) {
+                termination = SearchMetrics.Termination.GOAL;
+                return targets.isEmpty() ? currentNode : targets.get(0);
             }
             
             // Iterate through all possible moves from the current node
-            for (Moves move : allMoves) {
-
-                // Create new position
-                int newX = currentNode.x + move.xOffset;
-                int newY = currentNode.y + move.yOffset;
-                int newZ = currentNode.z + move.zOffset;
-                
-
-                // Check if the new position is within the world border
-                if (!worldBorder.entirelyContains(newX, newZ)) {
-                    continue;
-                }
-                // Check if the new position is within the valid Y-coordinate range
-                if (newY > 256 || newY < 0) {
-                    continue;
-                }
-
-                // Needed so player can move again
-                res.reset();
+            for (int move = 0; move < moveCount; move++) {
 
                 // Baritone method that actually moves the player
-                move.apply(calcContext, currentNode.x, currentNode.y, currentNode.z, res);
+                // This also does the world border and Y range checks, moves outside of them cost COST_INF
+                moveApplyNanos += sampledApply(space, move, currentNode.x, currentNode.y, currentNode.z, res, numMovementsConsidered);
                 
                 
                 numMovementsConsidered++;
@@ -168,54 +365,372 @@ public final class DijkstraPathFinder extends AbstractNodeCostSearch {
                 double actionCost = res.cost;
 
 
-                // Check if the block at the new position is diamond ore
-                BlockPos newPos = new BlockPos(res.x, res.y, res.z);
-                if (calcContext.world.getBlockState(newPos).getBlock() == Blocks.DIAMOND_ORE) {
-                    long timeToFindDiamond = System.currentTimeMillis() - algorithmStartTime; // Calculate time taken to find diamond
-                    double timeToFindDiamondSeconds = timeToFindDiamond / 1000.0;
-                    String logMessage = "Diamonds found in " + timeToFindDiamondSeconds + " seconds";
-                    logDebug(logMessage); // Log to command
-                    logToFile(logMessage); // Log to file
-                }
-
                 // Skip if the action cost is infinite or invalid
                 if (actionCost >= ActionCosts.COST_INF) {
                     continue;
                 }
                 if (actionCost <= 0 || Double.isNaN(actionCost)) {
-                    throw new IllegalStateException(move + " calculated implausible cost " + actionCost);
+                    throw new IllegalStateException(space.moveName(move) + " calculated implausible cost " + actionCost);
+                }
+
+                // Check if the block at the new position is diamond ore, only until the first one is found
+                // This only writes down the time, it gets logged after the search (no BlockPos or world lookup in here anymore)
+                if (timeToFindDiamond < 0 && space.isTarget(res.x, res.y, res.z)) {
+                    timeToFindDiamond = System.currentTimeMillis() - algorithmStartTime; // Calculate time taken to find diamond
                 }
                 
                 // Calculate the cost for the neighbor node
+                double totalCost = currentNode.cost + actionCost;
+                // An earlier pass already found a path this cheap, so this can't beat it
+                if (totalCost >= costBound) {
+                    continue;
+                }
                 long hashCode = BetterBlockPos.longHash(res.x, res.y, res.z);
                 PathNode neighbor = getNodeAtPosition(res.x, res.y, res.z, hashCode);
-                double totalCost = currentNode.cost + actionCost;
+                if (isRetired(neighbor)) {
+                    continue;
+                }
                 
                 // If the current total Cost is better than the neighbor's current cost, update the neighbor
                 if (neighbor.cost - totalCost > MIN_IMPROVEMENT) {
                     neighbor.previous = currentNode;
                     neighbor.cost = totalCost;
+                    // The heap sorts by combinedCost
+                    neighbor.combinedCost = weight == 0 ? totalCost : totalCost + weight * neighbor.estimatedCostToGoal;
                     // Check if the node is visited or not, if not then add it to the binary heap
                     if (neighbor.isOpen()) {
                         openSet.update(neighbor);
                     } else {
                         openSet.insert(neighbor);
                     }
+                    openSetOperations++;
+                    traceRelax(neighbor, move);
                 }
             }
         }
-    
-        if (cancelRequested) {
-            return Optional.empty();
+        beamOpenSet = null;
+        return null;
+    }
+
+    /**
+     * Over the memory budget: prunes the open set of the running pass (PathNode map only, see pruneToBudget)
+     */
+    @Override
+    protected boolean makeRoom() {
+        IOpenSet openSet = beamOpenSet;
+        if (openSet == null) {
+            return false;
         }
-        System.out.println(numMovementsConsidered + " movements considered");
-        System.out.println("Open set size: " + openSet.size());
-        System.out.println("PathNode map size: " + mapSize());
-        System.out.println((int) (numNodes * 1.0 / ((System.currentTimeMillis() - startTime) / 1000F)) + " nodes per second");
-        Optional<IPath> result = bestSoFar(true, numNodes);
-        if (result.isPresent()) {
-            logDebug("Took " + (System.currentTimeMillis() - startTime) + "ms, " + numMovementsConsidered + " movements considered");
+        PathNode[] open = beamScratch(0);
+        int count = 0;
+        while (!openSet.isEmpty()) {
+            if (count == open.length) {
+                open = beamScratch(count + 1);
+            }
+            open[count++] = openSet.removeLowest();
         }
-        return result;
+        int keep = pruneToBudget(open, count);
+        // the lowest combinedCost goes in first, the radix heap only takes keys that don't go below the first
+        for (int i = 0; i < keep; i++) {
+            openSet.insert(open[i]);
+            open[i] = null;
+        }
+        openSetOperations += (long) count + keep;
+        return prunedEnough();
+    }
+
+    /**
+     * search() on node ids in the store, see there for what every step does
+     *
+     * @return The node in the goal built as PathNodes, or null if the pass did not reach it
+     */
+    private PathNode searchInStore(double weight, double costBound) {
+        NodeStoreHeap openSet = new NodeStoreHeap(store);
+        openSet.insert(startIndex, weight * store.estimatedCostToGoal(startIndex));
+        openSetOperations++;
+
+        MutableMoveResult res = new MutableMoveResult();
+        boolean slowPath = settings.slowPath;
+        int moveCount = space.moveCount();
+
+        while (!openSet.isEmpty() && !shouldStop(numNodes)) {
+            if (slowPath) {
+                try {
+                    Thread.sleep(settings.slowPathTimeDelayMS);
+                } catch (InterruptedException ignored) {}
+            }
+            int current = openSet.removeLowest();
+            openSetOperations++;
+            mostRecentIndex = current;
+            updateBestSoFar(current);
+            numNodes++;
+            traceExpand(current);
+
+            int x = store.x(current);
+            int y = store.y(current);
+            int z = store.z(current);
+            if (goal.isInGoal(x, y, z)) {
+                PathNode chain = store.chain(current);
+                if (settledTarget(weight, chain)) {
+                    termination = SearchMetrics.Termination.GOAL;
+                    return targets.isEmpty() ? chain : targets.get(0);
+                }
+            }
+            double currentCost = store.cost(current);
+
+            for (int move = 0; move < moveCount; move++) {
+                moveApplyNanos += sampledApply(space, move, x, y, z, res, numMovementsConsidered);
+                numMovementsConsidered++;
+
+                double actionCost = res.cost;
+                if (actionCost >= ActionCosts.COST_INF) {
+                    continue;
+                }
+                if (actionCost <= 0 || Double.isNaN(actionCost)) {
+                    throw new IllegalStateException(space.moveName(move) + " calculated implausible cost " + actionCost);
+                }
+                if (timeToFindDiamond < 0 && space.isTarget(res.x, res.y, res.z)) {
+                    timeToFindDiamond = System.currentTimeMillis() - algorithmStartTime;
+                }
+                double totalCost = currentCost + actionCost;
+                if (totalCost >= costBound) {
+                    continue;
+                }
+                int neighbor = store.getOrCreate(res.x, res.y, res.z, BetterBlockPos.longHash(res.x, res.y, res.z));
+                if (store.cost(neighbor) - totalCost > MIN_IMPROVEMENT) {
+                    store.setPrevious(neighbor, current);
+                    store.setCost(neighbor, totalCost);
+                    double combinedCost = weight == 0 ? totalCost : totalCost + weight * store.estimatedCostToGoal(neighbor);
+                    if (openSet.isOpen(neighbor)) {
+                        openSet.update(neighbor, combinedCost);
+                    } else {
+                        openSet.insert(neighbor, combinedCost);
+                    }
+                    openSetOperations++;
+                    traceRelax(neighbor, move);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Called for every goal node a pass settles, adds it to targets if it is a new one
+     *
+     * @return Whether the pass is done
+     */
+    private boolean settledTarget(double weight, PathNode node) {
+        if (openTargets == null || weight != 0) {
+            return true;
+        }
+        for (int i = 0; i < openTargets.length; i++) {
+            if (openTargets[i] != null && openTargets[i].isInGoal(node.x, node.y, node.z)) {
+                openTargets[i] = null;
+                targets.add(node);
+                break;
+            }
+        }
+        // targetCount is at most the number of parts, so this is reached once every part has one
+        return targets.size() >= targetCount;
+    }
+
+    /**
+     * Every block the goal is made of, for a backward search to start from (also used by IncrementalPathFinder)
+     *
+     * @return x, y, z of each block one after the other, or null if the goal isn't a kind we can list (or is too big)
+     */
+    static int[] goalBlocks(Goal goal) {
+        Goal[] parts = goal instanceof GoalComposite ? ((GoalComposite) goal).goals() : new Goal[]{goal};
+        int[] blocks = new int[MAX_GOAL_BLOCKS * 3];
+        int count = 0;
+        for (Goal part : parts) {
+            if (!(part instanceof GoalBlock || part instanceof GoalTwoBlocks || part instanceof GoalGetToBlock)) {
+                return null;
+            }
+            // all of these are in this box around their block
+            BlockPos pos = ((IGoalRenderPos) part).getGoalPos();
+            for (int x = pos.getX() - 1; x <= pos.getX() + 1; x++) {
+                for (int y = pos.getY() - 2; y <= pos.getY() + 1; y++) {
+                    for (int z = pos.getZ() - 1; z <= pos.getZ() + 1; z++) {
+                        if (!part.isInGoal(x, y, z)) {
+                            continue;
+                        }
+                        if (count == MAX_GOAL_BLOCKS) {
+                            return null;
+                        }
+                        blocks[count * 3] = x;
+                        blocks[count * 3 + 1] = y;
+                        blocks[count * 3 + 2] = z;
+                        count++;
+                    }
+                }
+            }
+        }
+        return count == 0 ? null : Arrays.copyOf(blocks, count * 3);
+    }
+
+    /**
+     * Dijkstra from the start and backwards from the goal blocks at the same time, see the comment at the top
+     *
+     * @return The end of a start -> goal chain of nodes, or null if the two sides never met
+     */
+    private PathNode searchBidirectional(int[] goalBlocks) {
+        startNode.combinedCost = 0;
+        BinaryHeapOpenSet forward = new BinaryHeapOpenSet();
+        forward.insert(startNode);
+        openSetOperations++;
+
+        // The backward side has its own nodes, their cost is the cost to the goal and previous is the next node towards the goal
+        Long2ObjectOpenHashMap<PathNode> backwardNodes = new Long2ObjectOpenHashMap<>();
+        BinaryHeapOpenSet backward = new BinaryHeapOpenSet();
+        for (int i = 0; i < goalBlocks.length; i += 3) {
+            PathNode node = backwardNode(backwardNodes, goalBlocks[i], goalBlocks[i + 1], goalBlocks[i + 2]);
+            if (node.isOpen()) {
+                continue; // listed twice by a composite goal
+            }
+            node.cost = 0;
+            node.combinedCost = 0;
+            backward.insert(node);
+            openSetOperations++;
+        }
+
+        MutableMoveResult res = new MutableMoveResult();
+        int moveCount = space.moveCount();
+        int[] sources = new int[3 * space.maxSources()];
+        boolean slowPath = settings.slowPath;
+
+        // Cheapest start -> goal through a block both sides have reached
+        double best = ActionCosts.COST_INF;
+        PathNode meetForward = null;
+        PathNode meetBackward = null;
+        PathNode startBackward = backwardNodes.get(BetterBlockPos.longHash(startX, startY, startZ));
+        if (startBackward != null) {
+            // already in the goal
+            best = 0;
+            meetForward = startNode;
+            meetBackward = startBackward;
+        }
+        // The heaps can't be peeked, but Dijkstra takes nodes out in cost order, so the last one taken is a lower bound of the next
+        double lastForward = 0;
+        double lastBackward = 0;
+
+        while (!forward.isEmpty() && !backward.isEmpty() && !shouldStop(numNodes)) {
+            if (slowPath) {
+                try {
+                    Thread.sleep(settings.slowPathTimeDelayMS);
+                } catch (InterruptedException ignored) {}
+            }
+            boolean goForward = forward.size() <= backward.size();
+            PathNode currentNode = (goForward ? forward : backward).removeLowest();
+            openSetOperations++;
+            numNodes++;
+            if (goForward) {
+                lastForward = currentNode.cost;
+            } else {
+                lastBackward = currentNode.cost;
+            }
+            if (lastForward + lastBackward >= best) {
+                // the stopping rule, nothing still open on either side can make a cheaper path
+                break;
+            }
+
+            if (goForward) {
+                mostRecentConsidered = currentNode;
+                updateBestSoFar(currentNode);
+                for (int move = 0; move < moveCount; move++) {
+                    moveApplyNanos += sampledApply(space, move, currentNode.x, currentNode.y, currentNode.z, res, numMovementsConsidered);
+                    numMovementsConsidered++;
+                    double actionCost = res.cost;
+                    if (actionCost >= ActionCosts.COST_INF) {
+                        continue;
+                    }
+                    if (actionCost <= 0 || Double.isNaN(actionCost)) {
+                        throw new IllegalStateException(space.moveName(move) + " calculated implausible cost " + actionCost);
+                    }
+                    if (timeToFindDiamond < 0 && space.isTarget(res.x, res.y, res.z)) {
+                        timeToFindDiamond = System.currentTimeMillis() - algorithmStartTime;
+                    }
+                    double totalCost = currentNode.cost + actionCost;
+                    long hashCode = BetterBlockPos.longHash(res.x, res.y, res.z);
+                    PathNode neighbor = getNodeAtPosition(res.x, res.y, res.z, hashCode);
+                    if (neighbor.cost - totalCost > MIN_IMPROVEMENT) {
+                        neighbor.previous = currentNode;
+                        neighbor.cost = totalCost;
+                        neighbor.combinedCost = totalCost;
+                        if (neighbor.isOpen()) {
+                            forward.update(neighbor);
+                        } else {
+                            forward.insert(neighbor);
+                        }
+                        openSetOperations++;
+                        PathNode other = backwardNodes.get(hashCode);
+                        if (other != null && totalCost + other.cost < best) {
+                            best = totalCost + other.cost;
+                            meetForward = neighbor;
+                            meetBackward = other;
+                        }
+                    }
+                }
+            } else {
+                for (int move = 0; move < moveCount; move++) {
+                    int count = space.sources(move, currentNode.x, currentNode.y, currentNode.z, sources);
+                    for (int i = 0; i < count * 3; i += 3) {
+                        // only a real edge if going forward from the source actually ends up here
+                        moveApplyNanos += sampledApply(space, move, sources[i], sources[i + 1], sources[i + 2], res, numMovementsConsidered);
+                        numMovementsConsidered++;
+                        double actionCost = res.cost;
+                        if (actionCost >= ActionCosts.COST_INF || res.x != currentNode.x || res.y != currentNode.y || res.z != currentNode.z) {
+                            continue;
+                        }
+                        if (actionCost <= 0 || Double.isNaN(actionCost)) {
+                            throw new IllegalStateException(space.moveName(move) + " calculated implausible cost " + actionCost);
+                        }
+                        double totalCost = currentNode.cost + actionCost;
+                        PathNode neighbor = backwardNode(backwardNodes, sources[i], sources[i + 1], sources[i + 2]);
+                        if (neighbor.cost - totalCost > MIN_IMPROVEMENT) {
+                            neighbor.previous = currentNode;
+                            neighbor.cost = totalCost;
+                            neighbor.combinedCost = totalCost;
+                            if (neighbor.isOpen()) {
+                                backward.update(neighbor);
+                            } else {
+                                backward.insert(neighbor);
+                            }
+                            openSetOperations++;
+                            PathNode other = getExistingNode(BetterBlockPos.longHash(neighbor.x, neighbor.y, neighbor.z));
+                            if (other != null && other.cost + totalCost < best) {
+                                best = other.cost + totalCost;
+                                meetForward = other;
+                                meetBackward = neighbor;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        if (meetForward == null) {
+            return null;
+        }
+        termination = SearchMetrics.Termination.GOAL;
+        // Walk the backward chain to the goal, adding each block after the forward chain with the cost going up by each move
+        // These are new nodes, not the ones in the map, so the forward tree isn't touched
+        PathNode end = meetForward;
+        for (PathNode node = meetBackward; node.previous != null; node = node.previous) {
+            PathNode next = new PathNode(node.previous.x, node.previous.y, node.previous.z, goal);
+            next.cost = end.cost + (node.cost - node.previous.cost);
+            next.previous = end;
+            end = next;
+        }
+        return end;
+    }
+
+    private PathNode backwardNode(Long2ObjectOpenHashMap<PathNode> nodes, int x, int y, int z) {
+        long hashCode = BetterBlockPos.longHash(x, y, z);
+        PathNode node = nodes.get(hashCode);
+        if (node == null) {
+            node = new PathNode(x, y, z, goal);
+            nodes.put(hashCode, node);
+        }
+        return node;
     }
 }
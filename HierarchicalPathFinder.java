@@ -0,0 +1,518 @@
+package baritone.pathing.calc;
+
+import baritone.api.pathing.calc.IPath;
+import baritone.api.pathing.goals.Goal;
+import baritone.api.pathing.goals.GoalXZ;
+import baritone.api.pathing.movement.ActionCosts;
+import baritone.api.utils.BetterBlockPos;
+import baritone.api.utils.SearchMetrics;
+import baritone.api.utils.interfaces.IGoalRenderPos;
+import baritone.pathing.calc.openset.BinaryHeapOpenSet;
+import baritone.pathing.movement.CalculationContext;
+import baritone.utils.pathing.Favoring;
+import baritone.utils.pathing.MutableMoveResult;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * HPA* (Botea, Mueller and Schaeffer): search the chunks first, then only the blocks of the next few
+ *
+ * For a goal 1000 blocks away every other finder goes through every block on the way, and most of what it expands
+ * is thrown away because the path gets cut at the loaded chunks anyway. This one works in two levels:
+ *
+ * Abstract level - the clusters are chunk sections (16x16x16). A block a move lands on when it crosses into another
+ *  section is an entrance of that section. From an entrance, a Dijkstra that never leaves its section gives the cost
+ *  to every move that leaves it again (the exits), which are the edges of the abstract graph. Exits are grouped by the
+ *  4x4x4 cell they land in and only the one with the smallest hash is kept per cell, so entrances from different
+ *  searches are the same blocks and the graph stays small. A* (the goal's own heuristic) runs on that graph
+ *  from the start to a goal block, or to the first entrance in a chunk that isn't loaded (nothing is known past it,
+ *  the cheapest one by cost + heuristic wins, like the block search does with the loaded chunk cutoff)
+ *
+ * Block level - the path is only worked out for the sections of the first REFINE_SECTIONS abstract steps: a Dijkstra
+ *  that only goes through those sections, to the entrance the abstract path reached there (or the goal if it is that close).
+ *  The rest is left for the next segment, planning ahead starts at that entrance and finds its edges already there
+ *
+ * The exits of an entrance only depend on the blocks of its chunk and the chunks next to it, so they are kept between
+ * calculations (State, GAME for the game) with the ChunkRevisions revision of the chunk and the SearchSpace fingerprint,
+ * and worked out again when either changed. A section is only looked at once the abstract A* reaches it, so what a trip
+ * costs is the sections along the way the first time and not much after that
+ *
+ * Only goals whose chunks are known can end the abstract search (blocks, GoalXZ), in those chunks the exits are always
+ * worked out again to also find the goal blocks. forGame gives everything else to DijkstraPathFinder
+ * The abstract search gets half the primary timeout. When it runs out the block level heads for the entrance closest to the
+ * goal it settled so far, or if it didn't get past the start's section, the best so far inside that section, so a far
+ * goal still gets a segment to start walking like it would from Dijkstra
+ *
+ * PathingBehavior uses this for goals at least farDistance away whatever engine is selected, it is also an engine on its own
+ * Favoring is not applied, the exits are shared by every search
+ */
+public final class HierarchicalPathFinder extends AbstractNodeCostSearch {
+
+    public static final String NAME = "Hierarchical";
+
+    // Goals at least this far away (horizontally) go through here, -Dbaritone.hierarchical.distance=0 turns that off
+    public static volatile int farDistance = Integer.getInteger("baritone.hierarchical.distance", 256);
+
+    // How many abstract steps are turned into blocks per segment
+    private static final int REFINE_SECTIONS = Integer.getInteger("baritone.hierarchical.refineSections", 6);
+
+    // Exits are grouped in cells of 8x8x8 blocks, so a section face has about 4 entrances
+    private static final int CELL_SHIFT = 3;
+    private static final int CELL_MASK = (1 << CELL_SHIFT) - 1;
+
+    // Weighted A* on the abstract graph, a path costs at most this times the cheapest one through the entrances
+    // With plain A* the heuristic (sprinting on flat ground) is so far below what sections really cost that it expands
+    // hundreds of entrances per section, with 2 the paths were within a percent of that on the synthetic worlds
+    private static final double ABSTRACT_WEIGHT = 2;
+
+    // Once this many entrances have exits the next calculation starts over
+    private static final int MAX_ENTRANCES = Integer.getInteger("baritone.hierarchical.maxEntrances", 1 << 18);
+
+    /**
+     * The exits the game's searches worked out
+     */
+    public static final State GAME = new State(ChunkRevisions.GAME);
+
+    /**
+     * The edges of one entrance: x, y, z of every exit one after the other and the cost to it
+     */
+    private static final class Exits {
+
+        final int[] blocks;
+        final double[] costs;
+        final int revision;
+        final int fingerprint;
+
+        Exits(int[] blocks, double[] costs, int revision, int fingerprint) {
+            this.blocks = blocks;
+            this.costs = costs;
+            this.revision = revision;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    /**
+     * Exits by entrance, kept between calculations. Only one calculation uses it at a time
+     */
+    public static final class State {
+
+        private final ChunkRevisions chunkRevisions;
+        private final Long2ObjectOpenHashMap<Exits> exits = new Long2ObjectOpenHashMap<>();
+
+        /**
+         * @param chunkRevisions The chunks of the world the searches run in
+         */
+        public State(ChunkRevisions chunkRevisions) {
+            this.chunkRevisions = chunkRevisions;
+        }
+
+        public synchronized int size() {
+            return exits.size();
+        }
+    }
+
+    /**
+     * Collects the exits of one section search, see the comment at the top for the cells
+     */
+    private static final class ExitCollector {
+
+        private final Long2IntOpenHashMap cells = new Long2IntOpenHashMap();
+        private int[] blocks = new int[3 * 64];
+        private int[] offCenters = new int[64];
+        private long[] hashes = new long[64];
+        private double[] costs = new double[64];
+        private int count;
+
+        ExitCollector() {
+            cells.defaultReturnValue(-1);
+        }
+
+        void add(int x, int y, int z, double cost) {
+            long cell = BetterBlockPos.longHash(x >> CELL_SHIFT, y >> CELL_SHIFT, z >> CELL_SHIFT);
+            // how far from the middle of its cell, the hash breaks ties so the pick doesn't depend on the order
+            int half = 1 << (CELL_SHIFT - 1);
+            int dx = (x & CELL_MASK) - half;
+            int dy = (y & CELL_MASK) - half;
+            int dz = (z & CELL_MASK) - half;
+            int offCenter = dx * dx + dy * dy + dz * dz;
+            long hash = BetterBlockPos.longHash(x, y, z);
+            int index = cells.get(cell);
+            if (index < 0) {
+                if (count == costs.length) {
+                    blocks = Arrays.copyOf(blocks, blocks.length << 1);
+                    offCenters = Arrays.copyOf(offCenters, offCenters.length << 1);
+                    hashes = Arrays.copyOf(hashes, hashes.length << 1);
+                    costs = Arrays.copyOf(costs, costs.length << 1);
+                }
+                index = count++;
+                cells.put(cell, index);
+            } else if (offCenter != offCenters[index] ? offCenter > offCenters[index] : hash != hashes[index] ? hash > hashes[index] : cost >= costs[index]) {
+                return;
+            }
+            blocks[index * 3] = x;
+            blocks[index * 3 + 1] = y;
+            blocks[index * 3 + 2] = z;
+            offCenters[index] = offCenter;
+            hashes[index] = hash;
+            costs[index] = cost;
+        }
+
+        Exits build(int revision, int fingerprint) {
+            return new Exits(Arrays.copyOf(blocks, count * 3), Arrays.copyOf(costs, count), revision, fingerprint);
+        }
+    }
+
+    private final CalculationContext calcContext;
+    private final State state;
+    private final LongOpenHashSet goalChunks;
+    private final MutableMoveResult res = new MutableMoveResult();
+
+    // set when shouldStop said so during a section search, or the abstract search ran past abstractDeadline, it stops too then
+    private boolean stopped;
+    // when the abstract search stops to leave time for the block level, System.nanoTime
+    private long abstractDeadline;
+
+    // the cheapest goal block the last section search settled, if its section is in a goal chunk
+    private PathNode goalHit;
+
+    // for the log
+    private int sectionsSearched;
+    private int sectionsReused;
+
+    /**
+     * @param goalChunks The chunks the goal can be in, see goalChunks
+     * @param state      Where the exits are kept, pass the same one for every search in the same world
+     */
+    public HierarchicalPathFinder(int startX, int startY, int startZ, Goal goal, CalculationContext context, LongOpenHashSet goalChunks, State state, SearchSpace space) {
+        super(startX, startY, startZ, goal, context, space, NodeStore.Kind.OBJECTS);
+        this.calcContext = context;
+        this.goalChunks = goalChunks;
+        this.state = state;
+    }
+
+    /**
+     * For PathFinderRegistry, searches on GAME, or with a fresh Dijkstra if the goal's chunks aren't known
+     */
+    public static AbstractNodeCostSearch forGame(int startX, int startY, int startZ, Goal goal, Favoring favoring, CalculationContext context) {
+        LongOpenHashSet goalChunks = goalChunks(goal);
+        if (goalChunks == null) {
+            return new DijkstraPathFinder(startX, startY, startZ, goal, favoring, context);
+        }
+        return new HierarchicalPathFinder(startX, startY, startZ, goal, context, goalChunks, GAME, new MovesSearchSpace(context));
+    }
+
+    /**
+     * @return Whether the goal is far enough from the start to be searched here, see farDistance
+     */
+    public static boolean isFar(int startX, int startZ, Goal goal) {
+        int distance = farDistance;
+        if (distance <= 0) {
+            return false;
+        }
+        int goalX;
+        int goalZ;
+        if (goal instanceof IGoalRenderPos) {
+            BlockPos pos = ((IGoalRenderPos) goal).getGoalPos();
+            goalX = pos.getX();
+            goalZ = pos.getZ();
+        } else if (goal instanceof GoalXZ) {
+            goalX = ((GoalXZ) goal).getX();
+            goalZ = ((GoalXZ) goal).getZ();
+        } else {
+            return false;
+        }
+        long dx = goalX - startX;
+        long dz = goalZ - startZ;
+        return dx * dx + dz * dz >= (long) distance * distance && goalChunks(goal) != null;
+    }
+
+    /**
+     * @return Every chunk a block of the goal can be in, or null if that isn't known for this kind of goal
+     */
+    static LongOpenHashSet goalChunks(Goal goal) {
+        LongOpenHashSet chunks = new LongOpenHashSet();
+        if (goal instanceof GoalXZ) {
+            chunks.add(ChunkRevisions.chunkKey(((GoalXZ) goal).getX() >> 4, ((GoalXZ) goal).getZ() >> 4));
+            return chunks;
+        }
+        int[] blocks = DijkstraPathFinder.goalBlocks(goal);
+        if (blocks == null) {
+            return null;
+        }
+        for (int i = 0; i < blocks.length; i += 3) {
+            chunks.add(ChunkRevisions.chunkKey(blocks[i] >> 4, blocks[i + 2] >> 4));
+        }
+        return chunks;
+    }
+
+    @Override
+    protected Optional<IPath> calculate0(long primaryTimeout, long failureTimeout) {
+        placeStart();
+        startDeadlines(primaryTimeout, failureTimeout);
+        // this also syncs ChunkRevisions, before any revision below is compared
+        space.begin();
+        long start = System.nanoTime();
+        abstractDeadline = start + TimeUnit.MILLISECONDS.toNanos(primaryTimeout / 2);
+        List<PathNode> steps;
+        synchronized (state) {
+            if (state.exits.size() > MAX_ENTRANCES) {
+                logDebug("Hierarchical search starting over, " + state.exits.size() + " entrances dropped");
+                state.exits.clear();
+            }
+            steps = searchAbstract();
+        }
+        if (cancelRequested) {
+            return Optional.empty();
+        }
+        LongOpenHashSet corridor = new LongOpenHashSet();
+        long targetHash;
+        boolean wholeWay;
+        int last;
+        if (steps == null) {
+            // no entrance settled in time (or none at all), the best so far in the start's section is still a segment
+            logDebug("Hierarchical search found no entrance in " + (System.nanoTime() - start) / 1000000 + "ms, searching the start's section");
+            corridor.add(sectionKey(startX, startY, startZ));
+            targetHash = Long.MIN_VALUE;
+            wholeWay = false;
+            steps = Collections.emptyList();
+            last = -1;
+        } else {
+            last = Math.min(steps.size() - 1, REFINE_SECTIONS);
+            PathNode target = steps.get(last);
+            for (int i = 0; i <= last; i++) {
+                PathNode step = steps.get(i);
+                if (space.isLoaded(step.x, step.z)) {
+                    corridor.add(sectionKey(step.x, step.y, step.z));
+                }
+            }
+            targetHash = BetterBlockPos.longHash(target.x, target.y, target.z);
+            wholeWay = last == steps.size() - 1 && goal.isInGoal(target.x, target.y, target.z);
+            logDebug("Hierarchical search: " + (steps.size() - 1) + " abstract steps" + (stopped ? " (out of time, to the closest entrance)" : "")
+                    + ", " + sectionsSearched + " sections searched, " + sectionsReused + " reused, " + state.size() + " entrances, "
+                    + (System.nanoTime() - start) / 1000000 + "ms");
+        }
+
+        // the block level, from the real start node this time
+        clearNodeMap();
+        placeStart();
+        stopped = false;
+        PathNode end = searchSections(startNode, corridor, targetHash, true, null);
+        if (cancelRequested) {
+            return Optional.empty();
+        }
+        if (end == null) {
+            // only if blocks changed since the exits were worked out, or out of time
+            return bestSoFar(true, numNodes);
+        }
+        termination = goal.isInGoal(end.x, end.y, end.z) ? SearchMetrics.Termination.GOAL : SearchMetrics.Termination.SEGMENT;
+        if (!wholeWay) {
+            logDebug("Hierarchical segment ends at " + end.x + "," + end.y + "," + end.z + ", " + (steps.size() - 1 - last) + " abstract steps left");
+        }
+        return Optional.of(new Path(startNode, end, numNodes, goal, calcContext));
+    }
+
+    /**
+     * A* over the entrances, see the comment at the top
+     *
+     * @return The abstract path from the start, to the settled entrance closest to the goal if there is no path or the
+     * search had to stop, or null if no entrance was settled (or it was cancelled)
+     */
+    private List<PathNode> searchAbstract() {
+        Long2ObjectOpenHashMap<PathNode> nodes = new Long2ObjectOpenHashMap<>();
+        BinaryHeapOpenSet openSet = new BinaryHeapOpenSet();
+        PathNode origin = new PathNode(startX, startY, startZ, goal);
+        origin.cost = 0;
+        origin.combinedCost = ABSTRACT_WEIGHT * origin.estimatedCostToGoal;
+        nodes.put(BetterBlockPos.longHash(startX, startY, startZ), origin);
+        openSet.insert(origin);
+        openSetOperations++;
+        // if nothing reaches the goal, the settled entrance closest to it
+        PathNode closest = null;
+        PathNode end = null;
+        while (!openSet.isEmpty()) {
+            PathNode node = openSet.removeLowest();
+            openSetOperations++;
+            if (goal.isInGoal(node.x, node.y, node.z) || !space.isLoaded(node.x, node.z)) {
+                end = node;
+                break;
+            }
+            if (node != origin && (closest == null || node.estimatedCostToGoal < closest.estimatedCostToGoal)) {
+                closest = node;
+            }
+            Exits exits = exits(node);
+            if (stopped) {
+                if (cancelRequested) {
+                    return null;
+                }
+                // node's exits aren't all known, the best there is now is to head for the closest entrance
+                break;
+            }
+            for (int i = 0; i < exits.costs.length; i++) {
+                offer(nodes, openSet, node, exits.blocks[i * 3], exits.blocks[i * 3 + 1], exits.blocks[i * 3 + 2], exits.costs[i]);
+            }
+            if (goalHit != null) {
+                offer(nodes, openSet, node, goalHit.x, goalHit.y, goalHit.z, goalHit.cost);
+            }
+        }
+        if (end == null) {
+            end = closest;
+        }
+        if (end == null) {
+            return null;
+        }
+        List<PathNode> steps = new ArrayList<>();
+        for (PathNode step = end; step != null; step = step.previous) {
+            steps.add(step);
+        }
+        Collections.reverse(steps);
+        return steps;
+    }
+
+    private void offer(Long2ObjectOpenHashMap<PathNode> nodes, BinaryHeapOpenSet openSet, PathNode from, int x, int y, int z, double cost) {
+        double totalCost = from.cost + cost;
+        long hashCode = BetterBlockPos.longHash(x, y, z);
+        PathNode node = nodes.get(hashCode);
+        if (node == null) {
+            node = new PathNode(x, y, z, goal);
+            nodes.put(hashCode, node);
+        }
+        if (node.cost - totalCost > MIN_IMPROVEMENT) {
+            node.cost = totalCost;
+            node.previous = from;
+            node.combinedCost = totalCost + ABSTRACT_WEIGHT * node.estimatedCostToGoal;
+            if (node.isOpen()) {
+                openSet.update(node);
+            } else {
+                openSet.insert(node);
+            }
+            openSetOperations++;
+        }
+    }
+
+    /**
+     * The exits of an entrance, from the state if they are still valid, otherwise from a search of its section.
+     * Also sets goalHit
+     */
+    private Exits exits(PathNode entrance) {
+        goalHit = null;
+        long hashCode = BetterBlockPos.longHash(entrance.x, entrance.y, entrance.z);
+        int revision = state.chunkRevisions.revision(entrance.x, entrance.z);
+        boolean inGoalChunk = goalChunks.contains(ChunkRevisions.chunkKey(entrance.x >> 4, entrance.z >> 4));
+        Exits exits = state.exits.get(hashCode);
+        if (!inGoalChunk && exits != null && exits.revision == revision && exits.fingerprint == space.fingerprint()) {
+            sectionsReused++;
+            return exits;
+        }
+        sectionsSearched++;
+        ExitCollector collector = new ExitCollector();
+        clearNodeMap();
+        PathNode origin = getNodeAtPosition(entrance.x, entrance.y, entrance.z, hashCode);
+        origin.cost = 0;
+        LongOpenHashSet section = new LongOpenHashSet();
+        section.add(sectionKey(entrance.x, entrance.y, entrance.z));
+        searchSections(origin, section, Long.MIN_VALUE, false, collector);
+        exits = collector.build(revision, space.fingerprint());
+        if (!stopped) {
+            state.exits.put(hashCode, exits);
+        }
+        if (inGoalChunk && goalHit != null) {
+            // a fresh node, the ones in the map are gone with the next clearNodeMap
+            PathNode hit = new PathNode(goalHit.x, goalHit.y, goalHit.z, goal);
+            hit.cost = goalHit.cost;
+            goalHit = hit;
+        } else {
+            goalHit = null;
+        }
+        return exits;
+    }
+
+    /**
+     * Dijkstra from origin that only settles blocks in the given sections (and the target)
+     *
+     * @param target   Stop once this block (a BetterBlockPos#longHash) or a goal block is settled, Long.MIN_VALUE to run until nothing is left
+     * @param refine   Whether this is the block level search from the start, which counts for bestSoFar
+     * @param exits    Gets every move that leaves the sections, null to just skip those
+     * @return The target or goal node that was settled, or null
+     */
+    private PathNode searchSections(PathNode origin, LongOpenHashSet sections, long target, boolean refine, ExitCollector exits) {
+        BinaryHeapOpenSet openSet = new BinaryHeapOpenSet();
+        origin.combinedCost = origin.cost;
+        openSet.insert(origin);
+        openSetOperations++;
+        int moveCount = space.moveCount();
+        while (!openSet.isEmpty()) {
+            if (shouldStop(numNodes)) {
+                stopped = true;
+                return null;
+            }
+            if (!refine && (numNodes & (TIME_CHECK_INTERVAL - 1)) == 0 && System.nanoTime() - abstractDeadline >= 0) {
+                termination = SearchMetrics.Termination.TIMEOUT;
+                stopped = true; // the rest of the time is for the block level
+                return null;
+            }
+            PathNode node = openSet.removeLowest();
+            openSetOperations++;
+            numNodes++;
+            if (refine) {
+                mostRecentConsidered = node;
+                updateBestSoFar(node);
+            }
+            if (goal.isInGoal(node.x, node.y, node.z)) {
+                if (exits == null) {
+                    return node;
+                }
+                if (goalHit == null) {
+                    goalHit = node; // the first one settled is the cheapest
+                }
+            }
+            if (BetterBlockPos.longHash(node.x, node.y, node.z) == target) {
+                return node;
+            }
+            for (int move = 0; move < moveCount; move++) {
+                moveApplyNanos += sampledApply(space, move, node.x, node.y, node.z, res, numMovementsConsidered);
+                numMovementsConsidered++;
+                double actionCost = res.cost;
+                if (actionCost >= ActionCosts.COST_INF) {
+                    continue;
+                }
+                if (actionCost <= 0 || Double.isNaN(actionCost)) {
+                    throw new IllegalStateException(space.moveName(move) + " calculated implausible cost " + actionCost);
+                }
+                double totalCost = node.cost + actionCost;
+                long hashCode = BetterBlockPos.longHash(res.x, res.y, res.z);
+                if (hashCode != target && !sections.contains(sectionKey(res.x, res.y, res.z))) {
+                    if (exits != null) {
+                        exits.add(res.x, res.y, res.z, totalCost);
+                    }
+                    continue;
+                }
+                PathNode neighbor = getNodeAtPosition(res.x, res.y, res.z, hashCode);
+                if (neighbor.cost - totalCost > MIN_IMPROVEMENT) {
+                    neighbor.previous = node;
+                    neighbor.cost = totalCost;
+                    neighbor.combinedCost = totalCost;
+                    if (neighbor.isOpen()) {
+                        openSet.update(neighbor);
+                    } else {
+                        openSet.insert(neighbor);
+                    }
+                    openSetOperations++;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static long sectionKey(int x, int y, int z) {
+        return BetterBlockPos.longHash(x >> 4, y >> 4, z >> 4);
+    }
+}
@@ -0,0 +1,650 @@
+package baritone.pathing.calc;
+
+import baritone.Baritone;
+import baritone.api.pathing.calc.IPath;
+import baritone.api.pathing.goals.Goal;
+import baritone.api.pathing.movement.ActionCosts;
+import baritone.api.utils.BetterBlockPos;
+import baritone.api.utils.SearchMetrics;
+import baritone.pathing.movement.CalculationContext;
+import baritone.utils.pathing.Favoring;
+import baritone.utils.pathing.MutableMoveResult;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * D* Lite (Koenig and Likhachev): a search that keeps what it worked out between calculations and only repairs what changed
+ *
+ * Every other finder starts from nothing on every call, so a replan after one block was placed next to the path
+ * does the whole search again. This one searches backwards from the goal blocks, every block it reached has a label:
+ *  g    - the cost from here to the goal as of the last time the block was expanded
+ *  rhs  - the cheapest move from here plus the g where it lands (next is that block), 0 for the goal blocks
+ * A block is consistent when g == rhs, the ones that aren't are in the heap by min(g, rhs). The search expands
+ * until the start is consistent and nothing cheaper is left in the heap, then the path is just start -> next -> next ... goal
+ * The goal stays put while the player walks, so the labels stay valid for every start, and the next call
+ * for the same goal is usually done right away (the start is already consistent)
+ *
+ * When blocks change (PathingBehavior calls blockChanged / chunkChanged on GAME), the next calculation recomputes rhs of
+ * every labelled block whose moves could read a changed block, and gives every labelled block next to them another chance to
+ * be reached over a move that just opened up. Only those go back into the heap, the search then fixes everything that
+ * depended on them and nothing else
+ *
+ * The heuristic is 0 (plain Dijkstra order, same as DijkstraPathFinder by default), so the start moving doesn't need D* Lite's km
+ *
+ * Everything starts over when the goal blocks, the world or the fingerprint of the SearchSpace (settings, inventory) change,
+ * or once there are more than MAX_LABELS labels
+ * Goals that aren't a list of blocks (GoalXZ, GoalYLevel ...) can't be searched backwards, forGame gives those to DijkstraPathFinder
+ * Favoring is not applied, it changes with every previous path and would dirty the whole old path on every replan
+ * Like MovesSearchSpace#sources, falls into water from higher than maxFallHeightNoWater are not used
+ *
+ * The backward search gets the primary timeout. If it isn't done by then it keeps its progress (the next calculation carries
+ * on from there) and this one still hands back a path like every other engine: the next chain of the start if that
+ * already gets to the goal, otherwise whatever a goal directed forward search finds in the rest of the failure timeout
+ * (its path to the goal or its best so far)
+ *
+ * GAME is static, so selecting another engine releases its labels (PathFinderRegistry calls release)
+ */
+public final class IncrementalPathFinder extends AbstractNodeCostSearch {
+
+    // Once there are more labels than this the next calculation starts over, -Dbaritone.incremental.maxLabels to change it
+    // (a label is about 75 bytes with its map slot, so about 20MB)
+    private static final int MAX_LABELS = Integer.getInteger("baritone.incremental.maxLabels", 1 << 18);
+
+    // A move reads blocks up to this far to the side of where it starts (parkour jumps 4, and the block next to the landing)
+    private static final int REACH_XZ = 5;
+
+    // ... and up to this far above its feet (head room of a jump)
+    private static final int REACH_UP = 3;
+
+    public static final String NAME = "Incremental";
+
+    // A Label (header, 4 ints, 3 doubles, a boolean and a reference, padded to 64), its share of the labels table and its heap slot
+    private static final int LABEL_BYTES = 64 + 2 * (Long.BYTES + Integer.BYTES) + Integer.BYTES;
+
+    /**
+     * The labels of the searches the game runs, PathingBehavior sends it the block changes
+     */
+    public static final State GAME = new State();
+
+    private static final class Label {
+
+        final int x;
+        final int y;
+        final int z;
+        final boolean goal;
+        double g = ActionCosts.COST_INF;
+        double rhs = ActionCosts.COST_INF;
+        Label next;
+        double nextCost;
+        int heapIndex = -1;
+
+        Label(int x, int y, int z, boolean goal) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.goal = goal;
+        }
+
+        double key() {
+            return Math.min(g, rhs);
+        }
+    }
+
+    /**
+     * The labels of one goal, kept between calculations. Only one calculation uses it at a time
+     */
+    public static final class State {
+
+        private final Long2ObjectOpenHashMap<Label> labels = new Long2ObjectOpenHashMap<>();
+        private Label[] heap = new Label[1024];
+        private int heapSize;
+        private long[] goalKeys;
+        private int fingerprint;
+
+        // written by the game thread, taken by the next calculation
+        private final Object pendingLock = new Object();
+        private LongOpenHashSet changedBlocks = new LongOpenHashSet();
+        private LongOpenHashSet changedChunks = new LongOpenHashSet();
+        private volatile boolean resetRequested;
+        private volatile boolean active;
+
+        public State() {}
+
+        /**
+         * Called from the game thread when a block changed
+         */
+        public void blockChanged(int x, int y, int z) {
+            if (!active) {
+                return; // nothing to repair, and nobody would ever take these
+            }
+            synchronized (pendingLock) {
+                changedBlocks.add(TargetBlockIndex.pack(x, y, z));
+            }
+        }
+
+        /**
+         * Called from the game thread when any block in a chunk could have changed, or it was loaded or unloaded
+         */
+        public void chunkChanged(int chunkX, int chunkZ) {
+            if (!active) {
+                return;
+            }
+            synchronized (pendingLock) {
+                changedChunks.add((long) chunkX & 0xFFFFFFFFL | ((long) chunkZ & 0xFFFFFFFFL) << 32);
+            }
+        }
+
+        /**
+         * Called from the game thread when the world changes, the next calculation starts over
+         */
+        public void reset() {
+            resetRequested = true;
+        }
+
+        /**
+         * Drops every label, for when no search is going to use them. Doesn't wait for a calculation that is using them,
+         * the labels go once it is done (on Baritone's executor), unless another calculation started over on them by then
+         */
+        public void release() {
+            if (!active) {
+                return; // nothing searched on it since the last release
+            }
+            resetRequested = true;
+            active = false;
+            Baritone.getExecutor().execute(() -> {
+                synchronized (this) {
+                    if (!active) {
+                        labels.clear();
+                        labels.trim();
+                        heap = new Label[1024];
+                        heapSize = 0;
+                    }
+                }
+            });
+        }
+
+        public synchronized int size() {
+            return labels.size();
+        }
+
+        private void clear(long[] goalKeys, int fingerprint) {
+            labels.clear();
+            Arrays.fill(heap, 0, heapSize + 1, null);
+            heapSize = 0;
+            this.goalKeys = goalKeys;
+            this.fingerprint = fingerprint;
+            synchronized (pendingLock) {
+                changedBlocks.clear();
+                changedChunks.clear();
+            }
+            resetRequested = false;
+            active = true;
+        }
+
+        // Binary heap by key, 1 based, heapIndex is the position or -1
+
+        private void queue(Label label) {
+            if (label.g != label.rhs) {
+                if (label.heapIndex < 0) {
+                    if (++heapSize == heap.length) {
+                        heap = Arrays.copyOf(heap, heap.length << 1);
+                    }
+                    place(label, heapSize);
+                    siftUp(heapSize);
+                } else {
+                    siftUp(label.heapIndex);
+                    siftDown(label.heapIndex);
+                }
+            } else if (label.heapIndex >= 0) {
+                remove(label);
+            }
+        }
+
+        private Label peek() {
+            return heap[1];
+        }
+
+        private void remove(Label label) {
+            int index = label.heapIndex;
+            Label last = heap[heapSize];
+            heap[heapSize--] = null;
+            label.heapIndex = -1;
+            if (last != label) {
+                place(last, index);
+                siftUp(index);
+                siftDown(last.heapIndex);
+            }
+        }
+
+        private void siftUp(int index) {
+            Label label = heap[index];
+            double key = label.key();
+            while (index > 1 && heap[index >>> 1].key() > key) {
+                place(heap[index >>> 1], index);
+                index >>>= 1;
+            }
+            place(label, index);
+        }
+
+        private void siftDown(int index) {
+            Label label = heap[index];
+            double key = label.key();
+            int child = index << 1;
+            while (child <= heapSize) {
+                if (child < heapSize && heap[child + 1].key() < heap[child].key()) {
+                    child++;
+                }
+                if (key <= heap[child].key()) {
+                    break;
+                }
+                place(heap[child], index);
+                index = child;
+                child = index << 1;
+            }
+            place(label, index);
+        }
+
+        private void place(Label label, int index) {
+            heap[index] = label;
+            label.heapIndex = index;
+        }
+    }
+
+    private final CalculationContext calcContext;
+    private final State state;
+    private final long[] goalKeys;
+    private final int[] goalBlocks;
+
+    private final MutableMoveResult res = new MutableMoveResult();
+    private int[] sources;
+    private int maxFall;
+
+    // labels that were repaired this calculation, for the log
+    private int repaired;
+
+    // when the backward search stops to leave time for the forward one, System.nanoTime
+    private long backwardDeadline;
+    // the forward search of a calculation the backward search didn't finish, while it runs
+    private volatile AbstractNodeCostSearch forward;
+
+    /**
+     * @param goalBlocks x, y, z of every goal block one after the other, see DijkstraPathFinder#goalBlocks
+     * @param state      Where the labels are kept, pass the same one for every search that should build on the last
+     */
+    public IncrementalPathFinder(int startX, int startY, int startZ, Goal goal, CalculationContext context, int[] goalBlocks, State state, SearchSpace space) {
+        super(startX, startY, startZ, goal, context, space, NodeStore.Kind.OBJECTS);
+        this.calcContext = context;
+        this.state = state;
+        this.goalBlocks = goalBlocks;
+        this.goalKeys = new long[goalBlocks.length / 3];
+        for (int i = 0; i < goalKeys.length; i++) {
+            goalKeys[i] = BetterBlockPos.longHash(goalBlocks[i * 3], goalBlocks[i * 3 + 1], goalBlocks[i * 3 + 2]);
+        }
+        Arrays.sort(goalKeys);
+    }
+
+    /**
+     * For PathFinderRegistry, searches on GAME, or with a fresh Dijkstra if the goal isn't made of blocks
+     */
+    public static AbstractNodeCostSearch forGame(int startX, int startY, int startZ, Goal goal, Favoring favoring, CalculationContext context) {
+        int[] goalBlocks = DijkstraPathFinder.goalBlocks(goal);
+        if (goalBlocks == null) {
+            return new DijkstraPathFinder(startX, startY, startZ, goal, favoring, context);
+        }
+        return new IncrementalPathFinder(startX, startY, startZ, goal, context, goalBlocks, GAME, new MovesSearchSpace(context));
+    }
+
+    @Override
+    protected Optional<IPath> calculate0(long primaryTimeout, long failureTimeout) {
+        long calculationStart = System.nanoTime();
+        backwardDeadline = calculationStart + TimeUnit.MILLISECONDS.toNanos(primaryTimeout);
+        Optional<IPath> backward = searchBackward(primaryTimeout, failureTimeout);
+        if (backward != null || cancelRequested) {
+            return backward == null ? Optional.empty() : backward;
+        }
+        long remaining = failureTimeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - calculationStart);
+        if (remaining <= 0) {
+            return Optional.empty();
+        }
+        logDebug("Incremental search not done in " + primaryTimeout + "ms, searching forward for " + remaining + "ms");
+        DijkstraPathFinder forward = new DijkstraPathFinder(startX, startY, startZ, goal, null, calcContext, DijkstraPathFinder.WEIGHT_LADDER, space);
+        this.forward = forward;
+        if (cancelRequested) {
+            return Optional.empty(); // cancel() may have looked before forward was set
+        }
+        try {
+            return forward.calculate0(remaining / 2, remaining);
+        } finally {
+            numNodes += forward.numNodes;
+            numMovementsConsidered += forward.numMovementsConsidered;
+            moveApplyNanos += forward.moveApplyNanos;
+            openSetOperations += forward.openSetOperations;
+            termination = forward.termination;
+            this.forward = null;
+        }
+    }
+
+    @Override
+    public void cancel() {
+        super.cancel();
+        AbstractNodeCostSearch forward = this.forward;
+        if (forward != null) {
+            forward.cancel();
+        }
+    }
+
+    @Override
+    public Optional<IPath> bestPathSoFar() {
+        AbstractNodeCostSearch forward = this.forward;
+        return forward != null ? forward.bestPathSoFar() : super.bestPathSoFar();
+    }
+
+    /**
+     * @return The path, or null if the backward search wasn't done by backwardDeadline (or was cancelled)
+     */
+    private Optional<IPath> searchBackward(long primaryTimeout, long failureTimeout) {
+        placeStart();
+        startDeadlines(primaryTimeout, failureTimeout);
+        // this also brings MoveCostCache up to date, before anything below looks at a move
+        space.begin();
+        sources = new int[3 * space.maxSources()];
+        maxFall = settings.maxFallHeightNoWater;
+        synchronized (state) {
+            long start = System.nanoTime();
+            if (state.resetRequested || state.fingerprint != space.fingerprint() || !Arrays.equals(state.goalKeys, goalKeys) || state.labels.size() > MAX_LABELS) {
+                logDebug("Incremental search starting over, " + state.labels.size() + " labels dropped");
+                state.clear(goalKeys, space.fingerprint());
+                for (int i = 0; i < goalBlocks.length; i += 3) {
+                    Label label = label(goalBlocks[i], goalBlocks[i + 1], goalBlocks[i + 2], true);
+                    label.rhs = 0;
+                    state.queue(label);
+                }
+            } else {
+                repair();
+            }
+            Label startLabel = state.labels.get(BetterBlockPos.longHash(startX, startY, startZ));
+            if (startLabel == null) {
+                // never reached by the backward search, but the blocks around it may have been
+                startLabel = label(startX, startY, startZ, false);
+                recompute(startLabel);
+            }
+            boolean done = computeShortestPath(startLabel);
+            logDebug("Incremental search: " + repaired + " labels repaired, " + numNodes + " expanded, " + state.labels.size() + " labels, "
+                    + (System.nanoTime() - start) / 1000000 + "ms");
+            if (cancelRequested) {
+                return null;
+            }
+            if (done && startLabel.g >= ActionCosts.COST_INF) {
+                return Optional.empty(); // everything that can reach the goal is labelled, and the start isn't one of them
+            }
+            // not done, the labels aren't final yet, but if the start's next chain already gets there it is a path
+            PathNode end = followNext(startLabel, done ? startLabel.g : startLabel.rhs);
+            if (end == null) {
+                if (done) {
+                    throw new IllegalStateException("Broken next chain from " + startX + "," + startY + "," + startZ);
+                }
+                return null;
+            }
+            termination = SearchMetrics.Termination.GOAL;
+            return Optional.of(new Path(startNode, end, numNodes, goal, calcContext));
+        }
+    }
+
+    /**
+     * @return The end of start -> next -> next ... goal as PathNodes, or null if the chain doesn't get to a goal block
+     */
+    private PathNode followNext(Label startLabel, double startCost) {
+        if (startCost >= ActionCosts.COST_INF) {
+            return null;
+        }
+        PathNode end = startNode;
+        int steps = 0;
+        for (Label label = startLabel; !label.goal; label = label.next) {
+            if (label.next == null || ++steps > state.labels.size()) {
+                return null;
+            }
+            PathNode node = new PathNode(label.next.x, label.next.y, label.next.z, goal);
+            node.cost = end.cost + label.nextCost;
+            node.previous = end;
+            end = node;
+        }
+        return end;
+    }
+
+    /**
+     * Expands until the start is consistent and nothing in the heap is cheaper than it
+     *
+     * @return Whether that happened, false if the search was cancelled or ran out of time (the state stays usable)
+     */
+    private boolean computeShortestPath(Label startLabel) {
+        while (state.heapSize > 0) {
+            Label label = state.peek();
+            if (label.key() >= startLabel.key() && startLabel.rhs == startLabel.g) {
+                return true;
+            }
+            if (shouldStop(numNodes)) {
+                return false;
+            }
+            if ((numNodes & (TIME_CHECK_INTERVAL - 1)) == 0 && System.nanoTime() - backwardDeadline >= 0) {
+                termination = SearchMetrics.Termination.TIMEOUT;
+                return false; // the rest of the time is for the forward search
+            }
+            state.remove(label);
+            openSetOperations++;
+            numNodes++;
+            if (label.g > label.rhs) {
+                // got cheaper, the blocks that can move here may get cheaper too
+                label.g = label.rhs;
+                relaxSources(label);
+            } else {
+                // got more expensive, everything that went through it has to look again
+                label.g = ActionCosts.COST_INF;
+                if (!label.goal) {
+                    recompute(label);
+                }
+                for (int move = 0; move < space.moveCount(); move++) {
+                    int count = space.sources(move, label.x, label.y, label.z, sources);
+                    for (int i = 0; i < count * 3; i += 3) {
+                        Label source = state.labels.get(BetterBlockPos.longHash(sources[i], sources[i + 1], sources[i + 2]));
+                        if (source != null && source.next == label && !source.goal) {
+                            recompute(source);
+                        }
+                    }
+                }
+            }
+        }
+        return startLabel.rhs == startLabel.g;
+    }
+
+    /**
+     * Offers every block that can move onto this one the cost through it
+     */
+    private void relaxSources(Label label) {
+        for (int move = 0; move < space.moveCount(); move++) {
+            int count = space.sources(move, label.x, label.y, label.z, sources);
+            for (int i = 0; i < count * 3; i += 3) {
+                double actionCost = apply(move, sources[i], sources[i + 1], sources[i + 2]);
+                if (actionCost >= ActionCosts.COST_INF || res.x != label.x || res.y != label.y || res.z != label.z) {
+                    continue;
+                }
+                Label source = label(sources[i], sources[i + 1], sources[i + 2], false);
+                if (!source.goal && actionCost + label.g < source.rhs) {
+                    source.rhs = actionCost + label.g;
+                    source.next = label;
+                    source.nextCost = actionCost;
+                    state.queue(source);
+                    openSetOperations++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Works out rhs again from every move of this block, and puts it in the heap or takes it out
+     */
+    private void recompute(Label label) {
+        best(label);
+        state.queue(label);
+        openSetOperations++;
+    }
+
+    /**
+     * Sets rhs and next from every move of this block
+     */
+    private void best(Label label) {
+        label.rhs = ActionCosts.COST_INF;
+        label.next = null;
+        for (int move = 0; move < space.moveCount(); move++) {
+            double actionCost = apply(move, label.x, label.y, label.z);
+            if (actionCost >= ActionCosts.COST_INF) {
+                continue;
+            }
+            Label dest = state.labels.get(BetterBlockPos.longHash(res.x, res.y, res.z));
+            if (dest == null || dest.g >= ActionCosts.COST_INF || actionCost + dest.g >= label.rhs) {
+                continue;
+            }
+            if (!isListedSource(move, label, dest)) {
+                continue; // relaxSources would never see this move, so a change at dest would never reach label
+            }
+            label.rhs = actionCost + dest.g;
+            label.next = dest;
+            label.nextCost = actionCost;
+        }
+    }
+
+    private boolean isListedSource(int move, Label source, Label dest) {
+        int count = space.sources(move, dest.x, dest.y, dest.z, sources);
+        for (int i = 0; i < count * 3; i += 3) {
+            if (sources[i] == source.x && sources[i + 1] == source.y && sources[i + 2] == source.z) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Puts every label a pending change could affect back in order, see the comment at the top
+     */
+    private void repair() {
+        LongOpenHashSet blocks;
+        LongOpenHashSet chunks;
+        synchronized (state.pendingLock) {
+            if (state.changedBlocks.isEmpty() && state.changedChunks.isEmpty()) {
+                return;
+            }
+            blocks = state.changedBlocks;
+            chunks = state.changedChunks;
+            state.changedBlocks = new LongOpenHashSet();
+            state.changedChunks = new LongOpenHashSet();
+        }
+        int down = maxFall + 1;
+        // every block whose moves can read a changed block: up to REACH_XZ to the side, REACH_UP below it or maxFall + 1 above it
+        // the ones without a label are new sources only if one of their moves now reaches a labelled block
+        LongOpenHashSet seen = new LongOpenHashSet();
+        LongIterator it = blocks.iterator();
+        while (it.hasNext()) {
+            // TargetBlockIndex.pack the other way around
+            long packed = it.nextLong();
+            int bx = (int) (packed >> 38);
+            int by = (int) (packed << 26 >> 52);
+            int bz = (int) (packed << 38 >> 38);
+            for (int x = bx - REACH_XZ; x <= bx + REACH_XZ; x++) {
+                for (int z = bz - REACH_XZ; z <= bz + REACH_XZ; z++) {
+                    for (int y = by - REACH_UP; y <= by + down; y++) {
+                        long hashCode = BetterBlockPos.longHash(x, y, z);
+                        if (!seen.add(hashCode)) {
+                            continue;
+                        }
+                        Label label = state.labels.get(hashCode);
+                        if (label == null) {
+                            label = new Label(x, y, z, false);
+                            best(label);
+                            if (label.rhs >= ActionCosts.COST_INF) {
+                                continue;
+                            }
+                            state.labels.put(hashCode, label);
+                        } else if (label.goal) {
+                            continue;
+                        } else {
+                            best(label);
+                        }
+                        state.queue(label);
+                        openSetOperations++;
+                        repaired++;
+                    }
+                }
+            }
+        }
+        if (chunks.isEmpty()) {
+            return;
+        }
+        // too many blocks to go through one by one, so only the labelled ones near the chunk, and everything that can
+        // move onto those gets another chance to be reached (which is how new sources get labels here)
+        List<Label> affected = new ArrayList<>();
+        int margin = 2 * REACH_XZ;
+        for (Label label : state.labels.values()) {
+            if (touchesChunk(chunks, label.x - margin, label.x + margin, label.z - margin, label.z + margin)) {
+                affected.add(label);
+            }
+        }
+        for (Label label : affected) {
+            if (!label.goal) {
+                recompute(label);
+            }
+        }
+        for (Label label : affected) {
+            if (label.g < ActionCosts.COST_INF) {
+                relaxSources(label);
+            }
+        }
+        repaired += affected.size();
+    }
+
+    private static boolean touchesChunk(LongOpenHashSet chunks, int minX, int maxX, int minZ, int maxZ) {
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                if (chunks.contains((long) chunkX & 0xFFFFFFFFL | ((long) chunkZ & 0xFFFFFFFFL) << 32)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private double apply(int move, int x, int y, int z) {
+        moveApplyNanos += sampledApply(space, move, x, y, z, res, numMovementsConsidered);
+        numMovementsConsidered++;
+        double actionCost = res.cost;
+        if (actionCost < ActionCosts.COST_INF && (actionCost <= 0 || Double.isNaN(actionCost))) {
+            throw new IllegalStateException(space.moveName(move) + " calculated implausible cost " + actionCost);
+        }
+        return actionCost;
+    }
+
+    private Label label(int x, int y, int z, boolean goal) {
+        long hashCode = BetterBlockPos.longHash(x, y, z);
+        Label label = state.labels.get(hashCode);
+        if (label == null) {
+            label = new Label(x, y, z, goal);
+            state.labels.put(hashCode, label);
+        }
+        return label;
+    }
+
+    @Override
+    protected int mapSize() {
+        return state.labels.size();
+    }
+
+    @Override
+    protected long footprintBytes() {
+        return (long) state.labels.size() * LABEL_BYTES;
+    }
+}
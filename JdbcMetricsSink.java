@@ -0,0 +1,127 @@
+package baritone.behavior;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/*
+ * Writes pathfinder results into a database
+ *
+ * logResultsToDatabase used to load a driver class and open a brand new connection for every single row
+ * (and the driver was SQL Server while the url was MySQL, so it never worked)
+ * This keeps one connection open on the metrics writer thread and inserts each batch with one executeBatch and one commit
+ *
+ * Any JDBC url works, e.g. jdbc:mysql://localhost:3306/MinecraftPathFinder?user=...&password=...
+ * or a local file database like jdbc:h2:./logs/pathfinder for testing, as long as its driver is on the classpath
+ * The table is created if it isn't there yet, and a table from before the engine and search_time columns gets them added
+ * (bellman_ford_time and dijkstra_time are only filled in for those two engines, search_time for every one)
+ */
+public final class JdbcMetricsSink implements PathfinderMetrics.Sink {
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS PathFinderResults (bellman_ford_time BIGINT, dijkstra_time BIGINT, x INT, y INT, z INT, engine VARCHAR(64), search_time BIGINT)";
+    private static final String INSERT = "INSERT INTO PathFinderResults (bellman_ford_time, dijkstra_time, x, y, z, engine, search_time) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    // the columns added since the table first existed, with their types
+    private static final String[][] ADDED_COLUMNS = {{"engine", "VARCHAR(64)"}, {"search_time", "BIGINT"}};
+
+    private final String url;
+
+    // only touched by the writer thread
+    private Connection connection;
+    private PreparedStatement insert;
+
+    /**
+     * Loads the driver class right away so that happens once at startup, not per row
+     *
+     * @param url         The JDBC url, credentials included
+     * @param driverClass Driver to load for drivers that don't register themselves, or null
+     */
+    public JdbcMetricsSink(String url, String driverClass) {
+        this.url = url;
+        if (driverClass != null && !driverClass.isEmpty()) {
+            try {
+                Class.forName(driverClass);
+            } catch (ClassNotFoundException e) {
+                // not fatal, DriverManager can still find drivers that register themselves
+                System.err.println("JDBC driver " + driverClass + " is not on the classpath");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public void write(List<PathfinderMetrics.Record> batch) throws SQLException {
+        try {
+            insertAll(batch);
+        } catch (SQLException e) {
+            // the connection may have gone stale, try again once with a fresh one
+            close();
+            insertAll(batch);
+        }
+    }
+
+    private void insertAll(List<PathfinderMetrics.Record> batch) throws SQLException {
+        if (connection == null) {
+            connect();
+        }
+        try {
+            for (PathfinderMetrics.Record record : batch) {
+                insert.setLong(1, record.bellmanFordNanos);
+                insert.setLong(2, record.dijkstraNanos);
+                insert.setInt(3, record.x);
+                insert.setInt(4, record.y);
+                insert.setInt(5, record.z);
+                insert.setString(6, record.algorithm);
+                insert.setLong(7, record.searchNanos);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void connect() throws SQLException {
+        connection = DriverManager.getConnection(url);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_TABLE);
+            addMissingColumns(statement);
+        }
+        connection.setAutoCommit(false);
+        insert = connection.prepareStatement(INSERT);
+    }
+
+    private static void addMissingColumns(Statement statement) throws SQLException {
+        Set<String> columns = new HashSet<>();
+        try (ResultSet empty = statement.executeQuery("SELECT * FROM PathFinderResults WHERE 1 = 0")) {
+            ResultSetMetaData meta = empty.getMetaData();
+            for (int i = 1; i <= meta.getColumnCount(); i++) {
+                columns.add(meta.getColumnName(i).toLowerCase(Locale.ROOT));
+            }
+        }
+        for (String[] column : ADDED_COLUMNS) {
+            if (!columns.contains(column[0])) {
+                statement.execute("ALTER TABLE PathFinderResults ADD " + column[0] + " " + column[1]);
+            }
+        }
+    }
+
+    private void close() {
+        if (connection != null) {
+            try {
+                connection.close(); // also closes the statement
+            } catch (SQLException ignored) {}
+        }
+        connection = null;
+        insert = null;
+    }
+}
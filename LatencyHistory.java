@@ -0,0 +1,94 @@
+package baritone.pathing.calc;
+
+import baritone.api.pathing.goals.Goal;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * How long each engine has been taking, per kind of query, for the adaptive mode in PathFinderRegistry
+ *
+ * A query goes in a bucket by its goal type and distance, the distance being the goal's heuristic from the start
+ * rounded to a power of two (so GoalXZ/8 is a GoalXZ whose heuristic is between 128 and 256)
+ * Per bucket and engine we keep a moving average of the search time where every new sample counts for ALPHA,
+ * so if an engine gets slower (or faster) the average follows it
+ *
+ * choose() tries every engine MIN_SAMPLES times in a bucket first, then takes the fastest,
+ * except for EXPLORE_CHANCE of the time where it takes a random one so the others keep getting measured
+ *
+ * record() is called from the calculation threads and choose() from the game thread, so both lock
+ */
+public final class LatencyHistory {
+
+    private static final double ALPHA = 0.2;
+    private static final int MIN_SAMPLES = 3;
+    private static final double EXPLORE_CHANCE = 0.05;
+
+    private static final class Stats {
+
+        long samples;
+        double averageNanos;
+    }
+
+    // bucket -> engine -> stats
+    private final Map<String, Map<String, Stats>> buckets = new HashMap<>();
+
+    /**
+     * @return The bucket a query from this start to this goal goes in
+     */
+    public static String bucket(Goal goal, int startX, int startY, int startZ) {
+        double heuristic = goal.heuristic(startX, startY, startZ);
+        int power = !Double.isFinite(heuristic) || heuristic < 1 ? 0 : 64 - Long.numberOfLeadingZeros((long) heuristic);
+        return goal.getClass().getSimpleName() + "/" + power;
+    }
+
+    public synchronized void record(String bucket, String engine, long nanos) {
+        Stats stats = buckets.computeIfAbsent(bucket, b -> new HashMap<>()).computeIfAbsent(engine, e -> new Stats());
+        stats.averageNanos = stats.samples == 0 ? nanos : stats.averageNanos + ALPHA * (nanos - stats.averageNanos);
+        stats.samples++;
+    }
+
+    /**
+     * @param engines The engines that can be picked, not empty
+     * @return The one to use for the next query in this bucket
+     */
+    public synchronized String choose(String bucket, List<String> engines) {
+        Map<String, Stats> inBucket = buckets.getOrDefault(bucket, new HashMap<>());
+        String least = null;
+        long leastSamples = Long.MAX_VALUE;
+        String fastest = null;
+        double fastestNanos = Double.POSITIVE_INFINITY;
+        for (String engine : engines) {
+            Stats stats = inBucket.get(engine);
+            long samples = stats == null ? 0 : stats.samples;
+            if (samples < leastSamples) {
+                leastSamples = samples;
+                least = engine;
+            }
+            if (stats != null && stats.averageNanos < fastestNanos) {
+                fastestNanos = stats.averageNanos;
+                fastest = engine;
+            }
+        }
+        if (leastSamples < MIN_SAMPLES) {
+            return least;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < EXPLORE_CHANCE) {
+            return engines.get(random.nextInt(engines.size()));
+        }
+        return fastest;
+    }
+
+    /**
+     * @return The averages in one bucket, for logging
+     */
+    public synchronized String describe(String bucket) {
+        StringBuilder builder = new StringBuilder(bucket).append(':');
+        buckets.getOrDefault(bucket, new HashMap<>()).forEach((engine, stats) ->
+                builder.append(' ').append(engine).append(' ').append((long) stats.averageNanos / 1000000).append("ms (").append(stats.samples).append(')'));
+        return builder.toString();
+    }
+}
@@ -0,0 +1,177 @@
+package baritone.pathing.calc;
+
+import baritone.utils.pathing.MutableMoveResult;
+
+/*
+ * Remembers what Moves.apply gave for a block and a move, across calculations
+ *
+ * The next segment (plan ahead) and a replan after the player got pushed a bit search mostly the same blocks the last
+ * search did, and every one of those moves reads the same block states again. This keeps (position, move) -> (destination, cost)
+ * so those searches only run the moves whose blocks changed
+ *
+ * When blocks change:
+ *  Every entry has the ChunkRevisions revision its chunk had when it was worked out, an entry only counts if that is still
+ *  the revision of the chunk. Nothing is scanned or removed, old entries just stop matching and get replaced
+ *
+ * The block changes the server sends (someone else mining or placing, water flowing, sand falling) count as block events,
+ * but a block the client changes on its own without an event is missed, then an entry is wrong until its chunk changes
+ * some other way. PathingBehavior marks the chunks of a movement the path executor gave up
+ * on dirty, and a calculation that found nothing clears the whole cache, so a replan doesn't find the same broken path
+ * again. Because that only catches it after the fact, the cache is off unless asked for
+ *
+ * What else a cost depends on (the settings in CalculationContext, the tools in the hotbar) is the fingerprint,
+ * MovesSearchSpace works it out on the game thread, an entry with another fingerprint doesn't count either
+ *
+ * Bounded: a fixed number of entries in sets of WAYS, a (position, move) can only be in one set. When a set is full,
+ * CLOCK picks the one to replace: the hand goes around the set, entries that were used since it last came by get another
+ * chance, the first one that wasn't is replaced
+ *
+ * Several calculations can use it at the same time (race mode, delta-stepping), the sets are locked in STRIPES groups
+ */
+public final class MoveCostCache {
+
+    // Off by default, -Dbaritone.movecache.entries=524288 is about 20MB
+    public static final MoveCostCache MOVES = new MoveCostCache(Integer.getInteger("baritone.movecache.entries", 0), ChunkRevisions.GAME);
+
+    private static final int WAYS = 8;
+    private static final int STRIPES = 64;
+    private static final short EMPTY = -1;
+
+    private final long[] positions;
+    private final short[] moves;
+    private final int[] fingerprints;
+    private final int[] revisions;
+    // destination minus the start: x and z in a byte each, y in the upper 16 bits
+    private final int[] offsets;
+    private final double[] costs;
+    private final boolean[] referenced;
+    private final byte[] hands;
+    private final int setMask;
+    private final Object[] locks = new Object[STRIPES];
+    private final ChunkRevisions chunkRevisions;
+
+    /**
+     * @param entries        Rounded up to a power of two, 0 for a cache that never keeps anything
+     * @param chunkRevisions The chunks of the world the moves are in
+     */
+    public MoveCostCache(int entries, ChunkRevisions chunkRevisions) {
+        this.chunkRevisions = chunkRevisions;
+        int sets = entries <= 0 ? 0 : Integer.highestOneBit(Math.max(1, (entries - 1) / WAYS)) << 1;
+        int capacity = sets * WAYS;
+        positions = new long[capacity];
+        moves = new short[capacity];
+        java.util.Arrays.fill(moves, EMPTY);
+        fingerprints = new int[capacity];
+        revisions = new int[capacity];
+        offsets = new int[capacity];
+        costs = new double[capacity];
+        referenced = new boolean[capacity];
+        hands = new byte[sets];
+        setMask = sets - 1;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public boolean isEnabled() {
+        return hands.length > 0;
+    }
+
+    /**
+     * @return The revision of the chunk this block is in, to pass to get and put
+     */
+    public int revision(int x, int z) {
+        return chunkRevisions.revision(x, z);
+    }
+
+    /**
+     * @return Whether there was an entry, if so res has its destination and cost
+     */
+    public boolean get(int x, int y, int z, int move, int fingerprint, int revision, MutableMoveResult res) {
+        if (!isEnabled()) {
+            return false;
+        }
+        long position = TargetBlockIndex.pack(x, y, z);
+        int set = set(position, move);
+        synchronized (locks[set & (STRIPES - 1)]) {
+            for (int i = set * WAYS; i < set * WAYS + WAYS; i++) {
+                if (positions[i] == position && moves[i] == move) {
+                    if (fingerprints[i] != fingerprint || revisions[i] != revision) {
+                        return false;
+                    }
+                    referenced[i] = true;
+                    int offset = offsets[i];
+                    res.x = x + (byte) offset;
+                    res.z = z + (byte) (offset >> 8);
+                    res.y = y + (offset >> 16);
+                    res.cost = costs[i];
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public void put(int x, int y, int z, int move, int fingerprint, int revision, MutableMoveResult res) {
+        if (!isEnabled()) {
+            return;
+        }
+        int dx = res.x - x;
+        int dy = res.y - y;
+        int dz = res.z - z;
+        if (dx != (byte) dx || dz != (byte) dz || dy != (short) dy) {
+            return; // moves don't go that far, but don't store something wrong if one ever does
+        }
+        long position = TargetBlockIndex.pack(x, y, z);
+        int set = set(position, move);
+        synchronized (locks[set & (STRIPES - 1)]) {
+            int first = set * WAYS;
+            int slot = -1;
+            for (int i = first; i < first + WAYS; i++) {
+                if (moves[i] == EMPTY || positions[i] == position && moves[i] == move) {
+                    slot = i;
+                    break;
+                }
+            }
+            if (slot < 0) {
+                // CLOCK: second chance for everything used since the hand last passed it
+                int hand = hands[set];
+                while (referenced[first + hand]) {
+                    referenced[first + hand] = false;
+                    hand = (hand + 1) & (WAYS - 1);
+                }
+                slot = first + hand;
+                hands[set] = (byte) ((hand + 1) & (WAYS - 1));
+            }
+            positions[slot] = position;
+            moves[slot] = (short) move;
+            fingerprints[slot] = fingerprint;
+            revisions[slot] = revision;
+            offsets[slot] = dx & 0xFF | (dz & 0xFF) << 8 | dy << 16;
+            costs[slot] = res.cost;
+            referenced[slot] = false;
+        }
+    }
+
+    /**
+     * Forgets every entry, for when a calculation failed and some of them may be what made it fail
+     */
+    public void clear() {
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            synchronized (locks[stripe]) {
+                for (int set = stripe; set <= setMask; set += STRIPES) {
+                    java.util.Arrays.fill(moves, set * WAYS, set * WAYS + WAYS, EMPTY);
+                    java.util.Arrays.fill(referenced, set * WAYS, set * WAYS + WAYS, false);
+                }
+            }
+        }
+    }
+
+    private int set(long position, int move) {
+        // murmur3 finalizer, x is in the top bits of the position so a plain multiply wouldn't spread it into the low ones
+        long h = position * 31 + move;
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return (int) (h ^ (h >>> 33)) & setMask;
+    }
+}
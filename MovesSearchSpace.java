@@ -0,0 +1,206 @@
+package baritone.pathing.calc;
+
+import baritone.Baritone;
+import baritone.api.Settings;
+import baritone.api.pathing.movement.ActionCosts;
+import baritone.pathing.movement.CalculationContext;
+import baritone.pathing.movement.Moves;
+import baritone.utils.pathing.BetterWorldBorder;
+import baritone.utils.pathing.MutableMoveResult;
+import net.minecraft.client.entity.EntityPlayerSP;
+import net.minecraft.enchantment.EnchantmentHelper;
+import net.minecraft.init.Enchantments;
+import net.minecraft.init.MobEffects;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.potion.PotionEffect;
+
+import java.util.Objects;
+
+/*
+ * The real game: Baritone's Moves applied on a CalculationContext
+ *
+ * This is the world border and Y range check plus Moves#apply that both finders used to do inline
+ *
+ * For going backwards the sources of a move are the destination minus its offset, except for the dynamic moves:
+ * parkour can jump 2 to 4 blocks (and land one higher), descend/fall/diagonal can start one below up to maxFallHeightNoWater above
+ * Falls from higher up into water are not listed, so a backward search won't find those (the forward one still does)
+ *
+ * Results go through MoveCostCache.MOVES, so blocks an earlier calculation already looked at don't run Moves#apply again
+ */
+public final class MovesSearchSpace implements SearchSpace {
+
+    private static final Moves[] ALL_MOVES = Moves.values();
+
+    private static final int MIN_PARKOUR_DISTANCE = 2;
+    private static final int MAX_PARKOUR_DISTANCE = 4;
+
+    private final CalculationContext context;
+    private final MoveCostCache cache = MoveCostCache.MOVES;
+    private final int fingerprint;
+    private BetterWorldBorder worldBorder;
+    private int maxFall;
+    private int cacheHits;
+    private int cacheLookups;
+
+    public MovesSearchSpace(CalculationContext context) {
+        this.context = context;
+        this.fingerprint = fingerprint(context);
+    }
+
+    /**
+     * Everything other than the blocks that a move cost can depend on: the settings, what the context took from the inventory,
+     * and the hotbar and potion effects that ToolSet uses for break times
+     * Has to run on the game thread, like creating the CalculationContext itself
+     */
+    static int fingerprint(CalculationContext context) {
+        int hash = Objects.hash(context.hasWaterBucket, context.hasThrowaway, context.canSprint);
+        for (Settings.Setting<?> setting : Baritone.settings().allSettings) {
+            hash = 31 * hash + Objects.hashCode(setting.value);
+        }
+        EntityPlayerSP player = context.getBaritone().getPlayerContext().player();
+        if (player != null) {
+            for (int i = 0; i < 9; i++) {
+                ItemStack stack = player.inventory.mainInventory.get(i);
+                hash = 31 * hash + Item.getIdFromItem(stack.getItem());
+                hash = 31 * hash + EnchantmentHelper.getEnchantmentLevel(Enchantments.EFFICIENCY, stack);
+            }
+            hash = 31 * hash + amplifier(player.getActivePotionEffect(MobEffects.HASTE));
+            hash = 31 * hash + amplifier(player.getActivePotionEffect(MobEffects.MINING_FATIGUE));
+        }
+        return hash;
+    }
+
+    /**
+     * Works out again from the world what it costs to get from one block to the other, without MoveCostCache
+     *
+     * @return The cheapest move between them, COST_INF if none goes there anymore
+     */
+    static double currentCost(CalculationContext context, int x, int y, int z, int destX, int destY, int destZ) {
+        MutableMoveResult res = new MutableMoveResult();
+        double best = ActionCosts.COST_INF;
+        for (Moves moves : ALL_MOVES) {
+            if (!moves.dynamicXZ && (x + moves.xOffset != destX || z + moves.zOffset != destZ)
+                    || !moves.dynamicXZ && !moves.dynamicY && y + moves.yOffset != destY) {
+                continue;
+            }
+            res.reset();
+            moves.apply(context, x, y, z, res);
+            if (res.x == destX && res.y == destY && res.z == destZ && res.cost < best) {
+                best = res.cost;
+            }
+        }
+        return best;
+    }
+
+    private static int amplifier(PotionEffect effect) {
+        return effect == null ? -1 : effect.getAmplifier();
+    }
+
+    @Override
+    public void begin() {
+        worldBorder = new BetterWorldBorder(context.world.getWorldBorder());
+        maxFall = Baritone.settings().maxFallHeightNoWater.value;
+        // Pick up blocks that changed since the last calculation
+        TargetBlockIndex.DIAMOND_ORE.sync(context.world);
+        ChunkRevisions.GAME.sync(context.world);
+        cacheHits = 0;
+        cacheLookups = 0;
+    }
+
+    @Override
+    public int moveCount() {
+        return ALL_MOVES.length;
+    }
+
+    @Override
+    public void apply(int move, int x, int y, int z, MutableMoveResult res) {
+        res.reset(); // cost is COST_INF after this, so skipping the move below is the same as it being impossible
+        Moves moves = ALL_MOVES[move];
+        int newX = x + moves.xOffset;
+        int newY = y + moves.yOffset;
+        int newZ = z + moves.zOffset;
+        if (!worldBorder.entirelyContains(newX, newZ) || newY > 256 || newY < 0) {
+            return;
+        }
+        if (!cache.isEnabled()) {
+            moves.apply(context, x, y, z, res);
+            return;
+        }
+        int revision = cache.revision(x, z);
+        cacheLookups++;
+        if (cache.get(x, y, z, move, fingerprint, revision, res)) {
+            cacheHits++;
+            return;
+        }
+        moves.apply(context, x, y, z, res);
+        cache.put(x, y, z, move, fingerprint, revision, res);
+    }
+
+    @Override
+    public SearchSettings settings() {
+        return SearchSettings.game();
+    }
+
+    @Override
+    public int fingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public int cacheHits() {
+        return cacheHits;
+    }
+
+    @Override
+    public int cacheLookups() {
+        return cacheLookups;
+    }
+
+    @Override
+    public int sources(int move, int x, int y, int z, int[] out) {
+        Moves moves = ALL_MOVES[move];
+        int count = 0;
+        if (moves.dynamicXZ) {
+            for (int distance = MIN_PARKOUR_DISTANCE; distance <= MAX_PARKOUR_DISTANCE; distance++) {
+                for (int up = 0; up <= 1; up++) {
+                    count = put(out, count, x - moves.xOffset * distance, y - up, z - moves.zOffset * distance);
+                }
+            }
+        } else if (moves.dynamicY) {
+            for (int sourceY = y - 1; sourceY <= y + maxFall; sourceY++) {
+                count = put(out, count, x - moves.xOffset, sourceY, z - moves.zOffset);
+            }
+        } else {
+            count = put(out, count, x - moves.xOffset, y - moves.yOffset, z - moves.zOffset);
+        }
+        return count;
+    }
+
+    private static int put(int[] out, int count, int x, int y, int z) {
+        out[count * 3] = x;
+        out[count * 3 + 1] = y;
+        out[count * 3 + 2] = z;
+        return count + 1;
+    }
+
+    @Override
+    public int maxSources() {
+        return Math.max(2 * (MAX_PARKOUR_DISTANCE - MIN_PARKOUR_DISTANCE + 1), maxFall + 2);
+    }
+
+    @Override
+    public String moveName(int move) {
+        return ALL_MOVES[move].name();
+    }
+
+    @Override
+    public boolean isLoaded(int x, int z) {
+        return context.bsi.worldContainsLoadedChunk(x, z);
+    }
+
+    @Override
+    public boolean isTarget(int x, int y, int z) {
+        return TargetBlockIndex.DIAMOND_ORE.contains(x, y, z);
+    }
+}
@@ -0,0 +1,471 @@
+package baritone.pathing.calc;
+
+import baritone.api.pathing.goals.Goal;
+import baritone.api.pathing.movement.ActionCosts;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Locale;
+
+/*
+ * The search nodes kept in a few big arrays instead of one PathNode object per block
+ *
+ * The normal map is a Long2ObjectOpenHashMap<PathNode>, so a long search leaves millions of small objects behind
+ * for the GC to walk, and that is what makes the client stutter. Here a node is just a number (its id, 0 to size - 1)
+ * and everything about it is at that id in the columns: x, y, z, cost, the heuristic, the previous node's id,
+ * the open set position and how often Bellman-Ford queued it
+ * Finding the id of a position is an open addressing long -> int table (linear probing), also plain arrays
+ *
+ * Two kinds of columns:
+ *  ARRAYS   - one int[] or double[] per column on the Java heap
+ *  OFF_HEAP - one direct ByteBuffer with a 40 byte record per node, the GC never looks inside it
+ *             (the position -> id table stays on the heap, it is only two arrays)
+ * OBJECTS means no store at all, the finders use the PathNode map like before
+ *
+ * Path still wants PathNode objects, so chain() builds them for one path when it is needed (the result, the best so far snapshot)
+ * That is a few hundred objects instead of one per block visited
+ *
+ * Same as the PathNode map, positions are told apart by BetterBlockPos.longHash only
+ * Not thread safe, only the search thread touches it
+ */
+public abstract class NodeStore {
+
+    public enum Kind {
+        OBJECTS,
+        ARRAYS,
+        OFF_HEAP
+    }
+
+    // Used by finders that weren't given a kind, -Dbaritone.nodestore=arrays (or off_heap) to change it at startup
+    public static volatile Kind defaultKind = kindFromProperty();
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private static Kind kindFromProperty() {
+        String property = System.getProperty("baritone.nodestore", "objects");
+        try {
+            return Kind.valueOf(property.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown node store " + property + ", pick one of " + Arrays.toString(Kind.values()) + ", using OBJECTS");
+            return Kind.OBJECTS;
+        }
+    }
+
+    protected final Goal goal;
+
+    // the position -> id table, ids[slot] is -1 for a free slot
+    private long[] keys;
+    private int[] ids;
+    private int mask;
+    private int maxFill;
+
+    private int size;
+    protected int capacity;
+
+    protected NodeStore(Goal goal, int expectedNodes) {
+        this.goal = goal;
+        this.capacity = Math.max(16, expectedNodes);
+        int slots = Integer.highestOneBit(Math.max(16, (int) (capacity / LOAD_FACTOR)) - 1) << 1;
+        allocateTable(slots);
+    }
+
+    /**
+     * @return A new store, or null for OBJECTS
+     */
+    public static NodeStore create(Kind kind, Goal goal, int expectedNodes) {
+        switch (kind) {
+            case ARRAYS:
+                return new HeapColumns(goal, expectedNodes);
+            case OFF_HEAP:
+                return new DirectColumns(goal, expectedNodes);
+            default:
+                return null;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The id of the node at this position, or -1 if nothing has reached it yet
+     */
+    public int find(long hashCode) {
+        for (int slot = mix(hashCode) & mask; ; slot = (slot + 1) & mask) {
+            int id = ids[slot];
+            if (id < 0 || keys[slot] == hashCode) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Same as AbstractNodeCostSearch#getNodeAtPosition, a new node costs COST_INF and has no previous node
+     *
+     * @return The id of the node at this position
+     */
+    public int getOrCreate(int x, int y, int z, long hashCode) {
+        int slot = mix(hashCode) & mask;
+        for (int id = ids[slot]; id >= 0; id = ids[slot]) {
+            if (keys[slot] == hashCode) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int id = size++;
+        if (id == capacity) {
+            if (capacity > maxCapacity() >> 1) {
+                throw new IllegalStateException("Node store is full at " + capacity + " nodes");
+            }
+            capacity <<= 1;
+            grow(capacity);
+        }
+        keys[slot] = hashCode;
+        ids[slot] = id;
+        init(id, x, y, z, goal.heuristic(x, y, z));
+        if (size > maxFill) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * Forgets every node but keeps the memory, for finders that run more than one pass
+     */
+    public void clear() {
+        Arrays.fill(ids, -1);
+        size = 0;
+    }
+
+    /**
+     * @return Bytes held by the table and the columns right now
+     */
+    public long footprintBytes() {
+        return (long) keys.length * Long.BYTES + (long) ids.length * Integer.BYTES + columnBytes();
+    }
+
+    /**
+     * Builds PathNode objects for a node and everything before it, for Path
+     *
+     * @return The node for id, following previous gets to the first node of the chain (previous null)
+     */
+    public PathNode chain(int id) {
+        PathNode end = toPathNode(id);
+        PathNode current = end;
+        for (int previous = previous(id); previous >= 0; previous = previous(previous)) {
+            PathNode node = toPathNode(previous);
+            current.previous = node;
+            current = node;
+        }
+        return end;
+    }
+
+    private PathNode toPathNode(int id) {
+        PathNode node = new PathNode(x(id), y(id), z(id), goal);
+        node.cost = cost(id);
+        return node;
+    }
+
+    public abstract int x(int id);
+
+    public abstract int y(int id);
+
+    public abstract int z(int id);
+
+    public abstract double cost(int id);
+
+    public abstract void setCost(int id, double cost);
+
+    /**
+     * @return goal.heuristic of the position, worked out once when the node was made
+     */
+    public abstract double estimatedCostToGoal(int id);
+
+    /**
+     * @return The id of the node this one was reached from, -1 for none
+     */
+    public abstract int previous(int id);
+
+    public abstract void setPrevious(int id, int previous);
+
+    /**
+     * @return Where the node is in its open set, -1 when it isn't in one (same as PathNode.heapPosition)
+     */
+    public abstract int heapPosition(int id);
+
+    public abstract void setHeapPosition(int id, int heapPosition);
+
+    /**
+     * For Bellman-Ford's negative cycle check, adds one to how often the node was queued
+     *
+     * @return The new count
+     */
+    public abstract int incrementTimesQueued(int id);
+
+    protected abstract void init(int id, int x, int y, int z, double estimatedCostToGoal);
+
+    protected abstract void grow(int newCapacity);
+
+    protected abstract int maxCapacity();
+
+    protected abstract long columnBytes();
+
+    private void allocateTable(int slots) {
+        keys = new long[slots];
+        ids = new int[slots];
+        Arrays.fill(ids, -1);
+        mask = slots - 1;
+        maxFill = (int) (slots * LOAD_FACTOR);
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldIds = ids;
+        allocateTable(keys.length << 1);
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] < 0) {
+                continue;
+            }
+            int slot = mix(oldKeys[i]) & mask;
+            while (ids[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            ids[slot] = oldIds[i];
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static final class HeapColumns extends NodeStore {
+
+        private int[] x;
+        private int[] y;
+        private int[] z;
+        private int[] previous;
+        private int[] heapPosition;
+        private int[] timesQueued;
+        private double[] cost;
+        private double[] estimatedCostToGoal;
+
+        HeapColumns(Goal goal, int expectedNodes) {
+            super(goal, expectedNodes);
+            x = new int[capacity];
+            y = new int[capacity];
+            z = new int[capacity];
+            previous = new int[capacity];
+            heapPosition = new int[capacity];
+            timesQueued = new int[capacity];
+            cost = new double[capacity];
+            estimatedCostToGoal = new double[capacity];
+        }
+
+        @Override
+        protected void init(int id, int x, int y, int z, double estimatedCostToGoal) {
+            this.x[id] = x;
+            this.y[id] = y;
+            this.z[id] = z;
+            this.previous[id] = -1;
+            this.heapPosition[id] = -1;
+            this.timesQueued[id] = 0;
+            this.cost[id] = ActionCosts.COST_INF;
+            this.estimatedCostToGoal[id] = estimatedCostToGoal;
+        }
+
+        @Override
+        protected void grow(int newCapacity) {
+            x = Arrays.copyOf(x, newCapacity);
+            y = Arrays.copyOf(y, newCapacity);
+            z = Arrays.copyOf(z, newCapacity);
+            previous = Arrays.copyOf(previous, newCapacity);
+            heapPosition = Arrays.copyOf(heapPosition, newCapacity);
+            timesQueued = Arrays.copyOf(timesQueued, newCapacity);
+            cost = Arrays.copyOf(cost, newCapacity);
+            estimatedCostToGoal = Arrays.copyOf(estimatedCostToGoal, newCapacity);
+        }
+
+        @Override
+        protected int maxCapacity() {
+            return Integer.MAX_VALUE - 8;
+        }
+
+        @Override
+        protected long columnBytes() {
+            return (long) capacity * (6 * Integer.BYTES + 2 * Double.BYTES);
+        }
+
+        @Override
+        public int x(int id) {
+            return x[id];
+        }
+
+        @Override
+        public int y(int id) {
+            return y[id];
+        }
+
+        @Override
+        public int z(int id) {
+            return z[id];
+        }
+
+        @Override
+        public double cost(int id) {
+            return cost[id];
+        }
+
+        @Override
+        public void setCost(int id, double cost) {
+            this.cost[id] = cost;
+        }
+
+        @Override
+        public double estimatedCostToGoal(int id) {
+            return estimatedCostToGoal[id];
+        }
+
+        @Override
+        public int previous(int id) {
+            return previous[id];
+        }
+
+        @Override
+        public void setPrevious(int id, int previous) {
+            this.previous[id] = previous;
+        }
+
+        @Override
+        public int heapPosition(int id) {
+            return heapPosition[id];
+        }
+
+        @Override
+        public void setHeapPosition(int id, int heapPosition) {
+            this.heapPosition[id] = heapPosition;
+        }
+
+        @Override
+        public int incrementTimesQueued(int id) {
+            return ++timesQueued[id];
+        }
+    }
+
+    private static final class DirectColumns extends NodeStore {
+
+        // one record per node
+        private static final int X = 0;
+        private static final int Y = 4;
+        private static final int Z = 8;
+        private static final int PREVIOUS = 12;
+        private static final int HEAP_POSITION = 16;
+        private static final int TIMES_QUEUED = 20;
+        private static final int COST = 24;
+        private static final int ESTIMATED_COST_TO_GOAL = 32;
+        private static final int RECORD = 40;
+
+        private ByteBuffer records;
+
+        DirectColumns(Goal goal, int expectedNodes) {
+            super(goal, expectedNodes);
+            records = allocate(capacity);
+        }
+
+        private static ByteBuffer allocate(int capacity) {
+            return ByteBuffer.allocateDirect(capacity * RECORD).order(ByteOrder.nativeOrder());
+        }
+
+        @Override
+        protected void init(int id, int x, int y, int z, double estimatedCostToGoal) {
+            int at = id * RECORD;
+            records.putInt(at + X, x);
+            records.putInt(at + Y, y);
+            records.putInt(at + Z, z);
+            records.putInt(at + PREVIOUS, -1);
+            records.putInt(at + HEAP_POSITION, -1);
+            records.putInt(at + TIMES_QUEUED, 0);
+            records.putDouble(at + COST, ActionCosts.COST_INF);
+            records.putDouble(at + ESTIMATED_COST_TO_GOAL, estimatedCostToGoal);
+        }
+
+        @Override
+        protected void grow(int newCapacity) {
+            // the old buffer is freed when the GC collects it, Java 8 has no way to do it sooner
+            ByteBuffer bigger = allocate(newCapacity);
+            ByteBuffer old = records.duplicate();
+            old.clear();
+            bigger.put(old);
+            records = bigger;
+        }
+
+        @Override
+        protected int maxCapacity() {
+            return Integer.MAX_VALUE / RECORD;
+        }
+
+        @Override
+        protected long columnBytes() {
+            return (long) capacity * RECORD;
+        }
+
+        @Override
+        public int x(int id) {
+            return records.getInt(id * RECORD + X);
+        }
+
+        @Override
+        public int y(int id) {
+            return records.getInt(id * RECORD + Y);
+        }
+
+        @Override
+        public int z(int id) {
+            return records.getInt(id * RECORD + Z);
+        }
+
+        @Override
+        public double cost(int id) {
+            return records.getDouble(id * RECORD + COST);
+        }
+
+        @Override
+        public void setCost(int id, double cost) {
+            records.putDouble(id * RECORD + COST, cost);
+        }
+
+        @Override
+        public double estimatedCostToGoal(int id) {
+            return records.getDouble(id * RECORD + ESTIMATED_COST_TO_GOAL);
+        }
+
+        @Override
+        public int previous(int id) {
+            return records.getInt(id * RECORD + PREVIOUS);
+        }
+
+        @Override
+        public void setPrevious(int id, int previous) {
+            records.putInt(id * RECORD + PREVIOUS, previous);
+        }
+
+        @Override
+        public int heapPosition(int id) {
+            return records.getInt(id * RECORD + HEAP_POSITION);
+        }
+
+        @Override
+        public void setHeapPosition(int id, int heapPosition) {
+            records.putInt(id * RECORD + HEAP_POSITION, heapPosition);
+        }
+
+        @Override
+        public int incrementTimesQueued(int id) {
+            int count = records.getInt(id * RECORD + TIMES_QUEUED) + 1;
+            records.putInt(id * RECORD + TIMES_QUEUED, count);
+            return count;
+        }
+    }
+}
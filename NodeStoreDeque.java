@@ -0,0 +1,114 @@
+package baritone.pathing.calc.openset;
+
+import baritone.pathing.calc.NodeStore;
+
+/*
+ * PathNodeDeque for nodes that live in a NodeStore, the ring holds node ids
+ *
+ * Works the same: a queued node has heapPosition != -1 in the store, and the sum of the queued costs is kept for Large-Label-Last
+ */
+public final class NodeStoreDeque {
+
+    private static final int IN_DEQUE = 0;
+
+    private final NodeStore store;
+    private int[] array;
+    private int head;
+    private int size;
+    private double costSum;
+
+    public NodeStoreDeque(NodeStore store) {
+        this(store, 1024);
+    }
+
+    public NodeStoreDeque(NodeStore store, int initialCapacity) {
+        this.store = store;
+        int capacity = Integer.highestOneBit(Math.max(16, initialCapacity - 1)) << 1;
+        this.array = new int[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isOpen(int id) {
+        return store.heapPosition(id) != -1;
+    }
+
+    public double averageCost() {
+        return costSum / size;
+    }
+
+    public int peekFirst() {
+        return array[head];
+    }
+
+    public void addFirst(int id) {
+        if (isOpen(id)) {
+            throw new IllegalStateException("Node already queued");
+        }
+        growIfFull();
+        head = (head - 1) & (array.length - 1);
+        array[head] = id;
+        size++;
+        costSum += store.cost(id);
+        store.setHeapPosition(id, IN_DEQUE);
+    }
+
+    public void addLast(int id) {
+        if (isOpen(id)) {
+            throw new IllegalStateException("Node already queued");
+        }
+        growIfFull();
+        array[(head + size) & (array.length - 1)] = id;
+        size++;
+        costSum += store.cost(id);
+        store.setHeapPosition(id, IN_DEQUE);
+    }
+
+    public int pollFirst() {
+        if (size == 0) {
+            throw new IllegalStateException("Deque is empty");
+        }
+        int id = array[head];
+        head = (head + 1) & (array.length - 1);
+        size--;
+        costSum = size == 0 ? 0 : costSum - store.cost(id);
+        store.setHeapPosition(id, -1);
+        return id;
+    }
+
+    /**
+     * Moves the front node to the back without touching its open flag
+     */
+    public void rotate() {
+        int id = array[head];
+        head = (head + 1) & (array.length - 1);
+        array[(head + size - 1) & (array.length - 1)] = id;
+    }
+
+    /**
+     * Must be called when a node that is already queued gets a cheaper cost, so the running sum stays right
+     *
+     * @param previousCost The cost the node had when it was last counted
+     */
+    public void costDecreased(int id, double previousCost) {
+        costSum -= previousCost - store.cost(id);
+    }
+
+    private void growIfFull() {
+        if (size < array.length) {
+            return;
+        }
+        int[] bigger = new int[array.length << 1];
+        int firstPart = array.length - head;
+        System.arraycopy(array, head, bigger, 0, firstPart);
+        System.arraycopy(array, 0, bigger, firstPart, head);
+        array = bigger;
+        head = 0;
+    }
+}
@@ -0,0 +1,117 @@
+package baritone.pathing.calc.openset;
+
+import baritone.pathing.calc.NodeStore;
+
+import java.util.Arrays;
+
+/*
+ * BinaryHeapOpenSet for nodes that live in a NodeStore, so the heap holds node ids instead of PathNode objects
+ *
+ * Same layout as BinaryHeapOpenSet: 1 based array, the node's place in the heap is written back into its heapPosition
+ * (NodeStore#heapPosition), which is also how isOpen works here
+ * The key (combinedCost) is kept next to the id in the heap itself, so sifting never has to look into the store
+ */
+public final class NodeStoreHeap {
+
+    private final NodeStore store;
+    private int[] ids;
+    private double[] keys;
+    private int size;
+
+    public NodeStoreHeap(NodeStore store) {
+        this(store, 1024);
+    }
+
+    public NodeStoreHeap(NodeStore store, int initialCapacity) {
+        this.store = store;
+        this.ids = new int[initialCapacity];
+        this.keys = new double[initialCapacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isOpen(int id) {
+        return store.heapPosition(id) != -1;
+    }
+
+    public void insert(int id, double combinedCost) {
+        if (size >= ids.length - 1) {
+            ids = Arrays.copyOf(ids, ids.length << 1);
+            keys = Arrays.copyOf(keys, keys.length << 1);
+        }
+        size++;
+        ids[size] = id;
+        keys[size] = combinedCost;
+        store.setHeapPosition(id, size);
+        siftUp(size);
+    }
+
+    /**
+     * The node is already in the heap and its combinedCost went down
+     */
+    public void update(int id, double combinedCost) {
+        int position = store.heapPosition(id);
+        keys[position] = combinedCost;
+        siftUp(position);
+    }
+
+    public int removeLowest() {
+        if (size == 0) {
+            throw new IllegalStateException();
+        }
+        int result = ids[1];
+        int lastId = ids[size];
+        double lastKey = keys[size];
+        size--;
+        store.setHeapPosition(result, -1);
+        if (size == 0) {
+            return result;
+        }
+        // sift the last one down from the top
+        int position = 1;
+        int child = 2;
+        while (child <= size) {
+            if (child < size && keys[child + 1] < keys[child]) {
+                child++;
+            }
+            if (lastKey <= keys[child]) {
+                break;
+            }
+            move(child, position);
+            position = child;
+            child = position << 1;
+        }
+        place(lastId, lastKey, position);
+        return result;
+    }
+
+    private void siftUp(int position) {
+        int id = ids[position];
+        double key = keys[position];
+        int parent = position >>> 1;
+        while (position > 1 && keys[parent] > key) {
+            move(parent, position);
+            position = parent;
+            parent = position >>> 1;
+        }
+        place(id, key, position);
+    }
+
+    private void move(int from, int to) {
+        ids[to] = ids[from];
+        keys[to] = keys[from];
+        store.setHeapPosition(ids[to], to);
+    }
+
+    private void place(int id, double key, int position) {
+        ids[position] = id;
+        keys[position] = key;
+        store.setHeapPosition(id, position);
+    }
+}
@@ -0,0 +1,302 @@
+package baritone.pathing.calc;
+
+import baritone.Baritone;
+import baritone.api.pathing.calc.IPath;
+import baritone.api.pathing.goals.Goal;
+import baritone.api.pathing.movement.ActionCosts;
+import baritone.api.pathing.movement.IMovement;
+import baritone.api.utils.BetterBlockPos;
+import baritone.api.utils.PathCalculationResult;
+import baritone.api.utils.SearchMetrics;
+import baritone.pathing.movement.CalculationContext;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/*
+ * Paths that were already found, so asking for the same one again doesn't search again
+ *
+ * Bots running mine in a loop ask for paths between the same places over and over. A found path is kept by
+ * (start, goal, fingerprint of the settings and inventory, see MovesSearchSpace) together with the ChunkRevisions revision of
+ * every chunk it goes through. Looking it up again only compares those revisions, if one chunk (or one next to it) changed
+ * since, the path is dropped and searched for again
+ *
+ * Blocks can change without ChunkRevisions hearing about it (a change the client makes on its own, without an event), so before a
+ * path is handed out its first moves are worked out again from the world, the ones the path executor checks first
+ * (costVerificationLookahead). If one of them is impossible now the path is dropped. PathingBehavior also drops the paths
+ * from a start whose path failed while it was walked, or whose calculation found nothing (evict)
+ *
+ * The goal is compared by its blocks when DijkstraPathFinder#goalBlocks can list them (so the same ores in another order
+ * are the same goal), otherwise by its toString
+ * What the previous path was (Favoring) is not part of the key, a hit is the path that was found the first time
+ *
+ * A hit is handed out as a finder like any other (Replay), which builds a new Path from the stored blocks and costs,
+ * so PathingBehavior and the metrics don't need to know. Replay costs nothing worth recording in the latency history
+ *
+ * Bounded, the least recently used path goes first. hits, misses and invalidated count since the game started
+ */
+public final class PathCache {
+
+    public static final String ENGINE = "PathCache";
+
+    // -Dbaritone.pathcache.entries=0 turns it off
+    public static final PathCache GAME = new PathCache(Integer.getInteger("baritone.pathcache.entries", 256), ChunkRevisions.GAME);
+
+    private static final class Key {
+
+        final int x;
+        final int y;
+        final int z;
+        final String goal;
+        final int fingerprint;
+
+        Key(int x, int y, int z, Goal goal, int fingerprint) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.goal = normalize(goal);
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return x == other.x && y == other.y && z == other.z && fingerprint == other.fingerprint && goal.equals(other.goal);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) BetterBlockPos.longHash(x, y, z) * 31 + goal.hashCode() * 17 + fingerprint;
+        }
+    }
+
+    private static final class Entry {
+
+        // x, y, z of every block on the path one after the other, and the cost from the start to each
+        final int[] blocks;
+        final double[] costs;
+        final int numNodes;
+        final SearchMetrics.Termination termination;
+        final long[] chunks;
+        final int[] revisions;
+
+        Entry(int[] blocks, double[] costs, int numNodes, SearchMetrics.Termination termination, long[] chunks, int[] revisions) {
+            this.blocks = blocks;
+            this.costs = costs;
+            this.numNodes = numNodes;
+            this.termination = termination;
+            this.chunks = chunks;
+            this.revisions = revisions;
+        }
+    }
+
+    /**
+     * Hands back a stored path, start and goal are the ones it was stored with
+     */
+    static final class Replay extends AbstractNodeCostSearch {
+
+        private final CalculationContext calcContext;
+        private final Entry entry;
+
+        private Replay(int startX, int startY, int startZ, Goal goal, CalculationContext context, Entry entry) {
+            super(startX, startY, startZ, goal, context);
+            this.calcContext = context;
+            this.entry = entry;
+        }
+
+        @Override
+        protected Optional<IPath> calculate0(long primaryTimeout, long failureTimeout) {
+            placeStart();
+            startDeadlines(primaryTimeout, failureTimeout);
+            PathNode end = startNode;
+            for (int i = 1; i < entry.costs.length; i++) {
+                PathNode node = new PathNode(entry.blocks[i * 3], entry.blocks[i * 3 + 1], entry.blocks[i * 3 + 2], goal);
+                node.cost = entry.costs[i];
+                node.previous = end;
+                end = node;
+            }
+            termination = entry.termination;
+            return Optional.of(new Path(startNode, end, entry.numNodes, goal, calcContext));
+        }
+    }
+
+    private final int capacity;
+    private final ChunkRevisions chunkRevisions;
+    private final Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            return size() > capacity;
+        }
+    };
+
+    private long hits;
+    private long misses;
+    private long invalidated;
+
+    public PathCache(int capacity, ChunkRevisions chunkRevisions) {
+        this.capacity = capacity;
+        this.chunkRevisions = chunkRevisions;
+    }
+
+    /**
+     * Call on the game thread (it works out the fingerprint from the context), before making a finder
+     *
+     * @return A finder that hands back the stored path, or empty if there is none that is still valid
+     */
+    public Optional<PathFinderRegistry.Selection> lookup(int startX, int startY, int startZ, Goal goal, CalculationContext context) {
+        if (capacity <= 0) {
+            return Optional.empty();
+        }
+        Key key = new Key(startX, startY, startZ, goal, MovesSearchSpace.fingerprint(context));
+        chunkRevisions.sync(context.world);
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && !isValid(entry)) {
+                entries.remove(key);
+                invalidated++;
+                entry = null;
+            }
+            if (entry == null) {
+                misses++;
+                return Optional.empty();
+            }
+        }
+        // reads the world, so not while holding the lock
+        boolean possible = firstMovesPossible(entry, context);
+        synchronized (this) {
+            if (!possible) {
+                entries.remove(key, entry);
+                invalidated++;
+                misses++;
+                return Optional.empty();
+            }
+            hits++;
+        }
+        Replay replay = new Replay(startX, startY, startZ, goal, context, entry);
+        return Optional.of(new PathFinderRegistry.Selection(ENGINE, replay, LatencyHistory.bucket(goal, startX, startY, startZ)));
+    }
+
+    /**
+     * Keeps the path of a finished search, call on the thread that ran it, before anything else syncs ChunkRevisions
+     * (so the revisions stored are the ones the search saw)
+     */
+    public void store(AbstractNodeCostSearch finder, PathCalculationResult result) {
+        if (capacity <= 0 || finder instanceof Replay || !result.getPath().isPresent()
+                || (result.getType() != PathCalculationResult.Type.SUCCESS_TO_GOAL && result.getType() != PathCalculationResult.Type.SUCCESS_SEGMENT)) {
+            return;
+        }
+        IPath path = result.getPath().get();
+        List<BetterBlockPos> positions = path.positions();
+        List<IMovement> movements = path.movements();
+        if (positions.isEmpty() || movements.size() != positions.size() - 1) {
+            return;
+        }
+        BetterBlockPos start = positions.get(0);
+        if (start.x != finder.startX || start.y != finder.startY || start.z != finder.startZ) {
+            return; // only what the next lookup for this start can use
+        }
+        int[] blocks = new int[positions.size() * 3];
+        double[] costs = new double[positions.size()];
+        LongOpenHashSet chunkSet = new LongOpenHashSet();
+        for (int i = 0; i < positions.size(); i++) {
+            BetterBlockPos pos = positions.get(i);
+            blocks[i * 3] = pos.x;
+            blocks[i * 3 + 1] = pos.y;
+            blocks[i * 3 + 2] = pos.z;
+            costs[i] = i == 0 ? 0 : costs[i - 1] + movements.get(i - 1).getCost();
+            chunkSet.add(ChunkRevisions.chunkKey(pos.x >> 4, pos.z >> 4));
+        }
+        long[] chunks = chunkSet.toLongArray();
+        int[] revisions = new int[chunks.length];
+        for (int i = 0; i < chunks.length; i++) {
+            revisions[i] = chunkRevisions.chunkRevision((int) chunks[i], (int) (chunks[i] >>> 32));
+        }
+        SearchMetrics.Termination termination = result.getMetrics().map(m -> m.termination).orElse(SearchMetrics.Termination.GOAL);
+        Key key = new Key(finder.startX, finder.startY, finder.startZ, finder.getGoal(), finder.space.fingerprint());
+        Entry entry = new Entry(blocks, costs, path.getNumNodesConsidered(), termination, chunks, revisions);
+        synchronized (this) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Forgets every path from this start, call when one failed while it was walked or a calculation from here found nothing
+     */
+    public synchronized void evict(int startX, int startY, int startZ) {
+        entries.keySet().removeIf(key -> key.x == startX && key.y == startY && key.z == startZ);
+    }
+
+    private static boolean firstMovesPossible(Entry entry, CalculationContext context) {
+        int moves = Math.min(entry.costs.length - 1, Baritone.settings().costVerificationLookahead.value);
+        int[] blocks = entry.blocks;
+        for (int i = 0; i < moves; i++) {
+            int at = i * 3;
+            if (MovesSearchSpace.currentCost(context, blocks[at], blocks[at + 1], blocks[at + 2], blocks[at + 3], blocks[at + 4], blocks[at + 5]) >= ActionCosts.COST_INF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isValid(Entry entry) {
+        for (int i = 0; i < entry.chunks.length; i++) {
+            if (chunkRevisions.chunkRevision((int) entry.chunks[i], (int) (entry.chunks[i] >>> 32)) != entry.revisions[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * @return Lookups that found a path but dropped it because a chunk on it changed or one of its first moves is
+     * impossible now (these count as misses too)
+     */
+    public synchronized long invalidated() {
+        return invalidated;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        long lookups = hits + misses;
+        return "PathCache{" +
+                "size=" + entries.size() +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", invalidated=" + invalidated +
+                ", hitRate=" + (lookups == 0 ? 0 : (double) hits / lookups) +
+                '}';
+    }
+
+    private static String normalize(Goal goal) {
+        int[] blocks = DijkstraPathFinder.goalBlocks(goal);
+        if (blocks == null) {
+            return goal.getClass().getName() + goal;
+        }
+        long[] keys = new long[blocks.length / 3];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = BetterBlockPos.longHash(blocks[i * 3], blocks[i * 3 + 1], blocks[i * 3 + 2]);
+        }
+        Arrays.sort(keys);
+        return Arrays.toString(keys);
+    }
+}
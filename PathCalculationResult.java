@@ -0,0 +1,68 @@
+/*
+ * This file is part of Baritone.
+ *
+ * Baritone is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Baritone is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Baritone.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package baritone.api.utils;
+
+import baritone.api.pathing.calc.IPath;
+
+import java.util.Objects;
+import java.util.Optional;
+
+public class PathCalculationResult {
+
+    private final IPath path;
+    private final Type type;
+    private final SearchMetrics metrics;
+
+    public PathCalculationResult(Type type) {
+        this(type, null);
+    }
+
+    public PathCalculationResult(Type type, IPath path) {
+        this(type, path, null);
+    }
+
+    public PathCalculationResult(Type type, IPath path, SearchMetrics metrics) {
+        Objects.requireNonNull(type);
+        this.path = path;
+        this.type = type;
+        this.metrics = metrics;
+    }
+
+    public final Optional<IPath> getPath() {
+        return Optional.ofNullable(this.path);
+    }
+
+    public final Type getType() {
+        return this.type;
+    }
+
+    /**
+     * @return What the search that produced this result actually did, if the path finder recorded it
+     */
+    public final Optional<SearchMetrics> getMetrics() {
+        return Optional.ofNullable(this.metrics);
+    }
+
+    public enum Type {
+        SUCCESS_TO_GOAL,
+        SUCCESS_SEGMENT,
+        FAILURE,
+        CANCELLATION,
+        EXCEPTION,
+    }
+}
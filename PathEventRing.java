@@ -0,0 +1,82 @@
+package baritone.behavior;
+
+import baritone.api.event.events.PathEvent;
+
+/*
+ * The path events waiting to be dispatched on the next tick
+ *
+ * PathingBehavior used a LinkedBlockingQueue (a node per event) drained into a new ArrayList twice every tick
+ * This is an array made once, it only grows if more events pile up between two dispatches than it has room for
+ *
+ * Any thread can add (the calculation threads do), only the game thread drains. drain() moves everything into a second
+ * array that the game thread reads afterwards, so the events that dispatching them queues wait for the next drain,
+ * same as before. It returns the events that were there as a bitmask (bit(event)), so checking for one is an AND
+ */
+public final class PathEventRing {
+
+    private PathEvent[] ring;
+    // index of the oldest event, the ring length is a power of two
+    private int head;
+    private int size;
+
+    // only touched by the thread that drains
+    private PathEvent[] drained;
+    private int drainedCount;
+
+    public PathEventRing(int capacity) {
+        ring = new PathEvent[Integer.highestOneBit(Math.max(2, capacity - 1)) << 1];
+        drained = new PathEvent[ring.length];
+    }
+
+    public static long bit(PathEvent event) {
+        return 1L << event.ordinal();
+    }
+
+    public synchronized void add(PathEvent event) {
+        if (size == ring.length) {
+            PathEvent[] grown = new PathEvent[ring.length << 1];
+            for (int i = 0; i < size; i++) {
+                grown[i] = ring[(head + i) & (ring.length - 1)];
+            }
+            ring = grown;
+            head = 0;
+        }
+        ring[(head + size) & (ring.length - 1)] = event;
+        size++;
+    }
+
+    /**
+     * Takes out everything added so far, read them with drainedCount() and drained(i) until the next drain
+     *
+     * @return bit(event) of every event that was taken out, or'd together
+     */
+    public long drain() {
+        long seen = 0;
+        synchronized (this) {
+            if (drained.length < ring.length) {
+                drained = new PathEvent[ring.length];
+            }
+            for (int i = 0; i < size; i++) {
+                int slot = (head + i) & (ring.length - 1);
+                drained[i] = ring[slot];
+                ring[slot] = null;
+                seen |= bit(drained[i]);
+            }
+            for (int i = size; i < drainedCount; i++) {
+                drained[i] = null;
+            }
+            drainedCount = size;
+            head = 0;
+            size = 0;
+        }
+        return seen;
+    }
+
+    public int drainedCount() {
+        return drainedCount;
+    }
+
+    public PathEvent drained(int i) {
+        return drained[i];
+    }
+}
@@ -0,0 +1,235 @@
+package baritone.pathing.calc;
+
+import baritone.api.pathing.goals.Goal;
+import baritone.api.utils.PathCalculationResult;
+import baritone.api.utils.SearchMetrics;
+import baritone.pathing.movement.CalculationContext;
+import baritone.utils.pathing.Favoring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Every pathfinder engine by name, and which one new searches use
+ *
+ * This replaces the pathFinderAlgorithm constant in PathingBehavior, which meant a rebuild (and a separate jar) per algorithm
+ * Now one build has all of them and the choice can change while the game runs:
+ *  - start the game with -Dbaritone.pathfinder=<name>, or
+ *  - call PathFinderRegistry.select(<name>) at any time, the next search picks it up
+ * (Baritone's own Settings live in the API jar, so we can't add a setting there)
+ *
+ * The names are the registered engines (Dijkstra, BellmanFord, BidirectionalDijkstra, DeltaStepping, Incremental, Hierarchical, or anything added with register) plus two modes:
+ *  Race     - run the raced engines at the same time and take the first that reaches the goal (PortfolioPathFinder)
+ *             Dijkstra and BellmanFord unless -Dbaritone.race=<name>,<name>,... or race(...) says otherwise. DeltaStepping
+ *             isn't in by default, it would take every core away from the others
+ *  Adaptive - pick one engine per query from how long each engine took on similar queries before (LatencyHistory)
+ *
+ * Every finished search is recorded in the history whatever the mode is, so switching to Adaptive after a while
+ * already knows something. Failed searches count as taking the whole failure timeout, cancelled ones aren't counted
+ */
+public final class PathFinderRegistry {
+
+    public static final String RACE = "Race";
+    public static final String ADAPTIVE = "Adaptive";
+
+    /**
+     * Makes a finder, same arguments as the finder constructors
+     */
+    @FunctionalInterface
+    public interface Factory {
+
+        AbstractNodeCostSearch create(int startX, int startY, int startZ, Goal goal, Favoring favoring, CalculationContext context);
+    }
+
+    /**
+     * A finder plus what is needed to record how it did afterwards
+     */
+    public static final class Selection {
+
+        // the engine name, or RACE
+        public final String engine;
+        public final AbstractNodeCostSearch finder;
+        final String bucket;
+
+        Selection(String engine, AbstractNodeCostSearch finder, String bucket) {
+            this.engine = engine;
+            this.finder = finder;
+            this.bucket = bucket;
+        }
+    }
+
+    private static final Map<String, Factory> ENGINES = new LinkedHashMap<>();
+    private static final LatencyHistory HISTORY = new LatencyHistory();
+    private static volatile String selected;
+    private static volatile List<String> raced;
+
+    static {
+        register("Dijkstra", DijkstraPathFinder::new);
+        register("BellmanFord", BellmanFordPathFinder::new);
+        register("BidirectionalDijkstra", (x, y, z, goal, favoring, context) ->
+                new DijkstraPathFinder(x, y, z, goal, favoring, context, DijkstraPathFinder.DIJKSTRA, true, new MovesSearchSpace(context)));
+        register("DeltaStepping", DeltaSteppingPathFinder::forGame);
+        register(IncrementalPathFinder.NAME, IncrementalPathFinder::forGame);
+        register(HierarchicalPathFinder.NAME, HierarchicalPathFinder::forGame);
+        String racedProperty = System.getProperty("baritone.race", "Dijkstra,BellmanFord");
+        try {
+            race(racedProperty.split(","));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + ", racing Dijkstra and BellmanFord");
+            raced = Arrays.asList("Dijkstra", "BellmanFord");
+        }
+        String property = System.getProperty("baritone.pathfinder", "BellmanFord");
+        try {
+            select(property);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + ", using BellmanFord");
+            selected = "BellmanFord";
+        }
+    }
+
+    private PathFinderRegistry() {}
+
+    public static synchronized void register(String name, Factory factory) {
+        if (name.equals(RACE) || name.equals(ADAPTIVE)) {
+            throw new IllegalArgumentException(name + " is a mode, not an engine name");
+        }
+        ENGINES.put(name, factory);
+    }
+
+    /**
+     * @return The registered engine names, in the order they were registered
+     */
+    public static synchronized List<String> engines() {
+        return new ArrayList<>(ENGINES.keySet());
+    }
+
+    /**
+     * @param name An engine name, RACE or ADAPTIVE
+     */
+    public static void select(String name) {
+        synchronized (PathFinderRegistry.class) {
+            if (!name.equals(RACE) && !name.equals(ADAPTIVE) && !ENGINES.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown pathfinder " + name + ", pick one of " + ENGINES.keySet() + ", " + RACE + " or " + ADAPTIVE);
+            }
+        }
+        selected = name;
+        releaseUnused();
+    }
+
+    public static String selected() {
+        return selected;
+    }
+
+    /**
+     * Sets the engines race mode runs, from the next search on
+     *
+     * @param names Registered engine names, at least one
+     */
+    public static void race(String... names) {
+        List<String> engines = new ArrayList<>();
+        synchronized (PathFinderRegistry.class) {
+            for (String name : names) {
+                name = name.trim();
+                if (!ENGINES.containsKey(name)) {
+                    throw new IllegalArgumentException("Unknown engine " + name + " to race, pick from " + ENGINES.keySet());
+                }
+                if (!engines.contains(name)) {
+                    engines.add(name);
+                }
+            }
+        }
+        if (engines.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to race");
+        }
+        raced = engines;
+        releaseUnused();
+    }
+
+    /**
+     * @return The engines race mode runs
+     */
+    public static List<String> raced() {
+        return new ArrayList<>(raced);
+    }
+
+    private static void releaseUnused() {
+        String name = selected;
+        if (name == null || name.equals(ADAPTIVE) || name.equals(IncrementalPathFinder.NAME)
+                || (name.equals(RACE) && raced.contains(IncrementalPathFinder.NAME))) {
+            return;
+        }
+        // nothing is going to search on its labels anymore
+        IncrementalPathFinder.GAME.release();
+    }
+
+    /**
+     * Makes the finder for one search with whatever is selected right now. Call on the game thread,
+     * race mode makes a CalculationContext per engine
+     */
+    public static Selection create(int startX, int startY, int startZ, Goal goal, Favoring favoring, CalculationContext context) {
+        String mode = selected;
+        String bucket = LatencyHistory.bucket(goal, startX, startY, startZ);
+        Map<String, Factory> engines;
+        synchronized (PathFinderRegistry.class) {
+            engines = new LinkedHashMap<>(ENGINES);
+        }
+        if (mode.equals(RACE)) {
+            // they run at the same time, so every one but the first needs its own context
+            Map<String, AbstractNodeCostSearch> racing = new LinkedHashMap<>();
+            CalculationContext engineContext = context;
+            for (String name : raced) {
+                Factory factory = engines.get(name);
+                racing.put(name, factory.create(startX, startY, startZ, goal, favoring, engineContext));
+                engineContext = new CalculationContext(context.getBaritone(), true);
+            }
+            return new Selection(RACE, new PortfolioPathFinder(startX, startY, startZ, goal, context, racing), bucket);
+        }
+        String engine = mode.equals(ADAPTIVE) ? HISTORY.choose(bucket, new ArrayList<>(engines.keySet())) : mode;
+        return new Selection(engine, engines.get(engine).create(startX, startY, startZ, goal, favoring, context), bucket);
+    }
+
+    /**
+     * Makes the finder for one search with this engine, whatever is selected
+     *
+     * @param engine A registered engine name, not a mode
+     */
+    public static Selection create(String engine, int startX, int startY, int startZ, Goal goal, Favoring favoring, CalculationContext context) {
+        Factory factory;
+        synchronized (PathFinderRegistry.class) {
+            factory = ENGINES.get(engine);
+        }
+        if (factory == null) {
+            throw new IllegalArgumentException("Unknown engine " + engine + ", pick one of " + engines());
+        }
+        return new Selection(engine, factory.create(startX, startY, startZ, goal, favoring, context), LatencyHistory.bucket(goal, startX, startY, startZ));
+    }
+
+    /**
+     * Adds a finished search to the latency history
+     *
+     * @param engine         The engine that produced the result, for a race the winner
+     * @param failureTimeout The failure timeout the search ran with, in milliseconds
+     */
+    public static void record(Selection selection, String engine, PathCalculationResult result, long failureTimeout) {
+        if (!result.getMetrics().isPresent() || result.getType() == PathCalculationResult.Type.CANCELLATION || engine.equals(PathCache.ENGINE)) {
+            return; // a path from the cache says nothing about how fast an engine is
+        }
+        SearchMetrics metrics = result.getMetrics().get();
+        long nanos = metrics.totalNanos();
+        if (result.getType() != PathCalculationResult.Type.SUCCESS_TO_GOAL && result.getType() != PathCalculationResult.Type.SUCCESS_SEGMENT) {
+            nanos = Math.max(nanos, TimeUnit.MILLISECONDS.toNanos(failureTimeout));
+        }
+        HISTORY.record(selection.bucket, engine, nanos);
+    }
+
+    /**
+     * @return The history of the bucket this selection was in, for logging
+     */
+    public static String describeHistory(Selection selection) {
+        return HISTORY.describe(selection.bucket);
+    }
+}
@@ -0,0 +1,121 @@
+package baritone.pathing.calc.openset;
+
+import baritone.pathing.calc.PathNode;
+
+/*
+ * Array backed double ended queue for the label correcting (SPFA) search in BellmanFordPathFinder
+ *
+ * The old version used a java.util.LinkedList and called contains() on it for every relaxation, which is a linear scan
+ * Here membership lives on the node itself, the same way BinaryHeapOpenSet does it:
+ * a node that is in the deque has heapPosition != -1, so PathNode.isOpen() is an O(1) check
+ *
+ * The buffer is a ring whose length is always a power of two so wrapping around is just a mask
+ * We also keep the sum of the costs of the queued nodes so Large-Label-Last can compare against the average without a scan
+ */
+public final class PathNodeDeque {
+
+    /**
+     * Value written into heapPosition while a node is queued, anything other than -1 means open
+     */
+    private static final int IN_DEQUE = 0;
+
+    private PathNode[] array;
+    private int head;
+    private int size;
+    private double costSum;
+
+    public PathNodeDeque() {
+        this(1024);
+    }
+
+    public PathNodeDeque(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(16, initialCapacity - 1)) << 1;
+        this.array = new PathNode[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Average cost of every node currently queued, used by Large-Label-Last
+     */
+    public double averageCost() {
+        return costSum / size;
+    }
+
+    public PathNode peekFirst() {
+        return array[head];
+    }
+
+    public void addFirst(PathNode node) {
+        if (node.isOpen()) {
+            throw new IllegalStateException("Node already queued");
+        }
+        growIfFull();
+        head = (head - 1) & (array.length - 1);
+        array[head] = node;
+        size++;
+        costSum += node.cost;
+        node.heapPosition = IN_DEQUE;
+    }
+
+    public void addLast(PathNode node) {
+        if (node.isOpen()) {
+            throw new IllegalStateException("Node already queued");
+        }
+        growIfFull();
+        array[(head + size) & (array.length - 1)] = node;
+        size++;
+        costSum += node.cost;
+        node.heapPosition = IN_DEQUE;
+    }
+
+    public PathNode pollFirst() {
+        if (size == 0) {
+            throw new IllegalStateException("Deque is empty");
+        }
+        PathNode node = array[head];
+        array[head] = null;
+        head = (head + 1) & (array.length - 1);
+        size--;
+        costSum = size == 0 ? 0 : costSum - node.cost;
+        node.heapPosition = -1;
+        return node;
+    }
+
+    /**
+     * Moves the front node to the back without touching its open flag
+     */
+    public void rotate() {
+        PathNode node = array[head];
+        array[head] = null;
+        head = (head + 1) & (array.length - 1);
+        array[(head + size - 1) & (array.length - 1)] = node;
+    }
+
+    /**
+     * Must be called when a node that is already queued gets a cheaper cost, so the running sum stays right
+     *
+     * @param previousCost The cost the node had when it was last counted
+     */
+    public void costDecreased(PathNode node, double previousCost) {
+        costSum -= previousCost - node.cost;
+    }
+
+    private void growIfFull() {
+        if (size < array.length) {
+            return;
+        }
+        PathNode[] bigger = new PathNode[array.length << 1];
+        int firstPart = array.length - head;
+        System.arraycopy(array, head, bigger, 0, firstPart);
+        System.arraycopy(array, 0, bigger, firstPart, head);
+        array = bigger;
+        head = 0;
+    }
+}
@@ -0,0 +1,67 @@
+package baritone.pathing.calc;
+
+import baritone.api.pathing.calc.IPath;
+import baritone.api.utils.BetterBlockPos;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/*
+ * Which blocks a path goes through, to ask "is this block on the path" without going through the whole list
+ *
+ * PathingBehavior asks that every tick (is the player on the path that is being calculated, on the next segment),
+ * positions().contains went through the list each time, so the longer the path the longer the tick
+ * This is a set of the packed positions (TargetBlockIndex#pack, so no two blocks share one), built once per path
+ *
+ * Paths come from the jar, so the set can't live in them. of() keeps one per path as long as the path is around,
+ * by identity (no IPath overrides equals). The search thread builds it for the paths it publishes, so the tick thread
+ * mostly only looks it up
+ */
+public final class PathPositions {
+
+    private static final Map<IPath, PathPositions> INDEXED = new WeakHashMap<>();
+
+    private final LongOpenHashSet positions;
+
+    private PathPositions(List<BetterBlockPos> positions) {
+        this.positions = new LongOpenHashSet(positions.size());
+        for (BetterBlockPos pos : positions) {
+            this.positions.add(TargetBlockIndex.pack(pos.x, pos.y, pos.z));
+        }
+    }
+
+    /**
+     * @return The positions of this path, made the first time it is asked for
+     */
+    public static PathPositions of(IPath path) {
+        synchronized (INDEXED) {
+            PathPositions indexed = INDEXED.get(path);
+            if (indexed != null) {
+                return indexed;
+            }
+        }
+        // built outside the lock, so a tick looking up another path doesn't wait for it
+        PathPositions built = new PathPositions(path.positions());
+        synchronized (INDEXED) {
+            return INDEXED.computeIfAbsent(path, p -> built);
+        }
+    }
+
+    /**
+     * Same as path.positions().contains(pos)
+     */
+    public static boolean contains(IPath path, BlockPos pos) {
+        return pos != null && of(path).contains(pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    public boolean contains(int x, int y, int z) {
+        return positions.contains(TargetBlockIndex.pack(x, y, z));
+    }
+
+    public int size() {
+        return positions.size();
+    }
+}
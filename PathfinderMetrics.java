@@ -0,0 +1,249 @@
+package baritone.behavior;
+
+import baritone.api.utils.SearchMetrics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Where the pathfinder timing results go
+ *
+ * createPathfinder used to write log.csv (twice) and log.txt itself, on the game thread, while holding pathCalcLock
+ * Now it just offers a Record to the queue here and returns, a background thread takes whatever has piled up
+ * and writes all of it in one go. If the queue is ever full the record is dropped and counted, the game thread never waits
+ *
+ * CSV writes the same log.csv and log.txt as before, BINARY writes fixed size records to log.bin which is much smaller
+ * and faster for runs with thousands of paths (see Record.BYTES for the layout)
+ *
+ * Every engine's search time is in Search Time (search_time, searchNanos) next to the engine's name. The Bellman Ford and
+ * Dijkstra columns are only still filled in for those two, so older scripts reading them keep working
+ * A log.csv or log.bin from before these columns is moved aside (log.old.csv, log.old.bin) instead of being appended to
+ *
+ * Every batch goes to each Sink in order, files(...) is the file one and JdbcMetricsSink is the database one
+ */
+public final class PathfinderMetrics {
+
+    public enum Format {
+        CSV,
+        BINARY
+    }
+
+    /**
+     * Somewhere a batch of records can be written. Only ever called from the writer thread.
+     */
+    public interface Sink {
+
+        void write(List<Record> batch) throws Exception;
+    }
+
+    public static final class Record {
+
+        // engine names are cut to this in log.bin
+        public static final int ENGINE_BYTES = 32;
+
+        /**
+         * Size of one record in log.bin, big endian:
+         * x, y, z (int), bellman ford time, dijkstra time (long, search nanos, 0 for the one that didn't run),
+         * post process nanos (long), nodes expanded, movements considered (int), move apply nanos, open set operations (long),
+         * peak node map size (int), termination (byte, SearchMetrics.Termination ordinal), race margin (long, -1 if not a race),
+         * move cache hits, move cache lookups (int), search nanos (long, whatever the engine), engine (ENGINE_BYTES of ASCII,
+         * zero padded)
+         * The file starts with BINARY_MAGIC and BYTES (int each)
+         */
+        public static final int BYTES = 3 * Integer.BYTES + 3 * Long.BYTES + 2 * Integer.BYTES + 2 * Long.BYTES + Integer.BYTES + 1 + Long.BYTES + 2 * Integer.BYTES + Long.BYTES + ENGINE_BYTES;
+
+        public final int x;
+        public final int y;
+        public final int z;
+        public final long bellmanFordNanos;
+        public final long dijkstraNanos;
+        public final long searchNanos;
+        public final String algorithm;
+        public final SearchMetrics metrics;
+        // in race mode how far ahead the winner (algorithm) was, at least, -1 otherwise
+        public final long raceMarginNanos;
+
+        public Record(int x, int y, int z, String algorithm, SearchMetrics metrics) {
+            this(x, y, z, algorithm, metrics, -1);
+        }
+
+        public Record(int x, int y, int z, String algorithm, SearchMetrics metrics, long raceMarginNanos) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.bellmanFordNanos = algorithm.equals("BellmanFord") ? metrics.searchNanos : 0;
+            this.dijkstraNanos = algorithm.equals("Dijkstra") ? metrics.searchNanos : 0;
+            this.searchNanos = metrics.searchNanos;
+            this.algorithm = algorithm;
+            this.metrics = metrics;
+            this.raceMarginNanos = raceMarginNanos;
+        }
+    }
+
+    private static final String CSV_HEADER = "X, Y, Z, Bellman Ford Time, Dijkstra Time, Post Process Time, Nodes Expanded, Movements Considered, Move Apply Time, Open Set Operations, Peak Node Map Size, Result, Algorithm, Race Margin, Move Cache Hits, Move Cache Lookups, Search Time\n";
+
+    // "BMET", the first int of a log.bin with the search time and engine in its records
+    private static final int BINARY_MAGIC = 0x424D4554;
+
+    private final Sink[] sinks;
+    private final BlockingQueue<Record> queue;
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param capacity How many records can be waiting for the writer
+     * @param sinks    Where every batch is written
+     */
+    public PathfinderMetrics(int capacity, Sink... sinks) {
+        this.sinks = sinks;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        Thread writer = new Thread(this::run, "Baritone pathfinder metrics writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Never blocks and never touches the disk, safe to call from the game thread
+     */
+    public void record(Record record) {
+        if (!queue.offer(record)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return How many records were thrown away because the writer was behind
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    private void run() {
+        List<Record> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            for (Sink sink : sinks) {
+                try {
+                    sink.write(batch);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * @param directory Folder the log files are written in
+     * @param format    Which files to write
+     */
+    public static Sink files(Path directory, Format format) {
+        return new Sink() {
+
+            // whether a file from before the current layout was looked for, once per game
+            private boolean checked;
+
+            @Override
+            public void write(List<Record> batch) throws IOException {
+                Files.createDirectories(directory);
+                if (!checked) {
+                    moveOldLayoutAside(directory, format);
+                    checked = true;
+                }
+                if (format == Format.CSV) {
+                    writeCsv(directory, batch);
+                } else {
+                    writeBinary(directory, batch);
+                }
+            }
+        };
+    }
+
+    private static void moveOldLayoutAside(Path directory, Format format) throws IOException {
+        Path file = directory.resolve(format == Format.CSV ? "log.csv" : "log.bin");
+        if (!Files.exists(file) || Files.size(file) == 0) {
+            return;
+        }
+        boolean current;
+        if (format == Format.CSV) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                current = CSV_HEADER.trim().equals(reader.readLine());
+            }
+        } else {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES);
+                while (header.hasRemaining() && channel.read(header) >= 0) {}
+                current = header.position() == header.capacity() && header.getInt(0) == BINARY_MAGIC && header.getInt(Integer.BYTES) == Record.BYTES;
+            }
+        }
+        if (!current) {
+            Files.move(file, directory.resolve(format == Format.CSV ? "log.old.csv" : "log.old.bin"), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void writeCsv(Path directory, List<Record> batch) throws IOException {
+        Path csv = directory.resolve("log.csv");
+        StringBuilder rows = new StringBuilder();
+        StringBuilder lines = new StringBuilder();
+        if (!Files.exists(csv)) {
+            rows.append(CSV_HEADER);
+        }
+        for (Record record : batch) {
+            SearchMetrics m = record.metrics;
+            rows.append(String.format("%d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %s, %s, %d, %d, %d, %d%n", record.x, record.y, record.z, record.bellmanFordNanos, record.dijkstraNanos,
+                    m.postProcessNanos, m.nodesExpanded, m.movementsConsidered, m.moveApplyNanos, m.openSetOperations, m.peakNodeMapSize, m.termination, record.algorithm, record.raceMarginNanos, m.moveCacheHits, m.moveCacheLookups,
+                    record.searchNanos));
+            lines.append(String.format("X: %d, Y: %d, Z: %d, Search time: %d ns, Nodes expanded: %d, Ended by: %s, Algorithm: %s%s%n",
+                    record.x, record.y, record.z, record.searchNanos, m.nodesExpanded, m.termination, record.algorithm,
+                    record.raceMarginNanos < 0 ? "" : String.format(" (won the race by %d ns)", record.raceMarginNanos)));
+        }
+        Files.write(csv, rows.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        Files.write(directory.resolve("log.txt"), lines.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static void writeBinary(Path directory, List<Record> batch) throws IOException {
+        Path file = directory.resolve("log.bin");
+        boolean header = !Files.exists(file) || Files.size(file) == 0;
+        ByteBuffer buffer = ByteBuffer.allocate((header ? 2 * Integer.BYTES : 0) + batch.size() * Record.BYTES);
+        if (header) {
+            buffer.putInt(BINARY_MAGIC).putInt(Record.BYTES);
+        }
+        for (Record record : batch) {
+            buffer.putInt(record.x).putInt(record.y).putInt(record.z);
+            buffer.putLong(record.bellmanFordNanos).putLong(record.dijkstraNanos);
+            SearchMetrics m = record.metrics;
+            buffer.putLong(m.postProcessNanos).putInt(m.nodesExpanded).putInt(m.movementsConsidered);
+            buffer.putLong(m.moveApplyNanos).putLong(m.openSetOperations).putInt(m.peakNodeMapSize);
+            buffer.put((byte) m.termination.ordinal());
+            buffer.putLong(record.raceMarginNanos);
+            buffer.putInt(m.moveCacheHits).putInt(m.moveCacheLookups);
+            buffer.putLong(record.searchNanos);
+            byte[] engine = record.algorithm.getBytes(StandardCharsets.US_ASCII);
+            for (int i = 0; i < Record.ENGINE_BYTES; i++) {
+                buffer.put(i < engine.length ? engine[i] : 0);
+            }
+        }
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
@@ -22,17 +22,7 @@ package baritone.behavior;
 
 import java.util.concurrent.ExecutionException;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-
-import java.io.IOException;
 
 
 import java.util.concurrent.Callable;
@@ -50,42 +40,64 @@ import org.apache.logging.log4j.Logger;
 import baritone.Baritone;
 import baritone.api.behavior.IPathingBehavior;
 import baritone.api.event.events.*;
+import baritone.api.event.events.type.EventState;
 import baritone.api.pathing.calc.IPath;
 import baritone.api.pathing.goals.Goal;
 import baritone.api.pathing.goals.GoalXZ;
+import baritone.api.pathing.movement.IMovement;
 import baritone.api.process.PathingCommand;
 import baritone.api.utils.BetterBlockPos;
 import baritone.api.utils.Helper;
 import baritone.api.utils.PathCalculationResult;
 import baritone.api.utils.interfaces.IGoalRenderPos;
 
-import baritone.pathing.calc.BellmanFordPathFinder;
-import baritone.pathing.calc.DijkstraPathFinder;
 import baritone.pathing.calc.AbstractNodeCostSearch;
+import baritone.pathing.calc.PathFinderRegistry;
+import baritone.pathing.calc.PathPositions;
+import baritone.pathing.calc.PortfolioPathFinder;
+import baritone.pathing.calc.ChunkRevisions;
+import baritone.pathing.calc.PathCache;
+import baritone.pathing.calc.HierarchicalPathFinder;
+import baritone.pathing.calc.IncrementalPathFinder;
+import baritone.pathing.calc.MoveCostCache;
+import baritone.pathing.calc.TargetBlockIndex;
 import baritone.pathing.movement.CalculationContext;
 import baritone.pathing.movement.MovementHelper;
 import baritone.pathing.path.PathExecutor;
+import baritone.utils.BlockStateInterface;
 import baritone.utils.PathRenderer;
 import baritone.utils.PathingCommandContext;
 import baritone.utils.pathing.Favoring;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.network.play.server.SPacketBlockChange;
+import net.minecraft.network.play.server.SPacketMultiBlockChange;
 import net.minecraft.util.math.BlockPos;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.LinkedBlockingQueue;
 
 public final class PathingBehavior extends Behavior implements IPathingBehavior, Helper {
     
-    private static final String CONNECTION_URL = "jdbc:mysql://localhost:3306/MinecraftPathFinder?useSSL=false&serverTimezone=UTC&user=root&password=yaryar&jdbc:mysql-connector-java-8.0.28.jar=./logs/mysql-connector-java-8.0.28.jar";
-
     private static final Logger LOGGER = LogManager.getLogger("Baritone");
 
 
 
+    // How many segments after current are found ahead of time, -Dbaritone.planAheadSegments=1 is the old behaviour
+    // (one next segment, only looked for once current is almost over)
+    private static final int PLAN_AHEAD_SEGMENTS = Math.max(1, Integer.getInteger("baritone.planAheadSegments", 3));
+
     private PathExecutor current;
-    private PathExecutor next;
+    // The segments after current, in order, each one starts where the one before it ends (the first one where current ends)
+    // Only the calculation thread adds to it, only the game thread takes from it, both with pathPlanLock
+    private final ArrayDeque<PathExecutor> planned = new ArrayDeque<>();
+    // Ticks current was null at a segment boundary because the next segment wasn't found yet, since the last goal
+    private int boundaryWaitTicks;
 
     private Goal goal;
     private CalculationContext context;
@@ -110,7 +122,23 @@ public final class PathingBehavior extends Behavior implements IPathingBehavior,
 
     private BetterBlockPos expectedSegmentStart;
 
-    private final LinkedBlockingQueue<PathEvent> toDispatch = new LinkedBlockingQueue<>();
+    // Where the player stands this tick, looked up once in onTick
+    private BetterBlockPos feetThisTick;
+
+    private final PathEventRing toDispatch = new PathEventRing(32);
+
+    // Blocks the server said changed (another player, water, sand, anything the player didn't do), packed positions
+    // Added on the network thread before the game thread puts them in the world, so handed on at the next tick
+    private final LongOpenHashSet serverBlockChanges = new LongOpenHashSet();
+
+    // Where serverBlocksChanged copies them to before letting go of the lock, only touched by the game thread
+    private long[] serverBlockBuffer = new long[64];
+
+    // Scratch for pathStart, which runs every tick: the 9 blocks around the feet as offsets (dx + 1) * 3 + (dz + 1),
+    // closest to the player first, and the block states it reads them with (made again when a chunk loads or changes)
+    private final int[] edgeOffsets = new int[9];
+    private final double[] edgeDistSq = new double[9];
+    private BlockStateInterface tickBsi;
 
     public PathingBehavior(Baritone baritone) {
         super(baritone);
@@ -121,30 +149,126 @@ public final class PathingBehavior extends Behavior implements IPathingBehavior,
     }
 
     private void dispatchEvents() {
-        ArrayList<PathEvent> curr = new ArrayList<>();
-        toDispatch.drainTo(curr);
-        calcFailedLastTick = curr.contains(PathEvent.CALC_FAILED);
-        for (PathEvent event : curr) {
-            baritone.getGameEventHandler().onPathEvent(event);
+        long seen = toDispatch.drain();
+        calcFailedLastTick = (seen & PathEventRing.bit(PathEvent.CALC_FAILED)) != 0;
+        for (int i = 0; i < toDispatch.drainedCount(); i++) {
+            baritone.getGameEventHandler().onPathEvent(toDispatch.drained(i));
         }
     }
 
     @Override
     public void onTick(TickEvent event) {
         dispatchEvents();
+        serverBlocksChanged();
         if (event.getType() == TickEvent.Type.OUT) {
             secretInternalSegmentCancel();
             baritone.getPathingControlManager().cancelEverything();
             return;
         }
 
-        expectedSegmentStart = pathStart();
+        feetThisTick = ctx.playerFeet();
+        expectedSegmentStart = pathStart(feetThisTick);
         baritone.getPathingControlManager().preTick();
         tickPath();
         ticksElapsedSoFar++;
         dispatchEvents();
     }
 
+    @Override
+    public void onChunkEvent(ChunkEvent event) {
+        // blocks in this chunk may have changed, the ore index rescans it on the next calculation
+        if (event.getState() == EventState.POST) {
+            TargetBlockIndex.DIAMOND_ORE.markChunkDirty(event.getX(), event.getZ());
+            ChunkRevisions.GAME.markChunkDirty(event.getX(), event.getZ());
+            IncrementalPathFinder.GAME.chunkChanged(event.getX(), event.getZ());
+            tickBsi = null;
+        }
+    }
+
+    @Override
+    public void onBlockInteract(BlockInteractEvent event) {
+        BlockPos pos = event.getPos();
+        blockChanged(pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    @Override
+    public void onReceivePacket(PacketEvent event) {
+        if (event.getState() != EventState.POST) {
+            return;
+        }
+        if (event.getPacket() instanceof SPacketBlockChange) {
+            BlockPos pos = ((SPacketBlockChange) event.getPacket()).getBlockPosition();
+            synchronized (serverBlockChanges) {
+                serverBlockChanges.add(TargetBlockIndex.pack(pos.getX(), pos.getY(), pos.getZ()));
+            }
+        } else if (event.getPacket() instanceof SPacketMultiBlockChange) {
+            SPacketMultiBlockChange.BlockUpdateData[] changed = ((SPacketMultiBlockChange) event.getPacket()).getChangedBlocks();
+            synchronized (serverBlockChanges) {
+                for (SPacketMultiBlockChange.BlockUpdateData data : changed) {
+                    BlockPos pos = data.getPos();
+                    serverBlockChanges.add(TargetBlockIndex.pack(pos.getX(), pos.getY(), pos.getZ()));
+                }
+            }
+        }
+    }
+
+    private void serverBlocksChanged() {
+        int count;
+        synchronized (serverBlockChanges) {
+            count = serverBlockChanges.size();
+            if (count == 0) {
+                return;
+            }
+            if (serverBlockBuffer.length < count) {
+                serverBlockBuffer = new long[Math.max(count, serverBlockBuffer.length * 2)];
+            }
+            LongIterator it = serverBlockChanges.iterator();
+            for (int i = 0; i < count; i++) {
+                serverBlockBuffer[i] = it.nextLong();
+            }
+            serverBlockChanges.clear();
+        }
+        for (int i = 0; i < count; i++) {
+            long pos = serverBlockBuffer[i];
+            // TargetBlockIndex.pack's layout, the same as BlockPos.toLong
+            blockChanged((int) (pos >> 38), (int) (pos << 26 >> 52), (int) (pos << 38 >> 38));
+        }
+    }
+
+    // The ore index, the chunk revisions and the incremental search all rescan or repair what depends on this block
+    private void blockChanged(int x, int y, int z) {
+        TargetBlockIndex.DIAMOND_ORE.markChunkDirty(x >> 4, z >> 4);
+        ChunkRevisions.GAME.markChunkDirty(x >> 4, z >> 4);
+        IncrementalPathFinder.GAME.blockChanged(x, y, z);
+    }
+
+    @Override
+    public void onWorldEvent(WorldEvent event) {
+        synchronized (serverBlockChanges) {
+            serverBlockChanges.clear();
+        }
+        TargetBlockIndex.DIAMOND_ORE.clear();
+        ChunkRevisions.GAME.clear();
+        IncrementalPathFinder.GAME.reset();
+        tickBsi = null;
+    }
+
+    // The executor gives up when a movement got impossible or more expensive than when it was found, checking the one
+    // it is on and the next costVerificationLookahead. Blocks can change without a chunk, block or packet event (a change
+    // the client makes on its own), so what was kept from before about these chunks doesn't count anymore, and neither
+    // does a kept path from where this one started
+    private void blocksChangedUnder(PathExecutor failed) {
+        BetterBlockPos src = failed.getPath().getSrc();
+        PathCache.GAME.evict(src.x, src.y, src.z);
+        List<IMovement> movements = failed.getPath().movements();
+        int end = Math.min(movements.size(), failed.getPosition() + Baritone.settings().costVerificationLookahead.value + 1);
+        for (int i = Math.max(0, failed.getPosition()); i < end; i++) {
+            IMovement movement = movements.get(i);
+            ChunkRevisions.GAME.markChunkDirty(movement.getSrc().x >> 4, movement.getSrc().z >> 4);
+            ChunkRevisions.GAME.markChunkDirty(movement.getDest().x >> 4, movement.getDest().z >> 4);
+        }
+    }
+
     @Override
     public void onPlayerSprintState(SprintStateEvent event) {
         if (isPathing()) {
@@ -176,9 +300,9 @@ public final class PathingBehavior extends Behavior implements IPathingBehavior,
                     // are we calculating the right thing though? 🤔
                     BetterBlockPos calcFrom = inProgress.getStart();
                     Optional<IPath> currentBest = inProgress.bestPathSoFar();
-                    if ((current == null || !current.getPath().getDest().equals(calcFrom)) // if current ends in inProgress's start, then we're ok
-                            && !calcFrom.equals(ctx.playerFeet()) && !calcFrom.equals(expectedSegmentStart) // if current starts in our playerFeet or pathStart, then we're ok
-                            && (!currentBest.isPresent() || (!currentBest.get().positions().contains(ctx.playerFeet()) && !currentBest.get().positions().contains(expectedSegmentStart))) // if
+                    if ((current == null || !plannedDest().equals(calcFrom)) // if current (or the last planned segment) ends in inProgress's start, then we're ok
+                            && !calcFrom.equals(feetThisTick) && !calcFrom.equals(expectedSegmentStart) // if current starts in our playerFeet or pathStart, then we're ok
+                            && (!currentBest.isPresent() || (!PathPositions.contains(currentBest.get(), feetThisTick) && !PathPositions.contains(currentBest.get(), expectedSegmentStart))) // if
                     ) {
                         // when it was *just* started, currentBest will be empty so we need to also check calcFrom since that's always present
                         inProgress.cancel(); // cancellation doesn't dispatch any events
@@ -190,32 +314,38 @@ public final class PathingBehavior extends Behavior implements IPathingBehavior,
             }
             safeToCancel = current.onTick();
             if (current.failed() || current.finished()) {
+                if (current.failed()) {
+                    blocksChangedUnder(current);
+                }
                 current = null;
-                if (goal == null || goal.isInGoal(ctx.playerFeet())) {
-                    logDebug("All done. At " + goal);
+                if (goal == null || goal.isInGoal(feetThisTick)) {
+                    logDebug("All done. At " + goal + (boundaryWaitTicks > 0 ? ", waited " + boundaryWaitTicks + " ticks for segments on the way" : ""));
                     queuePathEvent(PathEvent.AT_GOAL);
-                    next = null;
+                    planned.clear();
+                    boundaryWaitTicks = 0;
                     if (Baritone.settings().disconnectOnArrival.value) {
                         ctx.world().sendQuittingDisconnectingPacket();
                     }
                     return;
                 }
-                if (next != null && !next.getPath().positions().contains(ctx.playerFeet()) && !next.getPath().positions().contains(expectedSegmentStart)) { // can contain either one
+                PathExecutor next = planned.peekFirst();
+                if (next != null && !PathPositions.contains(next.getPath(), feetThisTick) && !PathPositions.contains(next.getPath(), expectedSegmentStart)) { // can contain either one
                     // if the current path failed, we may not actually be on the next one, so make sure
-                    logDebug("Discarding next path as it does not contain current position");
+                    logDebug("Discarding " + planned.size() + " planned path(s) as the next one does not contain current position");
                     // for example if we had a nicely planned ahead path that starts where current ends
                     // that's all fine and good
                     // but if we fail in the middle of current
                     // we're nowhere close to our planned ahead path
                     // so need to discard it sadly.
+                    // the ones after it start where it ends, so they go too
                     queuePathEvent(PathEvent.DISCARD_NEXT);
+                    planned.clear();
                     next = null;
                 }
                 if (next != null) {
-                    logDebug("Continuing on to planned next path");
+                    logDebug("Continuing on to planned next path, " + (planned.size() - 1) + " more planned after it");
                     queuePathEvent(PathEvent.CONTINUING_ONTO_PLANNED_NEXT);
-                    current = next;
-                    next = null;
+                    current = planned.pollFirst();
                     current.onTick(); // don't waste a tick doing nothing, get started right away
                     return;
                 }
@@ -223,6 +353,7 @@ public final class PathingBehavior extends Behavior implements IPathingBehavior,
                 synchronized (pathCalcLock) {
                     if (inProgress != null) {
                         queuePathEvent(PathEvent.PATH_FINISHED_NEXT_STILL_CALCULATING);
+                        boundaryWaitTicks++;
                         return;
                     }
                     // we aren't calculating
@@ -232,12 +363,12 @@ public final class PathingBehavior extends Behavior implements IPathingBehavior,
                 return;
             }
             // at this point, we know current is in progress
+            PathExecutor next = planned.peekFirst();
             if (safeToCancel && next != null && next.snipsnapifpossible()) {
                 // a movement just ended; jump directly onto the next path
                 logDebug("Splicing into planned next path early...");
                 queuePathEvent(PathEvent.SPLICING_ONTO_NEXT_EARLY);
-                current = next;
-                next = null;
+                current = planned.pollFirst();
                 current.onTick();
                 return;
             }
@@ -245,28 +376,32 @@ public final class PathingBehavior extends Behavior implements IPathingBehavior,
                 current = current.trySplice(next);
             }
             if (next != null && current.getPath().getDest().equals(next.getPath().getDest())) {
-                next = null;
+                // spliced all of next in, the one after it starts where current ends now
+                planned.pollFirst();
             }
             synchronized (pathCalcLock) {
                 if (inProgress != null) {
                     // if we aren't calculating right now
                     return;
                 }
-                if (next != null) {
-                    // and we have no plan for what to do next
+                if (planned.size() >= PLAN_AHEAD_SEGMENTS) {
+                    // and we don't have enough planned yet
                     return;
                 }
-                if (goal == null || goal.isInGoal(current.getPath().getDest())) {
-                    // and this path doesn't get us all the way there
+                BetterBlockPos from = plannedDest();
+                if (goal == null || goal.isInGoal(from)) {
+                    // and what we have planned doesn't get us all the way there
                     return;
                 }
-                if (ticksRemainingInSegment(false).get() < Baritone.settings().planningTickLookahead.value) {
+                // with more than one segment ahead, keep going as soon as the last one is found, so the calculations
+                // stay ahead of the player instead of starting 7.5 seconds before each boundary
+                if (PLAN_AHEAD_SEGMENTS > 1 || ticksRemainingInSegment(false).get() < Baritone.settings().planningTickLookahead.value) {
                     // and this path has 7.5 seconds or less left
                     // don't include the current movement so a very long last movement (e.g. descend) doesn't trip it up
                     // if we actually included current, it wouldn't start planning ahead until the last movement was done, if the last movement took more than 7.5 seconds on its own
-                    logDebug("Path almost over. Planning ahead...");
+                    logDebug(planned.isEmpty() ? "Path almost over. Planning ahead..." : "Planning segment " + (planned.size() + 2) + " ahead from " + from + "...");
                     queuePathEvent(PathEvent.NEXT_SEGMENT_CALC_STARTED);
-                    findPathInNewThread(current.getPath().getDest(), false, context);
+                    findPathInNewThread(from, false, context);
                 }
             }
         }
@@ -338,7 +473,25 @@ public final class PathingBehavior extends Behavior implements IPathingBehavior,
 
     @Override
     public PathExecutor getNext() {
-        return next;
+        synchronized (pathPlanLock) {
+            return planned.peekFirst();
+        }
+    }
+
+    /**
+     * @return Every segment planned after current, in the order they will be walked
+     */
+    public List<PathExecutor> getPlanned() {
+        synchronized (pathPlanLock) {
+            return new ArrayList<>(planned);
+        }
+    }
+
+    // Where the next calculation ahead starts: the end of the last planned segment, or of current if there is none
+    // Only call with pathPlanLock and current != null
+    private BetterBlockPos plannedDest() {
+        PathExecutor last = planned.peekLast();
+        return (last == null ? current : last).getPath().getDest();
     }
 
     @Override
@@ -383,7 +536,7 @@ public final class PathingBehavior extends Behavior implements IPathingBehavior,
                 return;
             }
             current = null;
-            next = null;
+            planned.clear();
         }
         cancelRequested = true;
         // do everything BUT clear keys
@@ -396,7 +549,7 @@ public final class PathingBehavior extends Behavior implements IPathingBehavior,
             getInProgress().ifPresent(AbstractNodeCostSearch::cancel);
             if (current != null) {
                 current = null;
-                next = null;
+                planned.clear();
                 baritone.getInputOverrideHandler().clearAllKeys();
                 baritone.getInputOverrideHandler().getBlockBreakHelper().stopBreakingBlock();
             }
@@ -455,46 +608,74 @@ public final class PathingBehavior extends Behavior implements IPathingBehavior,
      *
      * @return The starting {@link BlockPos} for a new path
      */
-    public BetterBlockPos pathStart() { // TODO move to a helper or util class
-        BetterBlockPos feet = ctx.playerFeet();
-        if (!MovementHelper.canWalkOn(ctx, feet.down())) {
+    public BetterBlockPos pathStart() {
+        return pathStart(ctx.playerFeet());
+    }
+
+    private BetterBlockPos pathStart(BetterBlockPos feet) {
+        // this runs every tick, so no lists, sorts or positions made only to look at a block
+        BlockStateInterface bsi = tickBsi;
+        if (bsi == null) {
+            bsi = tickBsi = new BlockStateInterface(ctx);
+        }
+        if (!MovementHelper.canWalkOn(bsi, feet.x, feet.y - 1, feet.z)) {
             if (ctx.player().onGround) {
                 double playerX = ctx.player().posX;
                 double playerZ = ctx.player().posZ;
-                ArrayList<BetterBlockPos> closest = new ArrayList<>();
+                // insertion sort, ties keep the order they were added in like the stable sort this used to be
+                int count = 0;
                 for (int dx = -1; dx <= 1; dx++) {
                     for (int dz = -1; dz <= 1; dz++) {
-                        closest.add(new BetterBlockPos(feet.x + dx, feet.y, feet.z + dz));
+                        double distX = (feet.x + dx + 0.5D) - playerX;
+                        double distZ = (feet.z + dz + 0.5D) - playerZ;
+                        double distSq = distX * distX + distZ * distZ;
+                        int i = count++;
+                        while (i > 0 && edgeDistSq[i - 1] > distSq) {
+                            edgeDistSq[i] = edgeDistSq[i - 1];
+                            edgeOffsets[i] = edgeOffsets[i - 1];
+                            i--;
+                        }
+                        edgeDistSq[i] = distSq;
+                        edgeOffsets[i] = (dx + 1) * 3 + (dz + 1);
                     }
                 }
-                closest.sort(Comparator.comparingDouble(pos -> ((pos.x + 0.5D) - playerX) * ((pos.x + 0.5D) - playerX) + ((pos.z + 0.5D) - playerZ) * ((pos.z + 0.5D) - playerZ)));
                 for (int i = 0; i < 4; i++) {
-                    BetterBlockPos possibleSupport = closest.get(i);
-                    double xDist = Math.abs((possibleSupport.x + 0.5D) - playerX);
-                    double zDist = Math.abs((possibleSupport.z + 0.5D) - playerZ);
+                    int x = feet.x + edgeOffsets[i] / 3 - 1;
+                    int z = feet.z + edgeOffsets[i] % 3 - 1;
+                    double xDist = Math.abs((x + 0.5D) - playerX);
+                    double zDist = Math.abs((z + 0.5D) - playerZ);
                     if (xDist > 0.8 && zDist > 0.8) {
                         // can't possibly be sneaking off of this one, we're too far away
                         continue;
                     }
-                    if (MovementHelper.canWalkOn(ctx, possibleSupport.down()) && MovementHelper.canWalkThrough(ctx, possibleSupport) && MovementHelper.canWalkThrough(ctx, possibleSupport.up())) {
+                    if (MovementHelper.canWalkOn(bsi, x, feet.y - 1, z) && MovementHelper.canWalkThrough(bsi, x, feet.y, z) && MovementHelper.canWalkThrough(bsi, x, feet.y + 1, z)) {
                         // this is plausible
                         //logDebug("Faking path start assuming player is standing off the edge of a block");
-                        return possibleSupport;
+                        return startAt(x, feet.y, z);
                     }
                 }
 
             } else {
                 // !onGround
                 // we're in the middle of a jump
-                if (MovementHelper.canWalkOn(ctx, feet.down().down())) {
+                if (MovementHelper.canWalkOn(bsi, feet.x, feet.y - 2, feet.z)) {
                     //logDebug("Faking path start assuming player is midair and falling");
-                    return feet.down();
+                    return startAt(feet.x, feet.y - 1, feet.z);
                 }
             }
         }
         return feet;
     }
 
+    // The faked start of the last tick again if it is the same block, standing at an edge gives the same one every tick
+    private BetterBlockPos startAt(int x, int y, int z) {
+        BetterBlockPos last = expectedSegmentStart;
+        if (last != null && last.x == x && last.y == y && last.z == z) {
+            return last;
+        }
+        return new BetterBlockPos(x, y, z);
+    }
+
     /**
      * In a new thread, pathfind to target blockpos
      *
@@ -528,7 +709,10 @@ public final class PathingBehavior extends Behavior implements IPathingBehavior,
             primaryTimeout = Baritone.settings().planAheadPrimaryTimeoutMS.value;
             failureTimeout = Baritone.settings().planAheadFailureTimeoutMS.value;
         }
-        AbstractNodeCostSearch pathfinder = createPathfinder(start, goal, current == null ? null : current.getPath(), context);
+        // favor the segment this one continues from
+        PathExecutor previous = current == null ? null : planned.isEmpty() ? current : planned.peekLast();
+        PathFinderRegistry.Selection selection = createPathfinder(start, goal, previous == null ? null : previous.getPath(), context);
+        AbstractNodeCostSearch pathfinder = selection.finder;
         if (!Objects.equals(pathfinder.getGoal(), goal)) { // will return the exact same object if simplification didn't happen
             logDebug("Simplifying " + goal.getClass() + " to GoalXZ due to distance");
         }
@@ -539,11 +723,16 @@ public final class PathingBehavior extends Behavior implements IPathingBehavior,
             }
 
             PathCalculationResult calcResult = pathfinder.calculate(primaryTimeout, failureTimeout);
+            PathCache.GAME.store(pathfinder, calcResult);
+            recordSearch(start, selection, calcResult, failureTimeout);
+            // index the positions here, not on the tick thread that checks them (see PathPositions), and not while
+            // holding pathPlanLock, which the tick waits on
+            calcResult.getPath().ifPresent(PathPositions::of);
             synchronized (pathPlanLock) {
                 Optional<PathExecutor> executor = calcResult.getPath().map(p -> new PathExecutor(PathingBehavior.this, p));
                 if (current == null) {
                     if (executor.isPresent()) {
-                        if (executor.get().getPath().positions().contains(expectedSegmentStart)) {
+                        if (PathPositions.contains(executor.get().getPath(), expectedSegmentStart)) {
                             queuePathEvent(PathEvent.CALC_FINISHED_NOW_EXECUTING);
                             current = executor.get();
                             resetEstimatedTicksToGoal(start);
@@ -554,19 +743,26 @@ public final class PathingBehavior extends Behavior implements IPathingBehavior,
                         if (calcResult.getType() != PathCalculationResult.Type.CANCELLATION && calcResult.getType() != PathCalculationResult.Type.EXCEPTION) {
                             // don't dispatch CALC_FAILED on cancellation
                             queuePathEvent(PathEvent.CALC_FAILED);
+                            // a move cost kept from before may be what blocked the way, the next try works them all out again
+                            MoveCostCache.MOVES.clear();
+                            PathCache.GAME.evict(start.getX(), start.getY(), start.getZ());
                         }
                     }
                 } else {
-                    if (next == null) {
+                    if (planned.size() < PLAN_AHEAD_SEGMENTS) {
                         if (executor.isPresent()) {
-                            if (executor.get().getPath().getSrc().equals(current.getPath().getDest())) {
+                            // a segment is only any use if it starts where the last planned one ends, if that one was
+                            // discarded (or spliced away) while this was calculating, so is this
+                            if (executor.get().getPath().getSrc().equals(plannedDest())) {
                                 queuePathEvent(PathEvent.NEXT_SEGMENT_CALC_FINISHED);
-                                next = executor.get();
+                                planned.addLast(executor.get());
                             } else {
                                 logDebug("Warning: discarding orphan next segment with incorrect start");
                             }
                         } else {
                             queuePathEvent(PathEvent.NEXT_CALC_FAILED);
+                            MoveCostCache.MOVES.clear();
+                            PathCache.GAME.evict(start.getX(), start.getY(), start.getZ());
                         }
                     } else {
                         //throw new IllegalStateException("I have no idea what to do with this path");
@@ -589,21 +785,51 @@ public final class PathingBehavior extends Behavior implements IPathingBehavior,
     }
 
 
-public static final String pathFinderAlgorithm = "BellmanFord"; // Change this value to "Dijkstra" if you want to use Dijkstra's algorithm
-
-private static AbstractNodeCostSearch createPathfinder(BlockPos start, Goal goal, IPath previous, CalculationContext context) {
-    System.out.println("Creating pathfinder..." + pathFinderAlgorithm); // Add this line to check if the method is called
-    LOGGER.info("Creating pathfinder...");
+// The algorithm is picked in PathFinderRegistry now, at runtime (-Dbaritone.pathfinder=Dijkstra, BellmanFord, Race or Adaptive)
+// so one jar has all of them
+
+// Where the timing results go, start the game with -Dbaritone.metrics.format=binary for log.bin instead of log.csv + log.txt
+// To also send them to a database start the game with -Dbaritone.metrics.jdbcUrl=<url> (and -Dbaritone.metrics.jdbcDriver=<class> if the driver needs it)
+private static final PathfinderMetrics METRICS = createMetrics(metricsFormat(System.getProperty("baritone.metrics.format", "csv")), System.getProperty("baritone.metrics.jdbcUrl", ""), System.getProperty("baritone.metrics.jdbcDriver", ""));
+
+// Called on the calculation thread once a search is done, with what the finder measured
+// In race mode the metrics are the winner's, and the winner and its margin are recorded with them
+// The time also goes into the registry's history, which is what the adaptive mode picks engines from
+private static void recordSearch(BlockPos start, PathFinderRegistry.Selection selection, PathCalculationResult calcResult, long failureTimeout) {
+    Optional<PortfolioPathFinder.Race> race = selection.finder instanceof PortfolioPathFinder ? ((PortfolioPathFinder) selection.finder).getRace() : Optional.empty();
+    String algorithm = race.map(r -> r.winner).orElse(selection.engine);
+    race.ifPresent(r -> LOGGER.info("Race: " + r));
+    PathFinderRegistry.record(selection, algorithm, calcResult, failureTimeout);
+    calcResult.getMetrics().ifPresent(metrics -> {
+        LOGGER.info(algorithm + " search: " + metrics);
+        LOGGER.info("History " + PathFinderRegistry.describeHistory(selection));
+        LOGGER.info(PathCache.GAME.toString());
+        // Hand the results to the metrics writer, it does the file writing on its own thread
+        METRICS.record(new PathfinderMetrics.Record(start.getX(), start.getY(), start.getZ(), algorithm, metrics, race.map(r -> r.marginNanos).orElse(-1L)));
+    });
+}
 
+private static PathfinderMetrics.Format metricsFormat(String property) {
     try {
-        Class.forName("com.microsoft.sqlserver.jdbc.SQLServerDriver");
-    } catch (ClassNotFoundException e) {
-        System.err.println("Failed to load SQL Server JDBC driver");
-        LOGGER.error("Failed to load SQL Server JDBC driver", e);
+        return PathfinderMetrics.Format.valueOf(property.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+        System.err.println("Unknown metrics format " + property + ", pick one of " + Arrays.toString(PathfinderMetrics.Format.values()) + ", using CSV");
+        return PathfinderMetrics.Format.CSV;
+    }
+}
 
-    
-        e.printStackTrace();
+private static PathfinderMetrics createMetrics(PathfinderMetrics.Format format, String jdbcUrl, String jdbcDriver) {
+    PathfinderMetrics.Sink files = PathfinderMetrics.files(Paths.get("logs"), format);
+    if (jdbcUrl.isEmpty()) {
+        return new PathfinderMetrics(1024, files);
     }
+    // the driver is loaded here, once, when PathingBehavior is loaded
+    return new PathfinderMetrics(1024, files, new JdbcMetricsSink(jdbcUrl, jdbcDriver));
+}
+
+private static PathFinderRegistry.Selection createPathfinder(BlockPos start, Goal goal, IPath previous, CalculationContext context) {
+    System.out.println("Creating pathfinder..." + PathFinderRegistry.selected()); // Add this line to check if the method is called
+    LOGGER.info("Creating pathfinder...");
 
     final Goal transformed;
     if (Baritone.settings().simplifyUnloadedYCoord.value && goal instanceof IGoalRenderPos) {
@@ -617,30 +843,22 @@ private static AbstractNodeCostSearch createPathfinder(BlockPos start, Goal goal
         transformed = goal;
     }
 
-    Favoring favoring = new Favoring(context.getBaritone().getPlayerContext(), previous, context);
-
-    // Choose the algorithm to use based on the pathFinderAlgorithm setting
-    AbstractNodeCostSearch result;
-    long startTime, elapsedTimeBellmanFord = 0, elapsedTimeDijkstra = 0;
-
-    if (pathFinderAlgorithm.equals("BellmanFord")) {
-        startTime = System.nanoTime();
-        result = new BellmanFordPathFinder(start.getX(), start.getY(), start.getZ(), transformed, favoring, context);
-        elapsedTimeBellmanFord = System.nanoTime() - startTime;
-        System.out.println("Bellman Ford elapsed time: " + elapsedTimeBellmanFord + " ns");
-        LOGGER.info("Bellman Ford elapsed time: " + elapsedTimeBellmanFord + " ns");
-    } else {
-        startTime = System.nanoTime();
-        result = new DijkstraPathFinder(start.getX(), start.getY(), start.getZ(), transformed, favoring, context);
-        elapsedTimeDijkstra = System.nanoTime() - startTime;
-        System.out.println("Dijkstra elapsed time: " + elapsedTimeDijkstra + " ns");        
-        LOGGER.info("Dijkstra elapsed time: " + elapsedTimeDijkstra + " ns");
+    // Asked for this exact path before and nothing on it changed since, hand that back instead of searching
+    Optional<PathFinderRegistry.Selection> cached = PathCache.GAME.lookup(start.getX(), start.getY(), start.getZ(), transformed, context);
+    if (cached.isPresent()) {
+        LOGGER.info("Using " + cached.get().engine);
+        return cached.get();
     }
 
-    // Log the results to a text file
-    logResultsToCsvFile(elapsedTimeBellmanFord, elapsedTimeDijkstra, start.getX(), start.getY(), start.getZ());
-    logResultsToTextFile(elapsedTimeBellmanFord, elapsedTimeDijkstra, start.getX(), start.getY(), start.getZ());
-    logResultsToCsvFile(elapsedTimeBellmanFord, elapsedTimeDijkstra, start.getX(), start.getY(), start.getZ());
+    Favoring favoring = new Favoring(context.getBaritone().getPlayerContext(), previous, context);
+
+    // Choose the algorithm with whatever is selected in the registry right now
+    // (the search is timed by the finder itself now, see recordSearch, timing this constructor measured nothing)
+    // Far goals go to the chunk level search whatever is selected, it only works out the blocks of the next few chunks
+    PathFinderRegistry.Selection result = HierarchicalPathFinder.isFar(start.getX(), start.getZ(), transformed)
+            ? PathFinderRegistry.create(HierarchicalPathFinder.NAME, start.getX(), start.getY(), start.getZ(), transformed, favoring, context)
+            : PathFinderRegistry.create(start.getX(), start.getY(), start.getZ(), transformed, favoring, context);
+    LOGGER.info("Using " + result.engine);
 
 
 
@@ -649,99 +867,6 @@ private static AbstractNodeCostSearch createPathfinder(BlockPos start, Goal goal
     return result;
 }
 
-private static void logResultsToCsvFile(long elapsedTimeBellmanFord, long elapsedTimeDijkstra, int x, int y, int z) {
-    try {
-        String logEntry = String.format("%d, %d, %d, %d, %d%n", x, y, z, elapsedTimeBellmanFord, elapsedTimeDijkstra);
-
-        // Set the paths to the logs folders
-        Path logFolderPath1 = Paths.get("C:\\Users\\sense\\Desktop\\DSA\\Minecraft\\logs");
-        Path logFolderPath2 = Paths.get("logs");
-
-        // Create the logs folders if they don't exist
-        if (!Files.exists(logFolderPath1)) {
-            Files.createDirectories(logFolderPath1);
-        }
-        if (!Files.exists(logFolderPath2)) {
-            Files.createDirectories(logFolderPath2);
-        }
-
-        // Set the paths to the log.csv file inside the logs folders
-        Path logFilePath1 = logFolderPath1.resolve("log.csv");
-        Path logFilePath2 = logFolderPath2.resolve("log.csv");
-
-        // Create the log.csv files if they don't exist
-        if (!Files.exists(logFilePath1)) {
-            Files.createFile(logFilePath1);
-            Files.write(logFilePath1, "X, Y, Z, Bellman Ford Time, Dijkstra Time\n".getBytes(), StandardOpenOption.APPEND);
-        }
-        if (!Files.exists(logFilePath2)) {
-            Files.createFile(logFilePath2);
-            Files.write(logFilePath2, "X, Y, Z, Bellman Ford Time, Dijkstra Time\n".getBytes(), StandardOpenOption.APPEND);
-        }
-
-        // Append log entry to log.csv in both locations
-        Files.write(logFilePath1, logEntry.getBytes(), StandardOpenOption.APPEND);
-        Files.write(logFilePath2, logEntry.getBytes(), StandardOpenOption.APPEND);
-    } catch (IOException e) {
-        e.printStackTrace();
-    }
-}
-
-private static void logResultsToTextFile(long elapsedTimeBellmanFord, long elapsedTimeDijkstra, int x, int y, int z) {
-    try {
-        String fastestMethod = elapsedTimeBellmanFord < elapsedTimeDijkstra ? "Bellman Ford" : "Dijkstra";
-        String logEntry = String.format("X: %d, Y: %d, Z: %d, Time for Bellman Ford: %d ns, Time for Dijkstra: %d ns, Fastest method: %s%n",
-                x, y, z, elapsedTimeBellmanFord, elapsedTimeDijkstra, fastestMethod);
-
-        // Set the path to the logs folder
-        Path logFolderPath = Paths.get("C:\\Users\\sense\\Desktop\\DSA\\Minecraft\\logs");
-
-        // Create the logs folder if it doesn't exist
-        if (!Files.exists(logFolderPath)) {
-            Files.createDirectories(logFolderPath);
-        }
-
-        // Set the path to the log.txt file inside the logs folder
-        Path logFilePath = logFolderPath.resolve("log.txt");
-
-        // Create the log.txt file if it doesn't exist
-        if (!Files.exists(logFilePath)) {
-            Files.createFile(logFilePath);
-        }
-
-        // Append log entry to log.txt
-        Files.write(logFilePath, logEntry.getBytes(), StandardOpenOption.APPEND);
-    } catch (IOException e) {
-        e.printStackTrace();
-    }
-}
-
-
-private static void logResultsToDatabase(long elapsedTimeBellmanFord, long elapsedTimeDijkstra, int x, int y, int z) {
-    try {
-        Class.forName("com.microsoft.sqlserver.jdbc.SQLServerDriver");
-    } catch (ClassNotFoundException e) {
-        e.printStackTrace();
-    }
-    
-
-    String insertQuery = "INSERT INTO PathFinderResults (bellman_ford_time, dijkstra_time, x, y, z) VALUES (?, ?, ?, ?, ?)";
-    
-    try (Connection connection = DriverManager.getConnection(CONNECTION_URL);
-         PreparedStatement preparedStatement = connection.prepareStatement(insertQuery)) {
-        
-        preparedStatement.setLong(1, elapsedTimeBellmanFord);
-        preparedStatement.setLong(2, elapsedTimeDijkstra);
-        preparedStatement.setInt(3, x);
-        preparedStatement.setInt(4, y);
-        preparedStatement.setInt(5, z);
-
-        preparedStatement.executeUpdate();
-    } catch (SQLException e) {
-        e.printStackTrace();
-    }
-}
-
 
     @Override
     public void onRenderPass(RenderEvent event) {
@@ -0,0 +1,253 @@
+package baritone.pathing.calc;
+
+import baritone.api.pathing.calc.IPath;
+import baritone.api.pathing.goals.Goal;
+import baritone.api.utils.SearchMetrics;
+import baritone.pathing.movement.CalculationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * Race mode: runs several finders at the same time on the same start and goal, the first one to reach the goal wins
+ *
+ * Every engine runs its calculate0 on its own thread. As soon as one of them ends at the goal the others are cancelled
+ * (they notice within TIME_CHECK_INTERVAL nodes) and we wait for them to stop so nothing keeps eating CPU after this returns
+ * If nobody reaches the goal before the timeouts, the segment that ends closest to the goal is used
+ *
+ * The winner's path goes through the normal post processing in AbstractNodeCostSearch#calculate,
+ * and the winner's counters are copied over so the SearchMetrics are the winner's
+ *
+ * Each engine needs its own CalculationContext, BlockStateInterface and the tool cache in there aren't safe to share between threads
+ *
+ * getRace() says who won and by how much. The margin is exact if the runner up also reached the goal before it saw the cancel,
+ * otherwise it is a lower bound (the runner up was cancelled, or stopped without reaching the goal at all)
+ */
+public final class PortfolioPathFinder extends AbstractNodeCostSearch {
+
+    private static final ExecutorService RACE_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "Baritone race search");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static final class Race {
+
+        public final String winner;
+        public final boolean reachedGoal;
+        // from the start of the race until the winner returned
+        public final long winnerNanos;
+        // null if there was only one engine
+        public final String runnerUp;
+        public final long marginNanos;
+        public final boolean marginExact;
+
+        Race(String winner, boolean reachedGoal, long winnerNanos, String runnerUp, long marginNanos, boolean marginExact) {
+            this.winner = winner;
+            this.reachedGoal = reachedGoal;
+            this.winnerNanos = winnerNanos;
+            this.runnerUp = runnerUp;
+            this.marginNanos = marginNanos;
+            this.marginExact = marginExact;
+        }
+
+        @Override
+        public String toString() {
+            return winner + (reachedGoal ? " reached the goal" : " got closest to the goal") + " in " + winnerNanos / 1000000 + "ms"
+                    + (runnerUp == null ? "" : ", " + (marginExact ? "" : "at least ") + marginNanos / 1000000 + "ms ahead of " + runnerUp);
+        }
+    }
+
+    private static final class Finished {
+
+        final int engine;
+        final Optional<IPath> path;
+        final long finishedAt;
+
+        Finished(int engine, Optional<IPath> path, long finishedAt) {
+            this.engine = engine;
+            this.path = path;
+            this.finishedAt = finishedAt;
+        }
+    }
+
+    private final String[] names;
+    private final AbstractNodeCostSearch[] engines;
+    private volatile AbstractNodeCostSearch winner;
+    private volatile Race race;
+
+    /**
+     * @param engines The finders to race by name, all for this start and goal, in the order they are reported
+     */
+    public PortfolioPathFinder(int startX, int startY, int startZ, Goal goal, CalculationContext context, Map<String, AbstractNodeCostSearch> engines) {
+        super(startX, startY, startZ, goal, context);
+        if (engines.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to race");
+        }
+        this.names = engines.keySet().toArray(new String[0]);
+        this.engines = engines.values().toArray(new AbstractNodeCostSearch[0]);
+    }
+
+    @Override
+    protected Optional<IPath> calculate0(long primaryTimeout, long failureTimeout) {
+        long raceStart = System.nanoTime();
+        CompletionService<Finished> completion = new ExecutorCompletionService<>(RACE_EXECUTOR);
+        for (int i = 0; i < engines.length; i++) {
+            int engine = i;
+            completion.submit(() -> new Finished(engine, run(engines[engine], primaryTimeout, failureTimeout), System.nanoTime()));
+        }
+        List<Finished> finished = new ArrayList<>(engines.length);
+        Finished first = null;
+        while (finished.size() < engines.length) {
+            Finished next;
+            try {
+                next = completion.take().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                return Optional.empty();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+            finished.add(next);
+            if (first == null && reachedGoal(next)) {
+                first = next;
+                for (AbstractNodeCostSearch engine : engines) {
+                    engine.cancel();
+                }
+            }
+        }
+        if (cancelRequested) {
+            return Optional.empty();
+        }
+        if (first == null) {
+            first = closestToGoal(finished);
+            if (first == null) {
+                return Optional.empty();
+            }
+        }
+        // the next one to reach the goal, or if none did, the first one to stop
+        Finished runnerUp = null;
+        for (Finished other : finished) {
+            if (other == first) {
+                continue;
+            }
+            if (runnerUp == null || reachedGoal(other) && !reachedGoal(runnerUp)
+                    || reachedGoal(other) == reachedGoal(runnerUp) && other.finishedAt < runnerUp.finishedAt) {
+                runnerUp = other;
+            }
+        }
+        AbstractNodeCostSearch won = engines[first.engine];
+        numNodes = won.numNodes;
+        numMovementsConsidered = won.numMovementsConsidered;
+        moveApplyNanos = won.moveApplyNanos;
+        openSetOperations = won.openSetOperations;
+        termination = won.termination;
+        winner = won;
+        race = new Race(names[first.engine], reachedGoal(first), first.finishedAt - raceStart,
+                runnerUp == null ? null : names[runnerUp.engine],
+                runnerUp == null ? 0 : Math.max(0, runnerUp.finishedAt - first.finishedAt),
+                runnerUp != null && reachedGoal(runnerUp));
+        return first.path;
+    }
+
+    private static Optional<IPath> run(AbstractNodeCostSearch engine, long primaryTimeout, long failureTimeout) {
+        try {
+            return engine.calculate0(primaryTimeout, failureTimeout);
+        } catch (Exception e) {
+            // one engine blowing up shouldn't lose the race for the others
+            e.printStackTrace();
+            engine.termination = SearchMetrics.Termination.EXCEPTION;
+            return Optional.empty();
+        }
+    }
+
+    private boolean reachedGoal(Finished finished) {
+        return finished.path.isPresent() && engines[finished.engine].termination == SearchMetrics.Termination.GOAL;
+    }
+
+    private Finished closestToGoal(List<Finished> finished) {
+        Finished best = null;
+        double bestHeuristic = Double.POSITIVE_INFINITY;
+        for (Finished candidate : finished) {
+            if (candidate.path.isPresent()) {
+                double heuristic = goal.heuristic(candidate.path.get().getDest());
+                if (heuristic < bestHeuristic) {
+                    bestHeuristic = heuristic;
+                    best = candidate;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return Who won the last race and by how much, empty until it is over
+     */
+    public Optional<Race> getRace() {
+        return Optional.ofNullable(race);
+    }
+
+    @Override
+    public void cancel() {
+        super.cancel();
+        for (AbstractNodeCostSearch engine : engines) {
+            engine.cancel();
+        }
+    }
+
+    @Override
+    public Optional<IPath> bestPathSoFar() {
+        // whichever engine's path ends closest to the goal, like closestToGoal and bestSoFar rank them (the longest path can
+        // wander off), its own Optional so the tick doesn't allocate one
+        Optional<IPath> best = Optional.empty();
+        double bestHeuristic = Double.POSITIVE_INFINITY;
+        for (AbstractNodeCostSearch engine : engines) {
+            Optional<IPath> path = engine.bestPathSoFar();
+            if (path.isPresent()) {
+                double heuristic = goal.heuristic(path.get().getDest());
+                if (heuristic < bestHeuristic) {
+                    bestHeuristic = heuristic;
+                    best = path;
+                }
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public Optional<IPath> pathToMostRecentNodeConsidered() {
+        for (AbstractNodeCostSearch engine : engines) {
+            Optional<IPath> path = engine.pathToMostRecentNodeConsidered();
+            if (path.isPresent()) {
+                return path;
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    protected int peakMapSize() {
+        AbstractNodeCostSearch won = winner;
+        return won == null ? 0 : won.peakMapSize();
+    }
+
+    @Override
+    protected int moveCacheHits() {
+        AbstractNodeCostSearch won = winner;
+        return won == null ? 0 : won.moveCacheHits();
+    }
+
+    @Override
+    protected int moveCacheLookups() {
+        AbstractNodeCostSearch won = winner;
+        return won == null ? 0 : won.moveCacheLookups();
+    }
+}
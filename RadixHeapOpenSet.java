@@ -0,0 +1,166 @@
+package baritone.pathing.calc.openset;
+
+import baritone.pathing.calc.PathNode;
+
+import java.util.Arrays;
+
+/*
+ * Radix heap, an open set for plain Dijkstra where insert and update are O(1) and removeLowest is O(1) amortized
+ *
+ * It only works when nothing cheaper than the last removed node is ever inserted (monotone), which is true for Dijkstra
+ * because every move costs more than 0. It is not true for A* with a heuristic that isn't consistent, so the weighted
+ * passes keep using BinaryHeapOpenSet
+ *
+ * For a positive double the raw bits, read as a long, sort the same way as the double, so the keys are the bits of combinedCost
+ * and the order is exact. Bucket 0 has the keys equal to the last removed one, bucket b the keys whose highest bit
+ * that differs from it is bit b - 1. removeLowest takes from bucket 0, when that is empty it finds the first bucket with
+ * something in it, makes its minimum the new last key and spreads that bucket over the lower ones.
+ * A node only ever moves to lower buckets, at most 64 times, that is where the amortized O(1) comes from
+ *
+ * update doesn't move anything, it adds the node again with its new key. The old entry is stale and is dropped when it
+ * comes up: an entry counts only if the node is still open and its combinedCost still has the entry's key
+ * (a node's cost only goes down, so there are never two entries with the same key)
+ */
+public final class RadixHeapOpenSet implements IOpenSet {
+
+    /**
+     * Written into heapPosition while a node is in the set, BinaryHeapOpenSet positions start at 1 so this can't be confused with one
+     */
+    private static final int IN_SET = 0;
+
+    private static final int BUCKETS = 65;
+
+    private final PathNode[][] nodes = new PathNode[BUCKETS][];
+    private final long[][] keys = new long[BUCKETS][];
+    private final int[] sizes = new int[BUCKETS];
+
+    private long last;
+    private int size;
+
+    public RadixHeapOpenSet() {
+        for (int i = 0; i < BUCKETS; i++) {
+            nodes[i] = new PathNode[16];
+            keys[i] = new long[16];
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void insert(PathNode node) {
+        if (node.isOpen()) {
+            throw new IllegalStateException("Node already in the open set");
+        }
+        if (size == 0) {
+            // nothing is open, so whatever is left in the buckets is stale and this can start over from any key
+            // (a memory budget prune takes everything out and puts part of it back)
+            restart(key(node));
+        }
+        push(node, key(node));
+        node.heapPosition = IN_SET;
+        size++;
+    }
+
+    @Override
+    public void update(PathNode node) {
+        push(node, key(node));
+    }
+
+    @Override
+    public PathNode removeLowest() {
+        if (size == 0) {
+            throw new IllegalStateException("Open set is empty");
+        }
+        while (true) {
+            if (sizes[0] == 0) {
+                refill();
+            }
+            int index = --sizes[0];
+            PathNode node = nodes[0][index];
+            long key = keys[0][index];
+            nodes[0][index] = null;
+            if (isCurrent(node, key)) {
+                node.heapPosition = -1;
+                size--;
+                return node;
+            }
+        }
+    }
+
+    /**
+     * Bucket 0 is empty, make the smallest key left the new last one and spread its bucket out
+     */
+    private void refill() {
+        int bucket = 1;
+        long min = Long.MAX_VALUE;
+        for (; bucket < BUCKETS; bucket++) {
+            // drop the stale entries while looking for the minimum, a bucket of only stale entries counts as empty
+            PathNode[] bucketNodes = nodes[bucket];
+            long[] bucketKeys = keys[bucket];
+            int kept = 0;
+            for (int i = 0; i < sizes[bucket]; i++) {
+                if (isCurrent(bucketNodes[i], bucketKeys[i])) {
+                    bucketNodes[kept] = bucketNodes[i];
+                    bucketKeys[kept] = bucketKeys[i];
+                    min = Math.min(min, bucketKeys[i]);
+                    kept++;
+                }
+            }
+            Arrays.fill(bucketNodes, kept, sizes[bucket], null);
+            sizes[bucket] = kept;
+            if (kept > 0) {
+                break;
+            }
+        }
+        if (bucket == BUCKETS) {
+            throw new IllegalStateException("Open set has " + size + " nodes but no entries");
+        }
+        last = min;
+        PathNode[] bucketNodes = nodes[bucket];
+        long[] bucketKeys = keys[bucket];
+        int count = sizes[bucket];
+        sizes[bucket] = 0;
+        for (int i = 0; i < count; i++) {
+            push(bucketNodes[i], bucketKeys[i]);
+            bucketNodes[i] = null;
+        }
+    }
+
+    private void restart(long key) {
+        for (int i = 0; i < BUCKETS; i++) {
+            Arrays.fill(nodes[i], 0, sizes[i], null);
+            sizes[i] = 0;
+        }
+        last = key;
+    }
+
+    private void push(PathNode node, long key) {
+        if (key < last) {
+            throw new IllegalStateException("Open set is monotone, " + node.combinedCost + " is cheaper than the last node removed");
+        }
+        int bucket = 64 - Long.numberOfLeadingZeros(key ^ last);
+        int index = sizes[bucket]++;
+        if (index == nodes[bucket].length) {
+            nodes[bucket] = Arrays.copyOf(nodes[bucket], index << 1);
+            keys[bucket] = Arrays.copyOf(keys[bucket], index << 1);
+        }
+        nodes[bucket][index] = node;
+        keys[bucket][index] = key;
+    }
+
+    private static boolean isCurrent(PathNode node, long key) {
+        return node.isOpen() && key(node) == key;
+    }
+
+    private static long key(PathNode node) {
+        // +0.0 so that -0.0 doesn't get the sign bit
+        return Double.doubleToRawLongBits(node.combinedCost + 0.0);
+    }
+}
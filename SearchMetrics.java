@@ -0,0 +1,135 @@
+/*
+ * This file is part of Baritone.
+ *
+ * Baritone is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Baritone is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Baritone.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package baritone.api.utils;
+
+/**
+ * What a single path calculation did, measured by the path finder itself rather than around its constructor
+ */
+public final class SearchMetrics {
+
+    public enum Termination {
+        /**
+         * A node in the goal was reached
+         */
+        GOAL,
+        /**
+         * The primary or failure timeout ran out
+         */
+        TIMEOUT,
+        /**
+         * The calculation was cancelled
+         */
+        CANCELLATION,
+        /**
+         * Nothing was left to expand
+         */
+        EXHAUSTED,
+        /**
+         * The path finder threw
+         */
+        EXCEPTION,
+        /**
+         * Stopped on purpose part of the way, the rest is left for the next segment (HierarchicalPathFinder)
+         */
+        SEGMENT,
+        /**
+         * The nodes reached the memory budget (AbstractNodeCostSearch#maxNodes, #maxMegabytes) and the finder couldn't
+         * make room by pruning
+         */
+        BUDGET
+    }
+
+    /**
+     * Time spent in the search loop itself
+     */
+    public final long searchNanos;
+
+    /**
+     * Time spent turning the found nodes into the final path (post processing, cutting off at loaded chunks)
+     */
+    public final long postProcessNanos;
+
+    public final int nodesExpanded;
+
+    public final int movementsConsidered;
+
+    /**
+     * Time spent inside Moves.apply, which is where the block lookups happen
+     * Estimated, only every AbstractNodeCostSearch.APPLY_SAMPLE-th move is timed and scaled up
+     */
+    public final long moveApplyNanos;
+
+    /**
+     * Inserts, updates and removals on the open set (heap or queue)
+     */
+    public final long openSetOperations;
+
+    public final int peakNodeMapSize;
+
+    /**
+     * Moves whose result came from the move cost cache instead of Moves.apply
+     */
+    public final int moveCacheHits;
+
+    /**
+     * Moves that looked in the move cost cache, 0 when it is off
+     */
+    public final int moveCacheLookups;
+
+    public final Termination termination;
+
+    public SearchMetrics(long searchNanos, long postProcessNanos, int nodesExpanded, int movementsConsidered, long moveApplyNanos, long openSetOperations, int peakNodeMapSize, int moveCacheHits, int moveCacheLookups, Termination termination) {
+        this.searchNanos = searchNanos;
+        this.postProcessNanos = postProcessNanos;
+        this.nodesExpanded = nodesExpanded;
+        this.movementsConsidered = movementsConsidered;
+        this.moveApplyNanos = moveApplyNanos;
+        this.openSetOperations = openSetOperations;
+        this.peakNodeMapSize = peakNodeMapSize;
+        this.moveCacheHits = moveCacheHits;
+        this.moveCacheLookups = moveCacheLookups;
+        this.termination = termination;
+    }
+
+    public long totalNanos() {
+        return searchNanos + postProcessNanos;
+    }
+
+    /**
+     * @return Fraction of the move cost cache lookups that were hits, 0 if there were none
+     */
+    public double moveCacheHitRate() {
+        return moveCacheLookups == 0 ? 0 : (double) moveCacheHits / moveCacheLookups;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchMetrics{" +
+                "searchNanos=" + searchNanos +
+                ", postProcessNanos=" + postProcessNanos +
+                ", nodesExpanded=" + nodesExpanded +
+                ", movementsConsidered=" + movementsConsidered +
+                ", moveApplyNanos=" + moveApplyNanos +
+                ", openSetOperations=" + openSetOperations +
+                ", peakNodeMapSize=" + peakNodeMapSize +
+                ", moveCacheHits=" + moveCacheHits +
+                ", moveCacheLookups=" + moveCacheLookups +
+                ", termination=" + termination +
+                '}';
+    }
+}
@@ -0,0 +1,46 @@
+package baritone.pathing.calc;
+
+import baritone.Baritone;
+import baritone.api.Settings;
+
+/*
+ * The few of Baritone's settings the finders read, handed to them by their SearchSpace
+ *
+ * Baritone.settings() only exists once the client is up (BaritoneAPI loads it from the game directory), so a finder that
+ * read it directly couldn't run anywhere else. In the game MovesSearchSpace copies them from Baritone.settings() for every
+ * new finder, so a changed setting applies from the next search on like before. VoxelWorld uses DEFAULTS
+ */
+public final class SearchSettings {
+
+    /**
+     * Baritone's defaults for all of these
+     */
+    public static final SearchSettings DEFAULTS = new SearchSettings(1024, 0.75F, false, 100, 40000, 3, false);
+
+    public final int mapDefaultSize;
+    public final float mapLoadFactor;
+    public final boolean slowPath;
+    public final long slowPathTimeDelayMS;
+    public final long slowPathTimeoutMS;
+    public final int maxFallHeightNoWater;
+    public final boolean chatDebug;
+
+    public SearchSettings(int mapDefaultSize, float mapLoadFactor, boolean slowPath, long slowPathTimeDelayMS, long slowPathTimeoutMS, int maxFallHeightNoWater, boolean chatDebug) {
+        this.mapDefaultSize = mapDefaultSize;
+        this.mapLoadFactor = mapLoadFactor;
+        this.slowPath = slowPath;
+        this.slowPathTimeDelayMS = slowPathTimeDelayMS;
+        this.slowPathTimeoutMS = slowPathTimeoutMS;
+        this.maxFallHeightNoWater = maxFallHeightNoWater;
+        this.chatDebug = chatDebug;
+    }
+
+    /**
+     * @return The values Baritone.settings() has right now
+     */
+    public static SearchSettings game() {
+        Settings settings = Baritone.settings();
+        return new SearchSettings(settings.pathingMapDefaultSize.value, settings.pathingMapLoadFactor.value, settings.slowPath.value,
+                settings.slowPathTimeDelayMS.value, settings.slowPathTimeoutMS.value, settings.maxFallHeightNoWater.value, settings.chatDebug.value);
+    }
+}
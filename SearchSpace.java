@@ -0,0 +1,88 @@
+package baritone.pathing.calc;
+
+import baritone.utils.pathing.MutableMoveResult;
+
+/*
+ * The graph the finders search, i.e. where each move from a block goes and what it costs
+ *
+ * In the game this is MovesSearchSpace, which is just Baritone's Moves on the CalculationContext, same as before
+ * It is an interface so the finders can also run without a game client, the benchmarks use a synthetic seeded world (VoxelWorld)
+ * The settings come from here too, Baritone.settings() needs the client
+ *
+ * Moves are numbered 0 until moveCount(), apply fills res like Moves#apply does (cost COST_INF if the move can't be done)
+ */
+public interface SearchSpace {
+
+    /**
+     * Called once at the start of every calculation, on the thread that is calculating
+     */
+    void begin();
+
+    /**
+     * @return How many moves there are from every block
+     */
+    int moveCount();
+
+    /**
+     * Fills res with the destination and cost of one move, res is reset first
+     */
+    void apply(int move, int x, int y, int z, MutableMoveResult res);
+
+    /**
+     * Lists the blocks that one move could start from and end at (x, y, z), for searching backwards from the goal
+     * These are only candidates, each one still has to be checked with apply
+     *
+     * @param out Gets x, y, z of every candidate one after the other, must have room for 3 * maxSources()
+     * @return How many candidates were written
+     */
+    int sources(int move, int x, int y, int z, int[] out);
+
+    /**
+     * @return The most candidates sources can return for one move, only valid after begin()
+     */
+    int maxSources();
+
+    /**
+     * @return A name for error messages
+     */
+    String moveName(int move);
+
+    /**
+     * @return Whether the block at this position is something the search is looking for (diamond ore in the game)
+     */
+    boolean isTarget(int x, int y, int z);
+
+    /**
+     * @return The settings the finders read (see SearchSettings), Baritone's own in the game
+     */
+    SearchSettings settings();
+
+    /**
+     * @return Whether the blocks of the chunk this column is in are known, moves into a chunk that isn't loaded see air
+     */
+    default boolean isLoaded(int x, int z) {
+        return true;
+    }
+
+    /**
+     * @return Something that changes whenever the cost of a move could change for a reason other than the blocks
+     * (settings, inventory), 0 if nothing but the blocks matters
+     */
+    default int fingerprint() {
+        return 0;
+    }
+
+    /**
+     * @return How many apply calls in this calculation were answered by MoveCostCache, 0 if this space doesn't use it
+     */
+    default int cacheHits() {
+        return 0;
+    }
+
+    /**
+     * @return How many apply calls in this calculation looked in MoveCostCache
+     */
+    default int cacheLookups() {
+        return 0;
+    }
+}
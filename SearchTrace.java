@@ -0,0 +1,169 @@
+package baritone.pathing.calc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Every expansion and relaxation of one calculation, written to a file as it happens
+ *
+ * Off unless the game is started with -Dbaritone.trace.dir=<dir>, then every calculation of Dijkstra and Bellman-Ford
+ * writes <dir>/<engine>-<x>_<y>_<z>-<n>.trace (engine is Dijkstra or BellmanFord). SearchTraceReplay reads them afterwards (frontier growth, how often blocks
+ * were expanded again, where the search spent its time)
+ *
+ * The file is memory mapped WINDOW_RECORDS records at a time, so a record is a few stores into memory and the OS writes
+ * it out, the search never waits for the disk. A trace stops growing at -Dbaritone.trace.maxMB (1024 by default),
+ * what comes after that is only counted
+ *
+ * Layout, little endian:
+ *  header (HEADER_BYTES): MAGIC, version (short), RECORD_BYTES (short), start x, y, z (int), engine name (ASCII, 16 bytes, zero padded),
+ *  record count (long, written at the end, 0 if the game stopped before that)
+ *  records (RECORD_BYTES each):
+ *   position (long, TargetBlockIndex#pack)
+ *   predecessor (long, packed the same way, the position itself if there is none)
+ *   cost from the start (float)
+ *   kind (byte, EXPAND, RELAX or PASS), move (byte, the SearchSpace move that was relaxed, NO_MOVE for the others), 2 bytes unused
+ * A PASS record is written when the finder forgets its nodes and starts over from the start (the next weight of the ladder),
+ * its position and predecessor are the start and its cost 0. Version 1 traces have none
+ * The file is cut to the last record when the calculation ends, the mapped windows leave zeros after it until then
+ */
+public final class SearchTrace implements AutoCloseable {
+
+    public static final int MAGIC = 0x43525442; // "BTRC"
+    public static final short VERSION = 2;
+    public static final int HEADER_BYTES = 64;
+    public static final int RECORD_BYTES = 24;
+    public static final byte EXPAND = 0;
+    public static final byte RELAX = 1;
+    public static final byte PASS = 2;
+    public static final byte NO_MOVE = -1;
+
+    static final String DIRECTORY = System.getProperty("baritone.trace.dir", "");
+
+    private static final long MAX_BYTES = Long.getLong("baritone.trace.maxMB", 1024) << 20;
+    private static final int WINDOW_RECORDS = 1 << 20;
+    private static final int ENGINE_NAME_BYTES = 16;
+    static final int COUNT_OFFSET = 36;
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    private final Path file;
+    private final FileChannel channel;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long records;
+    private long dropped;
+
+    private SearchTrace(Path file, int startX, int startY, int startZ, String engine) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map(0);
+        window.putInt(MAGIC);
+        window.putShort(VERSION);
+        window.putShort((short) RECORD_BYTES);
+        window.putInt(startX);
+        window.putInt(startY);
+        window.putInt(startZ);
+        byte[] name = engine.getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < ENGINE_NAME_BYTES; i++) {
+            window.put(i < name.length ? name[i] : 0);
+        }
+        window.position(HEADER_BYTES);
+    }
+
+    /**
+     * @return A trace for this calculation, or null if tracing is off (or the file couldn't be made, which is logged)
+     */
+    static SearchTrace open(AbstractNodeCostSearch finder) {
+        if (DIRECTORY.isEmpty() || !(finder instanceof DijkstraPathFinder || finder instanceof BellmanFordPathFinder)) {
+            return null; // the others don't record into it
+        }
+        String engine = finder.getClass().getSimpleName().replace("PathFinder", "");
+        Path file = Paths.get(DIRECTORY, engine + "-" + finder.startX + "_" + finder.startY + "_" + finder.startZ + "-" + SEQUENCE.incrementAndGet() + ".trace");
+        try {
+            Files.createDirectories(file.getParent());
+            return new SearchTrace(file, finder.startX, finder.startY, finder.startZ, engine);
+        } catch (IOException e) {
+            System.err.println("Couldn't open search trace " + file + ": " + e);
+            return null;
+        }
+    }
+
+    public void record(byte kind, int x, int y, int z, double cost, int previousX, int previousY, int previousZ, int move) {
+        if (window.remaining() < RECORD_BYTES) {
+            long next = windowStart + window.position();
+            if (next + RECORD_BYTES > MAX_BYTES || !tryMap(next)) {
+                dropped++;
+                return;
+            }
+        }
+        window.putLong(TargetBlockIndex.pack(x, y, z));
+        window.putLong(TargetBlockIndex.pack(previousX, previousY, previousZ));
+        window.putFloat((float) cost);
+        window.put(kind);
+        window.put((byte) move);
+        window.putShort((short) 0);
+        records++;
+    }
+
+    private boolean tryMap(long start) {
+        try {
+            map(start);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Search trace " + file + " stopped growing: " + e);
+            window.position(window.limit()); // don't try again for every record
+            return false;
+        }
+    }
+
+    private void map(long start) throws IOException {
+        long size = Math.min(MAX_BYTES - start, (long) WINDOW_RECORDS * RECORD_BYTES + (start == 0 ? HEADER_BYTES : 0));
+        window = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        windowStart = start;
+    }
+
+    public long records() {
+        return records;
+    }
+
+    /**
+     * @return Records that didn't fit under the size limit
+     */
+    public long dropped() {
+        return dropped;
+    }
+
+    /**
+     * Cuts the file to the records that were written and closes it
+     */
+    @Override
+    public void close() {
+        long end = HEADER_BYTES + records * RECORD_BYTES;
+        window = null; // the mapping goes with the buffer, and until then the cut below may not take on some systems
+        try {
+            ByteBuffer count = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            count.putLong(0, records);
+            channel.write(count, COUNT_OFFSET);
+            channel.truncate(end);
+        } catch (IOException e) {
+            System.err.println("Couldn't cut search trace " + file + " to " + end + " bytes: " + e);
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Couldn't close search trace " + file + ": " + e);
+        }
+        if (dropped > 0) {
+            System.err.println("Search trace " + file + " hit its size limit, " + dropped + " records not written");
+        }
+    }
+}
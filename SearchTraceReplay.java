@@ -0,0 +1,202 @@
+package baritone.pathing.calc;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/*
+ * Reads the files SearchTrace wrote and says what the search did, without the game:
+ *  frontier growth: how many blocks were waiting to be expanded (relaxed and not expanded since) as the search went on
+ *  re-expansions: blocks expanded more than once in the same pass, which Dijkstra never does and Bellman-Ford does
+ *  whenever a block got cheaper after it was expanded
+ *  passes: a finder that starts over (the weight ladder) writes a PASS record, the frontier and re-expansions start from
+ *  nothing again after it and every pass gets its own line
+ *  hot regions: the chunks with the most expansions
+ *
+ *  java -cp <baritone jars>:<these classes> baritone.pathing.calc.SearchTraceReplay <trace files or directories>
+ */
+public final class SearchTraceReplay {
+
+    // rows of the frontier table
+    private static final int FRONTIER_ROWS = 20;
+    private static final int HOT_CHUNKS = 10;
+    private static final int READ_WINDOW_RECORDS = 1 << 20;
+
+    private SearchTraceReplay() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: SearchTraceReplay <trace file or directory>...");
+            System.exit(1);
+        }
+        for (String arg : args) {
+            Path path = Paths.get(arg);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.list(path)) {
+                    Path[] traces = files.filter(f -> f.toString().endsWith(".trace")).sorted().toArray(Path[]::new);
+                    for (Path trace : traces) {
+                        analyze(trace, System.out);
+                    }
+                }
+            } else {
+                analyze(path, System.out);
+            }
+        }
+    }
+
+    public static void analyze(Path file, PrintStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, SearchTrace.HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != SearchTrace.MAGIC) {
+                throw new IOException(file + " is not a search trace");
+            }
+            short version = header.getShort(4);
+            // version 1 is the same without PASS records
+            if (version < 1 || version > SearchTrace.VERSION || header.getShort(6) != SearchTrace.RECORD_BYTES) {
+                throw new IOException(file + " is trace version " + header.getShort(4) + ", this reads " + SearchTrace.VERSION);
+            }
+            int startX = header.getInt(8);
+            int startY = header.getInt(12);
+            int startZ = header.getInt(16);
+            byte[] name = new byte[16];
+            for (int i = 0; i < name.length; i++) {
+                name[i] = header.get(20 + i);
+            }
+            String engine = new String(name, StandardCharsets.US_ASCII).trim();
+            long inFile = (channel.size() - SearchTrace.HEADER_BYTES) / SearchTrace.RECORD_BYTES;
+            long written = header.getLong(SearchTrace.COUNT_OFFSET);
+            // 0 if the calculation never got to close it, then the file may end in zeros from the last window
+            long records = written > 0 ? Math.min(written, inFile) : inFile;
+
+            // read once for the expansion count, so the frontier can be sampled evenly when reading it again
+            long expansions = 0;
+            for (long i = 0; i < records; i += READ_WINDOW_RECORDS) {
+                int count = (int) Math.min(READ_WINDOW_RECORDS, records - i);
+                MappedByteBuffer window = window(channel, i, count);
+                for (int j = 0; j < count; j++) {
+                    if (window.get(j * SearchTrace.RECORD_BYTES + 20) == SearchTrace.EXPAND) {
+                        expansions++;
+                    }
+                }
+            }
+
+            out.println(file.getFileName() + ": " + engine + " from " + startX + ", " + startY + ", " + startZ + ", " + records + " records");
+            out.println(String.format("  %12s %12s %12s", "expansions", "frontier", "cost"));
+            long sampleEvery = Math.max(1, expansions / FRONTIER_ROWS);
+            LongOpenHashSet frontier = new LongOpenHashSet();
+            Long2IntOpenHashMap timesExpanded = new Long2IntOpenHashMap();
+            Long2IntOpenHashMap chunkExpansions = new Long2IntOpenHashMap();
+            Long2IntOpenHashMap chunkReExpansions = new Long2IntOpenHashMap();
+            LongOpenHashSet chunks = new LongOpenHashSet();
+            long expanded = 0;
+            long relaxations = 0;
+            long reExpansions = 0;
+            long blocks = 0;
+            int pass = 1;
+            long passExpanded = 0;
+            long passReExpansions = 0;
+            long mostExpanded = 0;
+            int mostExpandedTimes = 0;
+            for (long i = 0; i < records; i += READ_WINDOW_RECORDS) {
+                int count = (int) Math.min(READ_WINDOW_RECORDS, records - i);
+                MappedByteBuffer window = window(channel, i, count);
+                for (int j = 0; j < count; j++) {
+                    int at = j * SearchTrace.RECORD_BYTES;
+                    long position = window.getLong(at);
+                    byte kind = window.get(at + 20);
+                    if (kind == SearchTrace.RELAX) {
+                        relaxations++;
+                        frontier.add(position);
+                        continue;
+                    }
+                    if (kind == SearchTrace.PASS) {
+                        printPass(out, pass, passExpanded, timesExpanded.size(), passReExpansions);
+                        blocks += timesExpanded.size();
+                        pass++;
+                        passExpanded = 0;
+                        passReExpansions = 0;
+                        frontier.clear();
+                        timesExpanded.clear();
+                        continue;
+                    }
+                    frontier.remove(position);
+                    expanded++;
+                    passExpanded++;
+                    long chunk = chunk(position);
+                    chunks.add(chunk);
+                    chunkExpansions.addTo(chunk, 1);
+                    int before = timesExpanded.addTo(position, 1);
+                    if (before > 0) {
+                        reExpansions++;
+                        passReExpansions++;
+                        chunkReExpansions.addTo(chunk, 1);
+                    }
+                    if (before + 1 > mostExpandedTimes) {
+                        mostExpandedTimes = before + 1;
+                        mostExpanded = position;
+                    }
+                    if (expanded % sampleEvery == 0 || expanded == expansions) {
+                        out.println(String.format("  %12d %12d %12.1f", expanded, frontier.size(), window.getFloat(at + 16)));
+                    }
+                }
+            }
+
+            if (pass > 1) {
+                printPass(out, pass, passExpanded, timesExpanded.size(), passReExpansions);
+            }
+            blocks += timesExpanded.size();
+            out.println("  Expansions " + expanded + " of " + blocks + " blocks" + (pass > 1 ? " (counted per pass) in " + pass + " passes" : "") + ", " + reExpansions + " re-expansions"
+                    + (expanded == 0 ? "" : String.format(" (%.1f%%)", 100.0 * reExpansions / expanded)));
+            if (mostExpandedTimes > 1) {
+                out.println("  Most expanded " + describe(mostExpanded) + ", " + mostExpandedTimes + " times");
+            }
+            out.println("  Relaxations " + relaxations + (expanded == 0 ? "" : String.format(", %.2f per expansion", (double) relaxations / expanded)));
+            out.println("  Chunks with the most expansions:");
+            long[] keys = chunks.toLongArray();
+            long[] order = new long[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                // most first, the index in the low bits
+                order[i] = (long) -chunkExpansions.get(keys[i]) << 32 | i;
+            }
+            Arrays.sort(order);
+            for (int i = 0; i < Math.min(HOT_CHUNKS, order.length); i++) {
+                long chunk = keys[(int) order[i]];
+                out.println(String.format("    %6d, %6d %10d expansions %10d re-expansions", (int) chunk, (int) (chunk >> 32),
+                        chunkExpansions.get(chunk), chunkReExpansions.get(chunk)));
+            }
+        }
+    }
+
+    private static void printPass(PrintStream out, int pass, long expanded, int blocks, long reExpansions) {
+        out.println(String.format("  pass %d: %d expansions of %d blocks, %d re-expansions", pass, expanded, blocks, reExpansions));
+    }
+
+    private static MappedByteBuffer window(FileChannel channel, long first, int count) throws IOException {
+        MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, SearchTrace.HEADER_BYTES + first * SearchTrace.RECORD_BYTES, (long) count * SearchTrace.RECORD_BYTES);
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        return window;
+    }
+
+    private static long chunk(long packed) {
+        int x = (int) (packed >> 38);
+        int z = (int) (packed << 38 >> 38);
+        return (long) (x >> 4) & 0xFFFFFFFFL | (long) (z >> 4) << 32;
+    }
+
+    private static String describe(long packed) {
+        return (int) (packed >> 38) + ", " + (int) (packed << 26 >> 52) + ", " + (int) (packed << 38 >> 38);
+    }
+}
@@ -0,0 +1,149 @@
+package baritone.pathing.calc;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.block.Block;
+import net.minecraft.init.Blocks;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.BlockStateContainer;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+
+/*
+ * Remembers where one kind of block (diamond ore for us) is, chunk by chunk
+ *
+ * DijkstraPathFinder used to make a new BlockPos and ask the world for the block state on every single move it tried
+ * Now it asks this instead, with a packed long position, so there is no allocation and no world lookup in the loop
+ *
+ * A chunk is scanned the first time something inside it is asked about, then kept until the chunk changes
+ * PathingBehavior forwards chunk events, the player's own block changes and the block changes the server sends (another
+ * player mining, water, sand) to markChunkDirty, those are only queued here
+ * and the next calculation drops the dirty chunks in sync() so they get scanned again
+ *
+ * The chunk map is touched by the threads that are calculating, in race mode that is more than one at a time,
+ * so sync and contains lock it. The game thread only ever touches the dirty queue
+ */
+public final class TargetBlockIndex {
+
+    public static final TargetBlockIndex DIAMOND_ORE = new TargetBlockIndex(Blocks.DIAMOND_ORE);
+
+    // shared by every scanned chunk that has no target in it, never added to
+    private static final LongOpenHashSet NONE = new LongOpenHashSet(0);
+
+    private final Block target;
+    private final Long2ObjectOpenHashMap<LongOpenHashSet> chunks = new Long2ObjectOpenHashMap<>();
+    private final LongOpenHashSet dirtyChunks = new LongOpenHashSet();
+    private volatile boolean clearRequested;
+    private World world;
+
+    public TargetBlockIndex(Block target) {
+        this.target = target;
+    }
+
+    /**
+     * Packs a block position the same way as BlockPos#toLong, unlike BetterBlockPos#longHash this can be unpacked
+     */
+    public static long pack(int x, int y, int z) {
+        return ((long) x & 0x3FFFFFFL) << 38 | ((long) y & 0xFFFL) << 26 | ((long) z & 0x3FFFFFFL);
+    }
+
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return (long) chunkX & 0xFFFFFFFFL | ((long) chunkZ & 0xFFFFFFFFL) << 32;
+    }
+
+    /**
+     * Called from the game thread when blocks in a chunk changed, or the chunk was loaded or unloaded
+     */
+    public void markChunkDirty(int chunkX, int chunkZ) {
+        synchronized (dirtyChunks) {
+            dirtyChunks.add(chunkKey(chunkX, chunkZ));
+        }
+    }
+
+    /**
+     * Called from the game thread when the world changes, everything has to be scanned again
+     */
+    public void clear() {
+        clearRequested = true;
+    }
+
+    /**
+     * Applies everything queued since the last calculation, call once at the start of each calculation
+     */
+    public synchronized void sync(World world) {
+        if (clearRequested || world != this.world) {
+            clearRequested = false;
+            chunks.clear();
+            this.world = world;
+            synchronized (dirtyChunks) {
+                dirtyChunks.clear();
+            }
+            return;
+        }
+        synchronized (dirtyChunks) {
+            if (dirtyChunks.isEmpty()) {
+                return;
+            }
+            LongIterator it = dirtyChunks.iterator();
+            while (it.hasNext()) {
+                chunks.remove(it.nextLong());
+            }
+            dirtyChunks.clear();
+        }
+    }
+
+    /**
+     * @param packed A position from {@link #pack(int, int, int)}
+     * @return Whether the target block is there, false if the chunk isn't loaded
+     */
+    public synchronized boolean contains(long packed) {
+        int x = (int) (packed >> 38);
+        int z = (int) (packed << 38 >> 38);
+        long key = chunkKey(x >> 4, z >> 4);
+        LongOpenHashSet inChunk = chunks.get(key);
+        if (inChunk == null) {
+            inChunk = scan(x >> 4, z >> 4);
+            if (inChunk == null) {
+                return false;
+            }
+            chunks.put(key, inChunk);
+        }
+        return inChunk != NONE && inChunk.contains(packed);
+    }
+
+    public boolean contains(int x, int y, int z) {
+        return contains(pack(x, y, z));
+    }
+
+    private LongOpenHashSet scan(int chunkX, int chunkZ) {
+        Chunk chunk = world.getChunkProvider().getLoadedChunk(chunkX, chunkZ);
+        if (chunk == null) {
+            // not loaded, don't remember anything so it gets scanned once it is
+            return null;
+        }
+        LongOpenHashSet found = null;
+        ExtendedBlockStorage[] sections = chunk.getBlockStorageArray();
+        for (int section = 0; section < sections.length; section++) {
+            ExtendedBlockStorage storage = sections[section];
+            if (storage == Chunk.NULL_BLOCK_STORAGE || storage.isEmpty()) {
+                continue;
+            }
+            BlockStateContainer data = storage.getData();
+            int baseY = section << 4;
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    for (int x = 0; x < 16; x++) {
+                        if (data.get(x, y, z).getBlock() == target) {
+                            if (found == null) {
+                                found = new LongOpenHashSet();
+                            }
+                            found.add(pack(chunkX << 4 | x, baseY | y, chunkZ << 4 | z));
+                        }
+                    }
+                }
+            }
+        }
+        return found == null ? NONE : found;
+    }
+}